@@ -25,7 +25,10 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Optional;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,18 +44,33 @@ public class DownloadCache {
   private final Path baseDir;
   private final Path tmpDir;
   private final FileHashes hashes;
+  private final Supplier<DownloadProgressListener> progressListenerFactory;
 
-  DownloadCache(Path baseDir, FileHashes fileHashes) {
+  DownloadCache(Path baseDir, FileHashes fileHashes, Supplier<DownloadProgressListener> progressListenerFactory) {
     LOG.debug("Download cache base directory: {}", baseDir);
     this.hashes = fileHashes;
+    this.progressListenerFactory = progressListenerFactory;
     this.baseDir = mkdirs(baseDir);
     this.tmpDir = mkdirs(baseDir.resolve("_tmp"));
   }
 
+  DownloadCache(Path baseDir, FileHashes fileHashes) {
+    this(baseDir, fileHashes, () -> DownloadProgressListener.NONE);
+  }
+
   public DownloadCache(Path baseDir) {
     this(baseDir, new FileHashes());
   }
 
+  /**
+   * @param progressListenerFactory creates the listener notified of the progress of each download, see
+   *                                {@link DownloadProgressListener#logging(java.time.Duration)}. Downloads can run concurrently, and
+   *                                listeners usually keep some state, so a new one is created for each download.
+   */
+  public DownloadCache(Path baseDir, Supplier<DownloadProgressListener> progressListenerFactory) {
+    this(baseDir, new FileHashes(), progressListenerFactory);
+  }
+
   public Path getBaseDir() {
     return baseDir;
   }
@@ -70,6 +88,15 @@ public class DownloadCache {
   }
 
   public CachedFile getOrDownload(String filename, String expectedFileHash, String hashAlgorithm, Downloader downloader) throws HashMismatchException {
+    return getOrDownload(filename, expectedFileHash, hashAlgorithm, downloader, progressListenerFactory.get());
+  }
+
+  /**
+   * Same as {@link #getOrDownload(String, String, String, Downloader)}, reporting the progress of the download, if any, to the given listener.
+   * The listener should not be shared with other downloads if it keeps some state.
+   */
+  public CachedFile getOrDownload(String filename, String expectedFileHash, String hashAlgorithm, Downloader downloader, DownloadProgressListener progressListener)
+    throws HashMismatchException {
     // Does not fail if another process tries to create the directory at the same time.
     Path hashDir = hashDir(expectedFileHash);
     Path targetFile = hashDir.resolve(filename);
@@ -77,8 +104,8 @@ public class DownloadCache {
       return new CachedFile(targetFile, true);
     }
     Path tempFile = newTempFile(filename);
-    download(downloader, filename, tempFile);
-    String downloadedFileHash = hashes.of(tempFile.toFile(), hashAlgorithm);
+    String downloadedFileHash = download(downloader, filename, tempFile, hashAlgorithm, new DownloadProgressTracker(filename, progressListener))
+      .orElseGet(() -> hashes.of(tempFile.toFile(), hashAlgorithm));
     if (!expectedFileHash.equals(downloadedFileHash)) {
       throw new HashMismatchException(expectedFileHash, downloadedFileHash, tempFile.toAbsolutePath());
     }
@@ -87,14 +114,35 @@ public class DownloadCache {
     return new CachedFile(targetFile, false);
   }
 
-  private static void download(Downloader downloader, String filename, Path tempFile) {
+  /**
+   * @return the hash of the downloaded file, if the downloader was able to compute it while downloading
+   */
+  private static Optional<String> download(Downloader downloader, String filename, Path tempFile, String hashAlgorithm, DownloadProgressTracker progress) {
     try {
-      downloader.download(filename, tempFile);
+      var digest = newDigest(hashAlgorithm);
+      if (digest.isEmpty()) {
+        downloader.download(filename, tempFile);
+        return Optional.empty();
+      }
+      boolean hashed = downloader.download(filename, tempFile, digest.get(), progress);
+      progress.done();
+      if (hashed) {
+        return Optional.of(FileHashes.toHex(digest.get().digest()));
+      }
+      return Optional.empty();
     } catch (IOException e) {
       throw new IllegalStateException("Fail to download " + filename + " to " + tempFile, e);
     }
   }
 
+  private static Optional<MessageDigest> newDigest(String hashAlgorithm) {
+    try {
+      return Optional.of(MessageDigest.getInstance(hashAlgorithm));
+    } catch (NoSuchAlgorithmException e) {
+      return Optional.empty();
+    }
+  }
+
   private static void renameQuietly(Path sourceFile, Path targetFile) {
     try {
       Files.move(sourceFile, targetFile, StandardCopyOption.ATOMIC_MOVE);
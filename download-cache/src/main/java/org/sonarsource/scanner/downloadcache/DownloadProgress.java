@@ -0,0 +1,97 @@
+/*
+ * SonarScanner Download Cache Utility
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.downloadcache;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Snapshot of the progress of a download, as reported to a {@link DownloadProgressListener}.
+ */
+public final class DownloadProgress {
+
+  private final String filename;
+  private final long bytesReceived;
+  private final long totalBytes;
+  private final Duration elapsed;
+  private final double instantBytesPerSecond;
+  private final boolean done;
+
+  DownloadProgress(String filename, long bytesReceived, long totalBytes, Duration elapsed, double instantBytesPerSecond, boolean done) {
+    this.filename = filename;
+    this.bytesReceived = bytesReceived;
+    this.totalBytes = totalBytes;
+    this.elapsed = elapsed;
+    this.instantBytesPerSecond = instantBytesPerSecond;
+    this.done = done;
+  }
+
+  public String getFilename() {
+    return filename;
+  }
+
+  public long getBytesReceived() {
+    return bytesReceived;
+  }
+
+  /**
+   * @return the expected size of the file, or -1 if unknown (no Content-Length)
+   */
+  public long getTotalBytes() {
+    return totalBytes;
+  }
+
+  public Duration getElapsed() {
+    return elapsed;
+  }
+
+  /**
+   * @return the recent throughput, smoothed over the last seconds, in bytes per second
+   */
+  public double getInstantBytesPerSecond() {
+    return instantBytesPerSecond;
+  }
+
+  /**
+   * @return the throughput since the beginning of the download, in bytes per second
+   */
+  public double getAverageBytesPerSecond() {
+    long millis = elapsed.toMillis();
+    return millis > 0 ? (bytesReceived * 1000.0 / millis) : 0;
+  }
+
+  /**
+   * @return the estimated remaining time, based on the recent throughput. Empty if the total size or the throughput is unknown.
+   */
+  public Optional<Duration> getEta() {
+    if (done) {
+      return Optional.of(Duration.ZERO);
+    }
+    if (totalBytes < 0 || instantBytesPerSecond <= 0) {
+      return Optional.empty();
+    }
+    long remaining = Math.max(0, totalBytes - bytesReceived);
+    return Optional.of(Duration.ofMillis((long) (remaining * 1000.0 / instantBytesPerSecond)));
+  }
+
+  public boolean isDone() {
+    return done;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * SonarScanner Download Cache Utility
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.downloadcache;
+
+import java.time.Duration;
+
+/**
+ * Receive the progress of a download. Implementations are called from the thread receiving the data, so they should return quickly.
+ */
+@FunctionalInterface
+public interface DownloadProgressListener {
+
+  DownloadProgressListener NONE = progress -> {
+  };
+
+  void onProgress(DownloadProgress progress);
+
+  /**
+   * Wrap the given listener so that it is called at most once per interval. The first and the final reports are always forwarded.
+   * The returned listener keeps track of the last report, so it must only be used for a single download.
+   */
+  static DownloadProgressListener throttled(DownloadProgressListener delegate, Duration interval) {
+    long intervalNanos = interval.toNanos();
+    return new DownloadProgressListener() {
+      private long lastReport = Long.MIN_VALUE;
+
+      @Override
+      public synchronized void onProgress(DownloadProgress progress) {
+        long now = progress.getElapsed().toNanos();
+        if (progress.isDone() || lastReport == Long.MIN_VALUE || now - lastReport >= intervalNanos) {
+          lastReport = now;
+          delegate.onProgress(progress);
+        }
+      }
+    };
+  }
+
+  /**
+   * Default reporter, that logs the progress with SLF4J at most once per interval. Downloads shorter than the interval are not
+   * reported at all. The returned listener keeps some state, so a new one must be created for each download.
+   */
+  static DownloadProgressListener logging(Duration interval) {
+    if (interval.isZero() || interval.isNegative()) {
+      return NONE;
+    }
+    return throttled(new LoggingDownloadProgressListener(interval), interval);
+  }
+}
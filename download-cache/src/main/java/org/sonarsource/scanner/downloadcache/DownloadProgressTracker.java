@@ -0,0 +1,96 @@
+/*
+ * SonarScanner Download Cache Utility
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.downloadcache;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Compute the progress of a download from the chunks reported by the {@link Downloader}, and forward it to a
+ * {@link DownloadProgressListener}. The recent throughput is an exponentially weighted moving average, so that it is not too
+ * sensitive to the size of the chunks.
+ */
+public class DownloadProgressTracker {
+
+  private static final double SMOOTHING_PERIOD_NANOS = 2_000_000_000d;
+
+  private final String filename;
+  private final DownloadProgressListener listener;
+  private final LongSupplier nanoClock;
+  private long startNanos;
+  private long lastUpdateNanos;
+  private long bytesReceived;
+  private long totalBytes = -1;
+  private double instantBytesPerSecond;
+
+  public DownloadProgressTracker(String filename, DownloadProgressListener listener) {
+    this(filename, listener, System::nanoTime);
+  }
+
+  DownloadProgressTracker(String filename, DownloadProgressListener listener, LongSupplier nanoClock) {
+    this.filename = filename;
+    this.listener = listener;
+    this.nanoClock = nanoClock;
+    this.startNanos = nanoClock.getAsLong();
+    this.lastUpdateNanos = startNanos;
+  }
+
+  /**
+   * Called when the download starts, or restarts from scratch (for example after a retry).
+   *
+   * @param totalBytes the expected size, or -1 if unknown
+   */
+  public synchronized void start(long totalBytes) {
+    this.totalBytes = totalBytes;
+    this.bytesReceived = 0;
+    this.instantBytesPerSecond = 0;
+    this.startNanos = nanoClock.getAsLong();
+    this.lastUpdateNanos = startNanos;
+    report(false);
+  }
+
+  /**
+   * Called each time a chunk of data has been received.
+   */
+  public synchronized void update(long bytes) {
+    long now = nanoClock.getAsLong();
+    long dt = now - lastUpdateNanos;
+    bytesReceived += bytes;
+    if (dt > 0) {
+      double sample = bytes * 1_000_000_000d / dt;
+      double alpha = 1 - Math.exp(-dt / SMOOTHING_PERIOD_NANOS);
+      instantBytesPerSecond = instantBytesPerSecond == 0 ? sample : (alpha * sample + (1 - alpha) * instantBytesPerSecond);
+      lastUpdateNanos = now;
+    }
+    report(false);
+  }
+
+  /**
+   * Called once the whole content has been received.
+   */
+  public synchronized void done() {
+    report(true);
+  }
+
+  private void report(boolean done) {
+    var elapsed = Duration.ofNanos(nanoClock.getAsLong() - startNanos);
+    listener.onProgress(new DownloadProgress(filename, bytesReceived, totalBytes, elapsed, instantBytesPerSecond, done));
+  }
+}
@@ -21,10 +21,29 @@ package org.sonarsource.scanner.downloadcache;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 
 /**
  * Provide the logic to download the file when not found in the cache.
  */
 public interface Downloader {
   void download(String filename, Path destination) throws IOException;
+
+  /**
+   * Same as {@link #download(String, Path)}, but implementations may feed the downloaded bytes to the given digest while writing them,
+   * to save reading the file again once downloaded.
+   *
+   * @return true if the digest has been updated with the whole content of the file, false if the cache has to compute the hash itself
+   */
+  default boolean download(String filename, Path destination, MessageDigest digest) throws IOException {
+    download(filename, destination);
+    return false;
+  }
+
+  /**
+   * Same as {@link #download(String, Path, MessageDigest)}, but implementations may report the received bytes to the given tracker.
+   */
+  default boolean download(String filename, Path destination, MessageDigest digest, DownloadProgressTracker progress) throws IOException {
+    return download(filename, destination, digest);
+  }
 }
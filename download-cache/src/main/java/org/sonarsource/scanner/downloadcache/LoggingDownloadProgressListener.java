@@ -0,0 +1,79 @@
+/*
+ * SonarScanner Download Cache Utility
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.downloadcache;
+
+import java.time.Duration;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log the progress of downloads that take longer than the given delay, so that users can tell a slow download from a hung one.
+ */
+class LoggingDownloadProgressListener implements DownloadProgressListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoggingDownloadProgressListener.class);
+
+  private final Duration delay;
+  private boolean reported;
+
+  LoggingDownloadProgressListener(Duration delay) {
+    this.delay = delay;
+  }
+
+  @Override
+  public void onProgress(DownloadProgress progress) {
+    if (progress.isDone()) {
+      if (reported) {
+        LOG.info("Downloaded {} ({}) in {}s, average {}/s", progress.getFilename(), formatBytes(progress.getBytesReceived()),
+          progress.getElapsed().toSeconds(), formatBytes((long) progress.getAverageBytesPerSecond()));
+      }
+      return;
+    }
+    if (progress.getElapsed().compareTo(delay) < 0) {
+      return;
+    }
+    reported = true;
+    var message = new StringBuilder()
+      .append("Downloading ").append(progress.getFilename()).append(": ")
+      .append(formatBytes(progress.getBytesReceived()));
+    if (progress.getTotalBytes() > 0) {
+      message.append(" of ").append(formatBytes(progress.getTotalBytes()))
+        .append(" (").append(progress.getBytesReceived() * 100 / progress.getTotalBytes()).append("%)");
+    }
+    message.append(", ").append(formatBytes((long) progress.getInstantBytesPerSecond())).append("/s");
+    progress.getEta().ifPresent(eta -> message.append(", ETA ").append(eta.toSeconds()).append("s"));
+    LOG.info("{}", message);
+  }
+
+  static String formatBytes(long bytes) {
+    if (bytes < 1024) {
+      return bytes + " B";
+    }
+    String[] units = {"KB", "MB", "GB", "TB"};
+    double value = bytes;
+    int unit = -1;
+    while (value >= 1024 && unit < units.length - 1) {
+      value /= 1024;
+      unit++;
+    }
+    return String.format(Locale.ROOT, "%.1f %s", value, units[unit]);
+  }
+}
@@ -24,15 +24,21 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class DownloadCacheTest {
@@ -140,6 +146,94 @@ class DownloadCacheTest {
     assertThat(againFromCache.didCacheHit()).isTrue();
   }
 
+  @Test
+  void use_hash_computed_by_downloader() throws Exception {
+    var expectedHash = FileHashes.toHex(MessageDigest.getInstance("SHA-256").digest("body".getBytes(StandardCharsets.UTF_8)));
+
+    Downloader downloader = new Downloader() {
+      public void download(String filename, Path toFile) {
+        throw new IllegalStateException("Should use the hashing variant");
+      }
+
+      @Override
+      public boolean download(String filename, Path toFile, MessageDigest digest) throws IOException {
+        write(toFile, "body");
+        digest.update("body".getBytes(StandardCharsets.UTF_8));
+        return true;
+      }
+    };
+    var cachedFile = cache.getOrDownload("sonar-foo-plugin-1.5.jar", expectedHash, "SHA-256", downloader);
+
+    assertThat(read(cachedFile.getPath())).isEqualTo("body");
+    verify(fileHashes, never()).of(any(File.class), any());
+  }
+
+  @Test
+  void report_download_progress() throws Exception {
+    when(fileHashes.of(any(File.class), eq("SHA-256"))).thenReturn("ABCDE");
+    List<DownloadProgress> reports = new ArrayList<>();
+
+    Downloader downloader = new Downloader() {
+      public void download(String filename, Path toFile) {
+        throw new IllegalStateException("Should use the tracking variant");
+      }
+
+      @Override
+      public boolean download(String filename, Path toFile, MessageDigest digest, DownloadProgressTracker progress) throws IOException {
+        progress.start(4);
+        write(toFile, "body");
+        progress.update(4);
+        return false;
+      }
+    };
+    cache.getOrDownload("sonar-foo-plugin-1.5.jar", "ABCDE", "SHA-256", downloader, reports::add);
+
+    assertThat(reports).extracting(DownloadProgress::getBytesReceived, DownloadProgress::isDone)
+      .containsExactly(tuple(0L, false), tuple(4L, false), tuple(4L, true));
+  }
+
+  @Test
+  void report_progress_of_each_download_to_a_new_listener() throws Exception {
+    when(fileHashes.of(any(File.class), eq("SHA-256"))).thenReturn("ABCDE", "FGHIJ");
+    List<List<DownloadProgress>> reportsByListener = new ArrayList<>();
+    cache = new DownloadCache(temp, fileHashes, () -> {
+      List<DownloadProgress> reports = new ArrayList<>();
+      reportsByListener.add(reports);
+      return reports::add;
+    });
+
+    Downloader downloader = new Downloader() {
+      public void download(String filename, Path toFile) {
+        throw new IllegalStateException("Should use the tracking variant");
+      }
+
+      @Override
+      public boolean download(String filename, Path toFile, MessageDigest digest, DownloadProgressTracker progress) throws IOException {
+        progress.start(4);
+        write(toFile, "body");
+        progress.update(4);
+        return false;
+      }
+    };
+    cache.getOrDownload("sonar-foo-plugin-1.5.jar", "ABCDE", "SHA-256", downloader);
+    cache.getOrDownload("sonar-bar-plugin-1.5.jar", "FGHIJ", "SHA-256", downloader);
+
+    assertThat(reportsByListener).hasSize(2).allSatisfy(reports -> assertThat(reports)
+      .extracting(DownloadProgress::getBytesReceived, DownloadProgress::isDone)
+      .containsExactly(tuple(0L, false), tuple(4L, false), tuple(4L, true)));
+    assertThat(reportsByListener.get(1)).extracting(DownloadProgress::getFilename).containsOnly("sonar-bar-plugin-1.5.jar");
+  }
+
+  @Test
+  void compute_hash_when_downloader_did_not() throws Exception {
+    when(fileHashes.of(any(File.class), eq("SHA-256"))).thenReturn("ABCDE");
+
+    Downloader downloader = (filename, toFile) -> write(toFile, "body");
+    var cachedFile = cache.getOrDownload("sonar-foo-plugin-1.5.jar", "ABCDE", "SHA-256", downloader);
+
+    assertThat(read(cachedFile.getPath())).isEqualTo("body");
+  }
+
   @Test
   void download_corrupted_file() {
     when(fileHashes.of(any(File.class), eq(HASH_ALGO))).thenReturn("VWXYZ");
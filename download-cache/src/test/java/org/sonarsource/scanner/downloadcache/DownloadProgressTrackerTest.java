@@ -0,0 +1,117 @@
+/*
+ * SonarScanner Download Cache Utility
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.downloadcache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class DownloadProgressTrackerTest {
+
+  private final AtomicLong clock = new AtomicLong();
+  private final List<DownloadProgress> reports = new ArrayList<>();
+
+  @Test
+  void should_report_bytes_throughput_and_eta() {
+    var tracker = new DownloadProgressTracker("jre.tar.gz", reports::add, clock::get);
+
+    tracker.start(4_000);
+    advance(Duration.ofSeconds(1));
+    tracker.update(1_000);
+    advance(Duration.ofSeconds(1));
+    tracker.update(1_000);
+
+    var last = reports.get(reports.size() - 1);
+    assertThat(last.getFilename()).isEqualTo("jre.tar.gz");
+    assertThat(last.getBytesReceived()).isEqualTo(2_000);
+    assertThat(last.getTotalBytes()).isEqualTo(4_000);
+    assertThat(last.getElapsed()).isEqualTo(Duration.ofSeconds(2));
+    assertThat(last.getInstantBytesPerSecond()).isCloseTo(1_000, within(0.1));
+    assertThat(last.getAverageBytesPerSecond()).isCloseTo(1_000, within(0.1));
+    assertThat(last.getEta()).contains(Duration.ofSeconds(2));
+    assertThat(last.isDone()).isFalse();
+
+    tracker.done();
+    assertThat(reports.get(reports.size() - 1).isDone()).isTrue();
+    assertThat(reports.get(reports.size() - 1).getEta()).contains(Duration.ZERO);
+  }
+
+  @Test
+  void should_smooth_instant_throughput() {
+    var tracker = new DownloadProgressTracker("jre.tar.gz", reports::add, clock::get);
+    tracker.start(-1);
+    advance(Duration.ofSeconds(1));
+    tracker.update(1_000);
+    advance(Duration.ofMillis(100));
+    tracker.update(1_000);
+
+    var last = reports.get(reports.size() - 1);
+    // The burst of 10 000 B/s is only partially taken into account
+    assertThat(last.getInstantBytesPerSecond()).isBetween(1_000.0, 10_000.0);
+    assertThat(last.getEta()).isEmpty();
+  }
+
+  @Test
+  void should_restart_from_scratch() {
+    var tracker = new DownloadProgressTracker("jre.tar.gz", reports::add, clock::get);
+    tracker.start(100);
+    advance(Duration.ofSeconds(1));
+    tracker.update(50);
+    tracker.start(100);
+
+    assertThat(reports.get(reports.size() - 1).getBytesReceived()).isZero();
+  }
+
+  @Test
+  void should_throttle_reports() {
+    var throttled = DownloadProgressListener.throttled(reports::add, Duration.ofSeconds(10));
+    var tracker = new DownloadProgressTracker("jre.tar.gz", throttled, clock::get);
+
+    tracker.start(100);
+    for (int i = 0; i < 25; i++) {
+      advance(Duration.ofSeconds(1));
+      tracker.update(1);
+    }
+    tracker.done();
+
+    assertThat(reports).extracting(p -> p.getElapsed().toSeconds()).containsExactly(0L, 10L, 20L, 25L);
+  }
+
+  @Test
+  void should_disable_logging_with_zero_interval() {
+    assertThat(DownloadProgressListener.logging(Duration.ZERO)).isSameAs(DownloadProgressListener.NONE);
+  }
+
+  @Test
+  void should_format_bytes() {
+    assertThat(LoggingDownloadProgressListener.formatBytes(12)).isEqualTo("12 B");
+    assertThat(LoggingDownloadProgressListener.formatBytes(1536)).isEqualTo("1.5 KB");
+    assertThat(LoggingDownloadProgressListener.formatBytes(45 * 1024 * 1024L)).isEqualTo("45.0 MB");
+  }
+
+  private void advance(Duration duration) {
+    clock.addAndGet(duration.toNanos());
+  }
+}
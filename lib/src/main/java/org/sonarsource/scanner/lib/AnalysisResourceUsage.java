@@ -0,0 +1,125 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.OptionalLong;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Resources used by the scanner engine process during an analysis. Except for the wall time, the figures are sampled while the
+ * process runs, so they can be slightly lower than the final ones, and are missing when the OS doesn't provide them.
+ */
+public final class AnalysisResourceUsage {
+  private final Duration wallTime;
+  private final Duration cpuTime;
+  private final Duration userCpuTime;
+  private final Duration systemCpuTime;
+  private final Long peakRssBytes;
+  private final Long readBytes;
+  private final Long writtenBytes;
+
+  public AnalysisResourceUsage(Duration wallTime, @Nullable Duration cpuTime, @Nullable Duration userCpuTime, @Nullable Duration systemCpuTime,
+    @Nullable Long peakRssBytes, @Nullable Long readBytes, @Nullable Long writtenBytes) {
+    this.wallTime = wallTime;
+    this.cpuTime = cpuTime;
+    this.userCpuTime = userCpuTime;
+    this.systemCpuTime = systemCpuTime;
+    this.peakRssBytes = peakRssBytes;
+    this.readBytes = readBytes;
+    this.writtenBytes = writtenBytes;
+  }
+
+  public Duration getWallTime() {
+    return wallTime;
+  }
+
+  /**
+   * User and system CPU time, summed over all the threads of the process
+   */
+  public Optional<Duration> getCpuTime() {
+    return Optional.ofNullable(cpuTime);
+  }
+
+  /**
+   * Only available on Linux
+   */
+  public Optional<Duration> getUserCpuTime() {
+    return Optional.ofNullable(userCpuTime);
+  }
+
+  /**
+   * Only available on Linux
+   */
+  public Optional<Duration> getSystemCpuTime() {
+    return Optional.ofNullable(systemCpuTime);
+  }
+
+  /**
+   * Only available on Linux
+   */
+  public OptionalLong getPeakRssBytes() {
+    return toOptional(peakRssBytes);
+  }
+
+  /**
+   * Bytes read from the storage layer. Only available on Linux.
+   */
+  public OptionalLong getReadBytes() {
+    return toOptional(readBytes);
+  }
+
+  /**
+   * Bytes written to the storage layer. Only available on Linux.
+   */
+  public OptionalLong getWrittenBytes() {
+    return toOptional(writtenBytes);
+  }
+
+  private static OptionalLong toOptional(@Nullable Long value) {
+    return value == null ? OptionalLong.empty() : OptionalLong.of(value);
+  }
+
+  @Override
+  public String toString() {
+    var summary = new StringBuilder("wall time ").append(format(wallTime));
+    if (cpuTime != null) {
+      summary.append(", CPU time ").append(format(cpuTime));
+      if (userCpuTime != null && systemCpuTime != null) {
+        summary.append(" (user ").append(format(userCpuTime)).append(", system ").append(format(systemCpuTime)).append(")");
+      }
+    }
+    if (peakRssBytes != null) {
+      summary.append(", peak RSS ").append(FileUtils.byteCountToDisplaySize(peakRssBytes));
+    }
+    if (readBytes != null && writtenBytes != null) {
+      summary.append(", disk read ").append(FileUtils.byteCountToDisplaySize(readBytes))
+        .append(", disk written ").append(FileUtils.byteCountToDisplaySize(writtenBytes));
+    }
+    return summary.toString();
+  }
+
+  private static String format(Duration duration) {
+    return String.format(Locale.ROOT, "%.3fs", duration.toMillis() / 1000.0);
+  }
+}
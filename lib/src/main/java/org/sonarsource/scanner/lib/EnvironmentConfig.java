@@ -19,7 +19,6 @@
  */
 package org.sonarsource.scanner.lib;
 
-import com.google.gson.Gson;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -27,6 +26,7 @@ import java.util.stream.Stream;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.lib.internal.util.Json;
 
 /**
  * Utility class to load configuration from environment variables.
@@ -77,7 +77,7 @@ public class EnvironmentConfig {
 
   private static void parseJsonPropertiesFromEnv(String jsonParams, Map<String, String> inputProperties, String envVariableName) {
     try {
-      var jsonProperties = new Gson().<Map<String, String>>fromJson(jsonParams, Map.class);
+      var jsonProperties = Json.gson().<Map<String, String>>fromJson(jsonParams, Map.class);
       if (jsonProperties != null) {
         jsonProperties.forEach((key, value) -> {
           if (inputProperties.containsKey(key)) {
@@ -0,0 +1,143 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib;
+
+import java.net.URI;
+import java.time.Duration;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Timing breakdown of an HTTP call made while bootstrapping the scanner engine, including all the redirects and retries it took.
+ * <p>
+ * The JDK HTTP client doesn't expose DNS resolution, connection, proxy tunnel and TLS handshake times: they are part of the time to
+ * first byte of the attempt that had to open a new connection.
+ */
+public final class HttpTiming {
+
+  private final String method;
+  private final URI uri;
+  private final int statusCode;
+  private final Duration total;
+  private final Duration wait;
+  private final Duration timeToFirstByte;
+  private final Duration transfer;
+  private final long bytes;
+  private final int redirects;
+  private final int retries;
+  @Nullable
+  private final String failure;
+
+  public HttpTiming(String method, URI uri, int statusCode, Duration total, Duration wait, Duration timeToFirstByte, Duration transfer, long bytes, int redirects, int retries,
+    @Nullable String failure) {
+    this.method = method;
+    this.uri = uri;
+    this.statusCode = statusCode;
+    this.total = total;
+    this.wait = wait;
+    this.timeToFirstByte = timeToFirstByte;
+    this.transfer = transfer;
+    this.bytes = bytes;
+    this.redirects = redirects;
+    this.retries = retries;
+    this.failure = failure;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  /**
+   * @return the URI that was initially requested
+   */
+  public URI getUri() {
+    return uri;
+  }
+
+  /**
+   * @return the status code of the last response, or -1 if no response was received
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public Duration getTotal() {
+    return total;
+  }
+
+  /**
+   * @return the time spent before the last attempt was sent: previous attempts, delays between retries, and redirects
+   */
+  public Duration getWait() {
+    return wait;
+  }
+
+  /**
+   * @return the time between sending the last attempt and receiving the response headers. It includes connection setup and server time.
+   */
+  public Duration getTimeToFirstByte() {
+    return timeToFirstByte;
+  }
+
+  /**
+   * @return the time between receiving the response headers and the end of the processing of the body
+   */
+  public Duration getTransfer() {
+    return transfer;
+  }
+
+  /**
+   * @return the number of body bytes received for the last attempt, as sent on the wire (before decompression)
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  public int getRedirects() {
+    return redirects;
+  }
+
+  public int getRetries() {
+    return retries;
+  }
+
+  @CheckForNull
+  public String getFailure() {
+    return failure;
+  }
+
+  @Override
+  public String toString() {
+    var sb = new StringBuilder()
+      .append(method).append(' ').append(uri)
+      .append(" status=").append(statusCode)
+      .append(" total=").append(total.toMillis()).append("ms")
+      .append(" wait=").append(wait.toMillis()).append("ms")
+      .append(" ttfb=").append(timeToFirstByte.toMillis()).append("ms")
+      .append(" transfer=").append(transfer.toMillis()).append("ms")
+      .append(" bytes=").append(bytes)
+      .append(" redirects=").append(redirects)
+      .append(" retries=").append(retries);
+    if (failure != null) {
+      sb.append(" failure=").append(failure);
+    }
+    return sb.toString();
+  }
+}
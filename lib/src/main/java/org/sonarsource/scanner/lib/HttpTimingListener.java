@@ -0,0 +1,34 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib;
+
+/**
+ * Notified each time an HTTP call made while bootstrapping the scanner engine completes, successfully or not. See
+ * {@link ScannerEngineBootstrapper#addHttpTimingListener(HttpTimingListener)}.
+ */
+@FunctionalInterface
+public interface HttpTimingListener {
+
+  /**
+   * Called from the thread that made the call. Calls can be made concurrently, so implementations must be thread-safe.
+   */
+  void onCallCompleted(HttpTiming timing);
+
+}
@@ -0,0 +1,67 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib;
+
+import java.time.Instant;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.slf4j.event.Level;
+
+/**
+ * A log of the scanner engine, given to a {@link LogSink}
+ */
+public final class LogEvent {
+  private final Level level;
+  private final String message;
+  private final String stacktrace;
+  private final Instant timestamp;
+
+  public LogEvent(Level level, String message, @Nullable String stacktrace, Instant timestamp) {
+    this.level = level;
+    this.message = message;
+    this.stacktrace = stacktrace;
+    this.timestamp = timestamp;
+  }
+
+  public Level getLevel() {
+    return level;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  @CheckForNull
+  public String getStacktrace() {
+    return stacktrace;
+  }
+
+  /**
+   * When the log was received from the engine
+   */
+  public Instant getTimestamp() {
+    return timestamp;
+  }
+
+  @Override
+  public String toString() {
+    return level + " " + message;
+  }
+}
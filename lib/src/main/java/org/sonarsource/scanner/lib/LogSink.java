@@ -0,0 +1,37 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib;
+
+import java.util.List;
+
+/**
+ * Receives the logs of the scanner engine, instead of SLF4J. Logs are buffered between the engine and the sink, so that a slow sink
+ * doesn't stall the analysis. See {@link ScannerProperties#SONAR_SCANNER_LOG_BUFFER_SIZE} and
+ * {@link ScannerProperties#SONAR_SCANNER_LOG_OVERFLOW_POLICY}.
+ */
+@FunctionalInterface
+public interface LogSink {
+
+  /**
+   * Called from a dedicated thread, with batches of events in the order they were emitted. All the events of an analysis have been
+   * received when {@link ScannerEngineFacade#analyze(java.util.Map)} returns.
+   */
+  void log(List<LogEvent> events);
+}
@@ -23,7 +23,9 @@ import java.net.InetSocketAddress;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
@@ -34,6 +36,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonarsource.scanner.downloadcache.DownloadCache;
+import org.sonarsource.scanner.downloadcache.DownloadProgressListener;
 import org.sonarsource.scanner.lib.internal.FailedBootstrap;
 import org.sonarsource.scanner.lib.internal.InternalProperties;
 import org.sonarsource.scanner.lib.internal.MessageException;
@@ -48,8 +51,10 @@ import org.sonarsource.scanner.lib.internal.facade.inprocess.IsolatedLauncherFac
 import org.sonarsource.scanner.lib.internal.facade.simulation.SimulationScannerEngineFacade;
 import org.sonarsource.scanner.lib.internal.http.HttpConfig;
 import org.sonarsource.scanner.lib.internal.http.HttpException;
+import org.sonarsource.scanner.lib.internal.http.HttpTimingReport;
 import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
 import org.sonarsource.scanner.lib.internal.http.ssl.CertificateStore;
+import org.sonarsource.scanner.lib.internal.logging.EngineLogging;
 import org.sonarsource.scanner.lib.internal.util.ArchResolver;
 import org.sonarsource.scanner.lib.internal.util.OsResolver;
 import org.sonarsource.scanner.lib.internal.util.Paths2;
@@ -89,6 +94,9 @@ public class ScannerEngineBootstrapper {
   private final Map<String, String> bootstrapProperties = new HashMap<>();
   private final ScannerHttpClient scannerHttpClient;
   private final System2 system;
+  private final List<HttpTimingListener> httpTimingListeners = new ArrayList<>();
+  @Nullable
+  private LogSink logSink;
 
   ScannerEngineBootstrapper(String app, String version, System2 system,
     ScannerHttpClient scannerHttpClient, IsolatedLauncherFactory launcherFactory,
@@ -123,6 +131,22 @@ public class ScannerEngineBootstrapper {
     return this;
   }
 
+  /**
+   * Receive the logs of the scanner engine, instead of having them written to SLF4J.
+   */
+  public ScannerEngineBootstrapper setLogSink(LogSink logSink) {
+    this.logSink = logSink;
+    return this;
+  }
+
+  /**
+   * Be notified of the timing of each HTTP call made while bootstrapping, for example to report them in a build tool.
+   */
+  public ScannerEngineBootstrapper addHttpTimingListener(HttpTimingListener listener) {
+    httpTimingListeners.add(listener);
+    return this;
+  }
+
   public ScannerEngineBootstrapResult bootstrap() {
     if (LOG.isDebugEnabled()) {
       LOG.debug("Scanner max available memory: {}", FileUtils.byteCountToDisplaySize(Runtime.getRuntime().maxMemory()));
@@ -135,7 +159,8 @@ public class ScannerEngineBootstrapper {
     var isSonarQubeCloud = endpoint.isSonarQubeCloud();
     var isSimulation = immutableProperties.containsKey(InternalProperties.SCANNER_DUMP_TO_FILE);
     var cacheBaseDir = sonarUserHome.resolve("cache");
-    var fileCache = new DownloadCache(cacheBaseDir);
+    var downloadProgressInterval = httpConfig.getDownloadProgressInterval();
+    var fileCache = new DownloadCache(cacheBaseDir, () -> DownloadProgressListener.logging(downloadProgressInterval));
 
     if (isSimulation) {
       var serverVersion = immutableProperties.getOrDefault(InternalProperties.SCANNER_VERSION_SIMULATION, "9.9");
@@ -143,27 +168,40 @@ public class ScannerEngineBootstrapper {
     }
 
     // No HTTP call should be made before this point
+    var timingListeners = new ArrayList<>(httpTimingListeners);
+    var httpTimingReport = new HttpTimingReport();
+    timingListeners.add(httpTimingReport);
     try {
       scannerHttpClient.init(httpConfig);
+      timingListeners.forEach(scannerHttpClient::addTimingListener);
+      scannerHttpClient.prewarm();
+      var engineLogging = EngineLogging.from(immutableProperties, logSink);
       if (isSonarQubeCloud) {
-        return bootstrapCloud(fileCache, immutableProperties, httpConfig, endpoint);
+        return bootstrapCloud(fileCache, immutableProperties, httpConfig, endpoint, engineLogging);
       }
-      return bootstrapServer(fileCache, immutableProperties, httpConfig);
+      return bootstrapServer(fileCache, immutableProperties, httpConfig, engineLogging);
     } catch (MessageException e) {
       return handleException(e);
+    } finally {
+      timingListeners.forEach(scannerHttpClient::removeTimingListener);
+      httpTimingReport.log();
+      // HTTP calls are only made while bootstrapping
+      httpConfig.getIoThreads().close();
     }
   }
 
-  private ScannerEngineBootstrapResult bootstrapCloud(DownloadCache downloadCache, Map<String, String> immutableProperties, HttpConfig httpConfig, ScannerEndpoint endpoint) {
+  private ScannerEngineBootstrapResult bootstrapCloud(DownloadCache downloadCache, Map<String, String> immutableProperties, HttpConfig httpConfig, ScannerEndpoint endpoint,
+    EngineLogging engineLogging) {
     endpoint.getRegionLabel().ifPresentOrElse(
       region -> LOG.info("Communicating with SonarQube Cloud ({} region)", region),
       () -> LOG.info("Communicating with SonarQube Cloud"));
     var scannerFacade = buildNewFacade(downloadCache, immutableProperties, httpConfig,
-      (launcher, adaptedProperties) -> NewScannerEngineFacade.forSonarQubeCloud(adaptedProperties, launcher));
+      (launcher, adaptedProperties) -> NewScannerEngineFacade.forSonarQubeCloud(adaptedProperties, launcher, engineLogging));
     return new SuccessfulBootstrap(scannerFacade);
   }
 
-  private ScannerEngineBootstrapResult bootstrapServer(DownloadCache downloadCache, Map<String, String> immutableProperties, HttpConfig httpConfig) {
+  private ScannerEngineBootstrapResult bootstrapServer(DownloadCache downloadCache, Map<String, String> immutableProperties, HttpConfig httpConfig,
+    EngineLogging engineLogging) {
     var serverVersion = getServerVersion(scannerHttpClient);
     var serverLabel = guessServerLabelFromVersion(serverVersion);
     LOG.info("Communicating with {} {}", serverLabel, serverVersion);
@@ -174,11 +212,11 @@ public class ScannerEngineBootstrapper {
     ScannerEngineFacade scannerFacade;
     if (VersionUtils.isAtLeastIgnoringQualifier(serverVersion, SQ_VERSION_NEW_BOOTSTRAPPING)) {
       scannerFacade = buildNewFacade(downloadCache, immutableProperties, httpConfig,
-        (launcher, adaptedProperties) -> NewScannerEngineFacade.forSonarQubeServer(adaptedProperties, launcher, serverVersion));
+        (launcher, adaptedProperties) -> NewScannerEngineFacade.forSonarQubeServer(adaptedProperties, launcher, engineLogging, serverVersion));
     } else {
-      var launcher = launcherFactory.createLauncher(scannerHttpClient, downloadCache);
+      var launcher = launcherFactory.createLauncher(scannerHttpClient, downloadCache, immutableProperties);
       var adaptedProperties = adaptDeprecatedPropertiesForInProcessBootstrapping(immutableProperties, httpConfig);
-      scannerFacade = new InProcessScannerEngineFacade(adaptedProperties, launcher, false, serverVersion);
+      scannerFacade = new InProcessScannerEngineFacade(adaptedProperties, launcher, engineLogging, false, serverVersion);
     }
     return new SuccessfulBootstrap(scannerFacade);
   }
@@ -20,6 +20,7 @@
 package org.sonarsource.scanner.lib;
 
 import java.util.Map;
+import java.util.Optional;
 
 public interface ScannerEngineFacade extends AutoCloseable {
 
@@ -49,4 +50,13 @@ public interface ScannerEngineFacade extends AutoCloseable {
    */
   boolean analyze(Map<String, String> analysisProps);
 
+  /**
+   * Get the resources used by the last analysis, for example to size CI agents.
+   *
+   * @return empty if no analysis has completed yet, or if the scanner engine doesn't run in a separate process
+   */
+  default Optional<AnalysisResourceUsage> getLastAnalysisResourceUsage() {
+    return Optional.empty();
+  }
+
 }
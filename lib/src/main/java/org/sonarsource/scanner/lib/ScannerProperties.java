@@ -93,6 +93,79 @@ public final class ScannerProperties {
   public static final String SONAR_SCANNER_TRUSTSTORE_PASSWORD = "sonar.scanner.truststorePassword";
   public static final String SONAR_SCANNER_SKIP_SYSTEM_TRUSTSTORE = "sonar.scanner.skipSystemTruststore";
   public static final String SONAR_SCANNER_SKIP_JVM_SSL_CONFIG = "sonar.scanner.skipJvmSslConfig";
+
+  /**
+   * Maximum number of retries of a GET or HEAD request failing with a transient error (connection error, HTTP 429, 502, 503 or 504).
+   * Default to 0, which disables retries. Other requests are never retried, since they may not be idempotent.
+   */
+  public static final String SONAR_SCANNER_HTTP_MAX_RETRIES = "sonar.scanner.httpMaxRetries";
+
+  /**
+   * Initial delay before retrying a failed request, doubled on each subsequent retry. Default to 500ms.
+   */
+  public static final String SONAR_SCANNER_HTTP_RETRY_BACKOFF = "sonar.scanner.httpRetryBackoff";
+
+  /**
+   * Maximum total time that can be spent retrying a request. Default to 60s.
+   */
+  public static final String SONAR_SCANNER_HTTP_RETRY_BUDGET = "sonar.scanner.httpRetryBudget";
+
+  /**
+   * Ask the server for gzip or deflate compressed API responses. Binary downloads are never compressed. Default to false.
+   */
+  public static final String SONAR_SCANNER_HTTP_COMPRESSION = "sonar.scanner.httpCompression";
+
+  /**
+   * Targets of permanent redirects (HTTP 301 and 308) are always remembered during a session. When this duration is set, they are also
+   * persisted in the Sonar user home, and reused by subsequent runs until they expire. Default to 0 (not persisted).
+   */
+  public static final String SONAR_SCANNER_HTTP_REDIRECT_CACHE_TTL = "sonar.scanner.httpRedirectCacheTtl";
+
+  /**
+   * Open the connections to the server in the background as soon as the HTTP client is initialized, so that DNS resolution, proxy
+   * tunneling and TLS handshake are done while the first requests are sent to the REST API. Only useful when the web API is served
+   * from another origin, like on SonarQube Cloud. Default to false.
+   */
+  public static final String SONAR_SCANNER_HTTP_PREWARM = "sonar.scanner.httpPrewarm";
+
+  /**
+   * Percentile (1 to 99) of the latencies observed during the session after which a second, identical, request is sent for idempotent
+   * API calls that did not receive a response yet. The first response wins. 0 to disable. Default to 0.
+   */
+  public static final String SONAR_SCANNER_HTTP_HEDGING_PERCENTILE = "sonar.scanner.httpHedgingPercentile";
+
+  /**
+   * Delay after which an API call is hedged, as long as too few latencies have been observed to compute the percentile. Default to 1s.
+   */
+  public static final String SONAR_SCANNER_HTTP_HEDGING_DELAY = "sonar.scanner.httpHedgingDelay";
+
+  /**
+   * Maximum percentage of the API calls that can be hedged, to limit the extra load put on the server. Default to 10.
+   */
+  public static final String SONAR_SCANNER_HTTP_HEDGING_MAX_EXTRA_LOAD = "sonar.scanner.httpHedgingMaxExtraLoad";
+
+  /**
+   * Log the progress of long downloads (JRE, scanner engine, plugins) at this interval. 0 to disable. Default to 10s.
+   */
+  public static final String SONAR_SCANNER_DOWNLOAD_PROGRESS_INTERVAL = "sonar.scanner.downloadProgressInterval";
+
+  /**
+   * Maximum bandwidth, in MB/s, used by the downloads of this scanner. Decimal values are allowed. Default to unlimited.
+   */
+  public static final String SONAR_SCANNER_DOWNLOAD_RATE_LIMIT = "sonar.scanner.downloadRateLimit";
+
+  /**
+   * Maximum bandwidth, in MB/s, used by the downloads of all the scanners running on the same host and sharing the same Sonar user home.
+   * The bandwidth is split equally between the scanners currently downloading. Default to unlimited.
+   */
+  public static final String SONAR_SCANNER_DOWNLOAD_HOST_RATE_LIMIT = "sonar.scanner.downloadHostRateLimit";
+
+  /**
+   * Comma-separated list of base URLs of mirrors serving the JRE and scanner engine artifacts, as {@code <base URL>/<filename>}.
+   * The fastest mirror is tried first, and the server is used as a fallback.
+   */
+  public static final String SONAR_SCANNER_ARTIFACT_MIRRORS = "sonar.scanner.artifactMirrors";
+
   /**
    * Skip analysis.
    */
@@ -108,6 +181,23 @@ public final class ScannerProperties {
    */
   public static final String SCANNER_ENGINE_JAR_PATH = "sonar.scanner.engineJarPath";
 
+  /**
+   * Run the Scanner Engine (SonarQube Cloud and SonarQube Server 10.6+) in the current JVM instead of forking a new one, when the current
+   * JVM is Java 17+ and no Java executable or Java options are configured. No JRE is provisioned in this mode. Default to false.
+   */
+  public static final String SCANNER_ENGINE_IN_PROCESS = "sonar.scanner.engineInProcess";
+
+  /**
+   * Maximum number of scanner engine logs waiting to be written, when the host logging can't keep up with the engine. Default to 8192.
+   */
+  public static final String SONAR_SCANNER_LOG_BUFFER_SIZE = "sonar.scanner.logBufferSize";
+
+  /**
+   * What to do with the scanner engine logs when the log buffer is full: {@code BLOCK} the engine until there is room, or
+   * {@code DROP_DEBUG_FIRST} to drop DEBUG and TRACE logs and block only for the other levels. Default to BLOCK.
+   */
+  public static final String SONAR_SCANNER_LOG_OVERFLOW_POLICY = "sonar.scanner.logOverflowPolicy";
+
   /**
    * Flag to skip the JRE provisioning.
    */
@@ -136,4 +226,27 @@ public final class ScannerProperties {
    * The {@code User-Agent} header cannot be overridden via this property.
    */
   public static final String SONAR_SCANNER_HTTP_EXTRA_HEADERS = "sonar.scanner.httpExtraHeaders";
+
+  /**
+   * Use virtual threads for I/O plumbing (forked process output, HTTP client callbacks) when the runtime supports them (Java 21+).
+   * Ignored on older runtimes. Default to false.
+   */
+  public static final String SONAR_SCANNER_USE_VIRTUAL_THREADS = "sonar.scanner.useVirtualThreads";
+
+  /**
+   * Keep the classloader of a legacy scanner engine (run in the same JVM, for SonarQube Server versions older than 10.6) once the
+   * analysis is done, and reuse it for the next analyses of the same JVM that use the same engine jars. Default to false.
+   */
+  public static final String SONAR_SCANNER_REUSE_ENGINE_CLASSLOADER = "sonar.scanner.reuseEngineClassloader";
+
+  /**
+   * Time after which a reusable engine classloader that is no longer used is closed. Default to 10 minutes.
+   */
+  public static final String SONAR_SCANNER_ENGINE_CLASSLOADER_IDLE_TIMEOUT = "sonar.scanner.engineClassloaderIdleTimeout";
+
+  /**
+   * Diagnostic mode checking that the classloader of a legacy scanner engine is garbage collected once closed, and logging the
+   * suspected causes of the leak otherwise. It forces garbage collections, so it should not be enabled permanently. Default to false.
+   */
+  public static final String SONAR_SCANNER_ENGINE_CLASSLOADER_LEAK_CHECK = "sonar.scanner.engineClassloaderLeakCheck";
 }
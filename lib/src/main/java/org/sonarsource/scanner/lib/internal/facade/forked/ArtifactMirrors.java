@@ -0,0 +1,245 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.forked;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.downloadcache.DownloadCache;
+import org.sonarsource.scanner.downloadcache.DownloadProgressTracker;
+import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
+import org.sonarsource.scanner.lib.internal.util.Json;
+import org.sonarsource.scanner.lib.internal.util.Utils;
+
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_ARTIFACT_MIRRORS;
+
+/**
+ * Mirrors of the artifacts (JRE, scanner engine) served by the server. A mirror is a plain file server, serving the artifacts at
+ * {@code <mirror base URL>/<filename>}.
+ * <p>
+ * Mirrors are tried from the fastest to the slowest, based on the latency measured by a probe and on the throughput of the previous
+ * downloads. These statistics are persisted in the download cache, so that the fastest mirror is tried first by the next runs.
+ * A mirror that fails, or that serves a file with an unexpected SHA-256, is skipped and tried last by the next runs.
+ */
+class ArtifactMirrors {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ArtifactMirrors.class);
+
+  static final ArtifactMirrors NONE = new ArtifactMirrors(List.of(), null);
+
+  static final String STATS_FILENAME = "_mirrors.json";
+  private static final Duration STATS_MAX_AGE = Duration.ofDays(1);
+  // Size used to compare mirrors with different latencies and throughputs, typical of a JRE
+  private static final double REFERENCE_SIZE = 50 * 1024 * 1024d;
+  private static final double SMOOTHING = 0.5;
+
+  private final List<String> baseUrls;
+  @Nullable
+  private final Path statsFile;
+
+  ArtifactMirrors(List<String> baseUrls, @Nullable Path statsFile) {
+    this.baseUrls = baseUrls;
+    this.statsFile = statsFile;
+  }
+
+  static ArtifactMirrors from(Map<String, String> properties, DownloadCache downloadCache) {
+    var value = properties.get(SONAR_SCANNER_ARTIFACT_MIRRORS);
+    if (StringUtils.isBlank(value)) {
+      return NONE;
+    }
+    var urls = Arrays.stream(value.split(","))
+      .map(String::trim)
+      .filter(StringUtils::isNotEmpty)
+      .map(url -> StringUtils.removeEnd(url, "/"))
+      .distinct()
+      .collect(Collectors.toList());
+    return new ArtifactMirrors(urls, downloadCache.getBaseDir().resolve(STATS_FILENAME));
+  }
+
+  boolean isEmpty() {
+    return baseUrls.isEmpty();
+  }
+
+  /**
+   * Try to download the artifact from the mirrors, from the fastest to the slowest.
+   *
+   * @param digest if not null, a SHA-256 digest to be updated with the content of the file
+   * @return true if a mirror served the file with the expected SHA-256, false if the file has to be downloaded from the server
+   */
+  boolean download(ScannerHttpClient connection, String filename, String expectedSha256, Path toFile, @Nullable MessageDigest digest,
+    @Nullable DownloadProgressTracker progress) {
+    if (baseUrls.isEmpty()) {
+      return false;
+    }
+    var stats = loadStats();
+    for (String baseUrl : orderedMirrors(connection, stats)) {
+      var mirrorStats = stats.computeIfAbsent(baseUrl, k -> new MirrorStats());
+      var sha256 = digest != null && "SHA-256".equals(digest.getAlgorithm()) ? digest : newSha256();
+      var url = baseUrl + "/" + filename;
+      try {
+        var start = Instant.now();
+        connection.downloadFromExternalUrl(url, toFile, sha256, progress);
+        var elapsed = Duration.between(start, Instant.now());
+        var actualSha256 = toHex(cloneOf(sha256).digest());
+        if (!expectedSha256.equalsIgnoreCase(actualSha256)) {
+          LOG.warn("Mirror {} served {} with an unexpected SHA-256 {}, expected {}", baseUrl, filename, actualSha256, expectedSha256);
+          mirrorStats.recordFailure();
+          continue;
+        }
+        mirrorStats.recordSuccess(Files.size(toFile), elapsed);
+        LOG.info("Downloaded {} from mirror {}", filename, baseUrl);
+        return true;
+      } catch (RuntimeException | IOException e) {
+        LOG.warn("Unable to download {} from mirror {}: {}", filename, baseUrl, e.getMessage());
+        mirrorStats.recordFailure();
+      } finally {
+        saveStats(stats);
+      }
+    }
+    LOG.info("No mirror could serve {}, downloading it from the server", filename);
+    return false;
+  }
+
+  private List<String> orderedMirrors(ScannerHttpClient connection, Map<String, MirrorStats> stats) {
+    var now = Instant.now();
+    for (String baseUrl : baseUrls) {
+      var mirrorStats = stats.computeIfAbsent(baseUrl, k -> new MirrorStats());
+      if (mirrorStats.lastProbe == 0 || Instant.ofEpochMilli(mirrorStats.lastProbe).plus(STATS_MAX_AGE).isBefore(now)) {
+        var latency = connection.measureLatency(baseUrl + "/");
+        mirrorStats.lastProbe = now.toEpochMilli();
+        if (latency.isPresent()) {
+          mirrorStats.latencyMs = latency.get().toMillis();
+          LOG.debug("Mirror {} answered in {}ms", baseUrl, mirrorStats.latencyMs);
+        } else {
+          mirrorStats.recordFailure();
+          LOG.debug("Mirror {} is not reachable", baseUrl);
+        }
+      }
+    }
+    // Mirrors never used so far are assumed to be as fast as the average of the others
+    double defaultThroughput = baseUrls.stream()
+      .mapToDouble(url -> stats.get(url).bytesPerSecond)
+      .filter(t -> t > 0)
+      .average()
+      .orElse(0);
+    var ordered = new ArrayList<>(baseUrls);
+    // Stable sort: the configured order is kept for mirrors with similar statistics
+    ordered.sort(Comparator.<String>comparingInt(url -> stats.get(url).consecutiveFailures)
+      .thenComparingDouble(url -> stats.get(url).estimatedSeconds(defaultThroughput)));
+    return ordered;
+  }
+
+  private Map<String, MirrorStats> loadStats() {
+    if (statsFile != null && Files.isRegularFile(statsFile)) {
+      try {
+        Map<String, MirrorStats> stats = Json.gson().fromJson(Files.readString(statsFile, StandardCharsets.UTF_8), new TypeToken<HashMap<String, MirrorStats>>() {
+        }.getType());
+        if (stats != null) {
+          stats.values().removeIf(v -> v == null);
+          return stats;
+        }
+      } catch (IOException | JsonParseException e) {
+        LOG.debug("Unable to read mirror statistics {}: {}", statsFile, e.getMessage());
+      }
+    }
+    return new HashMap<>();
+  }
+
+  private void saveStats(Map<String, MirrorStats> stats) {
+    if (statsFile == null) {
+      return;
+    }
+    try {
+      Utils.writeAtomically(statsFile, tmp -> Files.writeString(tmp, Json.gson().toJson(stats), StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      LOG.debug("Unable to write mirror statistics {}: {}", statsFile, e.getMessage());
+    }
+  }
+
+
+  private static MessageDigest newSha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+
+  /**
+   * Compute the hash without resetting the given digest, that may be reused by the caller.
+   */
+  private static MessageDigest cloneOf(MessageDigest digest) {
+    try {
+      return (MessageDigest) digest.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException("Unable to clone digest " + digest.getAlgorithm(), e);
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    var sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  static class MirrorStats {
+    long latencyMs;
+    double bytesPerSecond;
+    int consecutiveFailures;
+    long lastProbe;
+
+    void recordSuccess(long bytes, Duration elapsed) {
+      consecutiveFailures = 0;
+      long millis = Math.max(1, elapsed.toMillis());
+      double sample = bytes * 1000d / millis;
+      bytesPerSecond = bytesPerSecond == 0 ? sample : (SMOOTHING * sample + (1 - SMOOTHING) * bytesPerSecond);
+    }
+
+    void recordFailure() {
+      consecutiveFailures++;
+    }
+
+    double estimatedSeconds(double defaultThroughput) {
+      double throughput = bytesPerSecond > 0 ? bytesPerSecond : defaultThroughput;
+      double transfer = throughput > 0 ? (REFERENCE_SIZE / throughput) : 0;
+      return latencyMs / 1000d + transfer;
+    }
+  }
+}
@@ -0,0 +1,302 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.forked;
+
+import javax.annotation.Nullable;
+import org.sonarsource.scanner.lib.internal.batch.LogOutput;
+
+/**
+ * Decoder of the logs written by the Scanner Engine on its standard output, as JSON objects with the fields {@code level},
+ * {@code message} and {@code stacktrace}. The engine can print hundreds of thousands of lines in debug, so this is a hand-rolled scanner
+ * that doesn't allocate anything but the logged message: lines that are not JSON objects are detected by their first character, and
+ * the level is matched in place.
+ * <p>
+ * Not thread safe: use one decoder per stream.
+ */
+class EngineLogDecoder {
+
+  private static final int OTHER_FIELD = 0;
+  private static final int LEVEL_FIELD = 1;
+  private static final int MESSAGE_FIELD = 2;
+  private static final int STACKTRACE_FIELD = 3;
+
+  private final StringBuilder unescapeBuffer = new StringBuilder();
+  private String line = "";
+  private int pos;
+  private boolean escaped;
+  private LogOutput.Level level;
+  private String message;
+  private String stacktrace;
+
+  @FunctionalInterface
+  interface Handler {
+    void log(LogOutput.Level level, @Nullable String message, @Nullable String stacktrace);
+  }
+
+  /**
+   * @return false if the line is not a log, in which case the handler is not called
+   */
+  boolean decode(String line, Handler handler) {
+    this.line = line;
+    this.pos = 0;
+    this.level = null;
+    this.message = null;
+    this.stacktrace = null;
+    skipWhitespaces();
+    if (peek() != '{' || !parseObject()) {
+      return false;
+    }
+    skipWhitespaces();
+    if (pos != line.length() || level == null) {
+      return false;
+    }
+    handler.log(level, message, stacktrace);
+    return true;
+  }
+
+  private boolean parseObject() {
+    pos++;
+    skipWhitespaces();
+    if (peek() == '}') {
+      pos++;
+      return true;
+    }
+    while (true) {
+      skipWhitespaces();
+      if (peek() != '"') {
+        return false;
+      }
+      int keyStart = pos + 1;
+      int keyEnd = scanString();
+      if (keyEnd < 0) {
+        return false;
+      }
+      int field = escaped ? OTHER_FIELD : field(keyStart, keyEnd);
+      skipWhitespaces();
+      if (peek() != ':') {
+        return false;
+      }
+      pos++;
+      skipWhitespaces();
+      if (!(field == OTHER_FIELD ? skipValue() : parseField(field))) {
+        return false;
+      }
+      skipWhitespaces();
+      char c = peek();
+      pos++;
+      if (c == '}') {
+        return true;
+      }
+      if (c != ',') {
+        return false;
+      }
+    }
+  }
+
+  private int field(int start, int end) {
+    if (matches(start, end, "level")) {
+      return LEVEL_FIELD;
+    }
+    if (matches(start, end, "message")) {
+      return MESSAGE_FIELD;
+    }
+    if (matches(start, end, "stacktrace")) {
+      return STACKTRACE_FIELD;
+    }
+    return OTHER_FIELD;
+  }
+
+  private boolean parseField(int field) {
+    if (line.startsWith("null", pos)) {
+      pos += 4;
+      return true;
+    }
+    if (peek() != '"') {
+      return false;
+    }
+    int start = pos + 1;
+    int end = scanString();
+    if (end < 0) {
+      return false;
+    }
+    if (field == LEVEL_FIELD) {
+      level = escaped ? toLevel(unescape(start, end), 0, -1) : toLevel(line, start, end);
+    } else {
+      var value = escaped ? unescape(start, end) : line.substring(start, end);
+      if (field == MESSAGE_FIELD) {
+        message = value;
+      } else {
+        stacktrace = value;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Unknown levels are logged as info
+   *
+   * @param end -1 for the end of the string
+   */
+  private static LogOutput.Level toLevel(String s, int start, int end) {
+    int actualEnd = end < 0 ? s.length() : end;
+    if (regionEquals(s, start, actualEnd, "ERROR")) {
+      return LogOutput.Level.ERROR;
+    }
+    if (regionEquals(s, start, actualEnd, "WARN")) {
+      return LogOutput.Level.WARN;
+    }
+    if (regionEquals(s, start, actualEnd, "DEBUG")) {
+      return LogOutput.Level.DEBUG;
+    }
+    if (regionEquals(s, start, actualEnd, "TRACE")) {
+      return LogOutput.Level.TRACE;
+    }
+    return LogOutput.Level.INFO;
+  }
+
+  private boolean matches(int start, int end, String expected) {
+    return regionEquals(line, start, end, expected);
+  }
+
+  private static boolean regionEquals(String s, int start, int end, String expected) {
+    return end - start == expected.length() && s.regionMatches(start, expected, 0, expected.length());
+  }
+
+  /**
+   * Moves after the closing quote of the string starting at the current position, and tells if the string contains escape sequences.
+   *
+   * @return the position of the closing quote, or -1 if the string is not terminated
+   */
+  private int scanString() {
+    escaped = false;
+    for (int i = pos + 1; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '\\') {
+        escaped = true;
+        i++;
+      } else if (c == '"') {
+        pos = i + 1;
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private String unescape(int start, int end) {
+    unescapeBuffer.setLength(0);
+    for (int i = start; i < end; i++) {
+      char c = line.charAt(i);
+      if (c != '\\') {
+        unescapeBuffer.append(c);
+        continue;
+      }
+      i++;
+      char escape = line.charAt(i);
+      switch (escape) {
+        case 'n':
+          unescapeBuffer.append('\n');
+          break;
+        case 't':
+          unescapeBuffer.append('\t');
+          break;
+        case 'r':
+          unescapeBuffer.append('\r');
+          break;
+        case 'b':
+          unescapeBuffer.append('\b');
+          break;
+        case 'f':
+          unescapeBuffer.append('\f');
+          break;
+        case 'u':
+          int codePoint = end - i > 4 ? parseHex(i + 1) : -1;
+          // Invalid escape sequences are kept as is
+          if (codePoint < 0) {
+            unescapeBuffer.append('\\').append(escape);
+          } else {
+            unescapeBuffer.append((char) codePoint);
+            i += 4;
+          }
+          break;
+        default:
+          unescapeBuffer.append(escape);
+      }
+    }
+    return unescapeBuffer.toString();
+  }
+
+  private int parseHex(int start) {
+    int value = 0;
+    for (int i = start; i < start + 4; i++) {
+      int digit = Character.digit(line.charAt(i), 16);
+      if (digit < 0) {
+        return -1;
+      }
+      value = value * 16 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * Skips the value of a field that is not part of the log format, which can be a nested object or array
+   */
+  private boolean skipValue() {
+    int depth = 0;
+    int start = pos;
+    while (pos < line.length()) {
+      char c = line.charAt(pos);
+      if (c == '"') {
+        if (scanString() < 0) {
+          return false;
+        }
+        if (depth == 0) {
+          return true;
+        }
+        continue;
+      }
+      if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        if (depth == 0) {
+          return pos > start;
+        }
+        depth--;
+        if (depth == 0) {
+          pos++;
+          return true;
+        }
+      } else if (depth == 0 && (c == ',' || Character.isWhitespace(c))) {
+        return pos > start;
+      }
+      pos++;
+    }
+    return false;
+  }
+
+  private void skipWhitespaces() {
+    while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+      pos++;
+    }
+  }
+
+  private char peek() {
+    return pos < line.length() ? line.charAt(pos) : '\0';
+  }
+}
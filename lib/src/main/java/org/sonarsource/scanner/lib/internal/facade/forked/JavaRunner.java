@@ -24,14 +24,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.function.Consumer;
 import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.lib.AnalysisResourceUsage;
+import org.sonarsource.scanner.lib.internal.util.IoThreads;
 
 public class JavaRunner {
   private static final Logger LOG = LoggerFactory.getLogger(JavaRunner.class);
@@ -42,17 +46,35 @@ public class JavaRunner {
 
   private final Path javaExecutable;
   private final JreCacheHit jreCacheHit;
+  private final IoThreads ioThreads;
+  @Nullable
+  private volatile AnalysisResourceUsage lastResourceUsage;
 
   public JavaRunner(Path javaExecutable, JreCacheHit jreCacheHit) {
+    this(javaExecutable, jreCacheHit, IoThreads.platform());
+  }
+
+  public JavaRunner(Path javaExecutable, JreCacheHit jreCacheHit, IoThreads ioThreads) {
     this.javaExecutable = javaExecutable;
     this.jreCacheHit = jreCacheHit;
+    this.ioThreads = ioThreads;
   }
 
   public JreCacheHit getJreCacheHit() {
     return jreCacheHit;
   }
 
-  public boolean execute(List<String> args, @Nullable String input, Consumer<String> stdOutConsummer) {
+  /**
+   * @param input writes what the process should read from its standard input, directly to the pipe, which is closed afterward
+   */
+  public boolean execute(List<String> args, @Nullable StdinWriter input, Consumer<String> stdOutConsummer) {
+    return execute(args, input, stdOutConsummer, false);
+  }
+
+  /**
+   * @param measureResources if true, the resources used by the process are sampled while it runs, see {@link #getLastResourceUsage()}
+   */
+  public boolean execute(List<String> args, @Nullable StdinWriter input, Consumer<String> stdOutConsummer, boolean measureResources) {
     try {
       List<String> command = new ArrayList<>(args);
       command.add(0, javaExecutable.toString());
@@ -60,16 +82,24 @@ public class JavaRunner {
         LOG.debug("Executing: {}", String.join(" ", command));
       }
       Process process = new ProcessBuilder(command).start();
-      var stdoutConsummer = new StreamGobbler(process.getInputStream(), stdOutConsummer);
-      var stdErrConsummer = new StreamGobbler(process.getErrorStream(), stderr -> LOG.error("[stderr] {}", stderr));
+      ProcessResourceSampler resourceSampler = null;
+      if (measureResources) {
+        resourceSampler = new ProcessResourceSampler(process.toHandle());
+        resourceSampler.start(ioThreads);
+      }
+      var stdoutConsummer = ioThreads.newThread("sonar-scanner-stdout", new StreamGobbler(process.getInputStream(), stdOutConsummer));
+      var stdErrConsummer = ioThreads.newThread("sonar-scanner-stderr", new StreamGobbler(process.getErrorStream(), stderr -> LOG.error("[stderr] {}", stderr)));
       stdErrConsummer.start();
       stdoutConsummer.start();
       if (input != null && process.isAlive()) {
         try (var stdin = process.getOutputStream(); var osw = new OutputStreamWriter(stdin, StandardCharsets.UTF_8)) {
-          osw.write(input);
+          input.writeTo(osw);
         }
       }
       var exitCode = process.waitFor();
+      if (resourceSampler != null) {
+        lastResourceUsage = resourceSampler.stop();
+      }
       stdoutConsummer.join();
       stdErrConsummer.join();
 
@@ -84,11 +114,23 @@ public class JavaRunner {
     }
   }
 
+  /**
+   * @return the resources used by the process of the last {@link #execute} call that completed, and that measured them
+   */
+  public Optional<AnalysisResourceUsage> getLastResourceUsage() {
+    return Optional.ofNullable(lastResourceUsage);
+  }
+
   public Path getJavaExecutable() {
     return javaExecutable;
   }
 
-  private static class StreamGobbler extends Thread {
+  @FunctionalInterface
+  public interface StdinWriter {
+    void writeTo(Writer writer) throws IOException;
+  }
+
+  private static class StreamGobbler implements Runnable {
     private final InputStream inputStream;
     private final Consumer<String> consumer;
 
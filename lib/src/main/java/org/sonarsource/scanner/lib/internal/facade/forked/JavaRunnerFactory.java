@@ -19,14 +19,12 @@
  */
 package org.sonarsource.scanner.lib.internal.facade.forked;
 
-import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 import java.io.BufferedReader;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.lang.reflect.Type;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
@@ -34,8 +32,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.security.MessageDigest;
 import java.util.Map;
 import java.util.Optional;
 import javax.annotation.Nullable;
@@ -44,11 +41,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonarsource.scanner.downloadcache.CachedFile;
 import org.sonarsource.scanner.downloadcache.DownloadCache;
+import org.sonarsource.scanner.downloadcache.DownloadProgressTracker;
 import org.sonarsource.scanner.downloadcache.Downloader;
 import org.sonarsource.scanner.downloadcache.HashMismatchException;
 import org.sonarsource.scanner.lib.internal.MessageException;
 import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
 import org.sonarsource.scanner.lib.internal.util.CompressionUtils;
+import org.sonarsource.scanner.lib.internal.util.IoThreads;
+import org.sonarsource.scanner.lib.internal.util.Json;
 import org.sonarsource.scanner.lib.internal.util.ProcessWrapperFactory;
 import org.sonarsource.scanner.lib.internal.util.System2;
 
@@ -76,10 +76,11 @@ public class JavaRunnerFactory {
   }
 
   public JavaRunner createRunner(ScannerHttpClient scannerHttpClient, DownloadCache downloadCache, Map<String, String> properties) {
+    var ioThreads = IoThreads.fromProperties(properties);
     String javaExecutablePropValue = properties.get(JAVA_EXECUTABLE_PATH);
     if (javaExecutablePropValue != null) {
       LOG.info("Using the configured java executable '{}'", javaExecutablePropValue);
-      return new JavaRunner(Paths.get(javaExecutablePropValue), JreCacheHit.DISABLED);
+      return new JavaRunner(Paths.get(javaExecutablePropValue), JreCacheHit.DISABLED, ioThreads);
     }
     boolean skipJreProvisioning = Boolean.parseBoolean(properties.get(SKIP_JRE_PROVISIONING));
     if (skipJreProvisioning) {
@@ -87,7 +88,7 @@ public class JavaRunnerFactory {
     } else {
       var cachedFile = getJreFromServer(scannerHttpClient, downloadCache, properties, true);
       if (cachedFile.isPresent()) {
-        return new JavaRunner(cachedFile.get().getPath(), cachedFile.get().didCacheHit() ? JreCacheHit.HIT : JreCacheHit.MISS);
+        return new JavaRunner(cachedFile.get().getPath(), cachedFile.get().didCacheHit() ? JreCacheHit.HIT : JreCacheHit.MISS, ioThreads);
       }
     }
     String javaHome = system.getEnvironmentVariable("JAVA_HOME");
@@ -96,11 +97,11 @@ public class JavaRunnerFactory {
       var javaExecutable = Paths.get(javaHome, "bin", javaExe);
       if (Files.exists(javaExecutable)) {
         LOG.info("Using the java executable '{}' from JAVA_HOME", javaExecutable);
-        return new JavaRunner(javaExecutable, JreCacheHit.DISABLED);
+        return new JavaRunner(javaExecutable, JreCacheHit.DISABLED, ioThreads);
       }
     }
     LOG.info("The java executable in the PATH will be used");
-    return new JavaRunner(isOsWindows() ? findJavaInPath(javaExe) : Paths.get(javaExe), JreCacheHit.DISABLED);
+    return new JavaRunner(isOsWindows() ? findJavaInPath(javaExe) : Paths.get(javaExe), JreCacheHit.DISABLED, ioThreads);
   }
 
   private boolean isOsWindows() {
@@ -144,7 +145,7 @@ public class JavaRunnerFactory {
         return Optional.empty();
       }
       var cachedFile = downloadCache.getOrDownload(jreMetadata.get().getFilename(), jreMetadata.get().getSha256(), "SHA-256",
-        new JreDownloader(scannerHttpClient, jreMetadata.get()));
+        new JreDownloader(scannerHttpClient, jreMetadata.get(), ArtifactMirrors.from(properties, downloadCache)));
       var extractedDirectory = extractArchive(cachedFile.getPath());
       return Optional.of(new CachedFile(extractedDirectory.resolve(jreMetadata.get().javaPath), cachedFile.didCacheHit()));
     } catch (HashMismatchException e) {
@@ -157,13 +158,20 @@ public class JavaRunnerFactory {
     }
   }
 
+  /**
+   * Only the first JRE of the list is used, so there is no need to read the others.
+   */
+  private static Optional<JreMetadata> readFirstJre(JsonReader reader) throws IOException {
+    reader.beginArray();
+    if (!reader.hasNext()) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(Json.gson().fromJson(reader, JreMetadata.class));
+  }
+
   private static Optional<JreMetadata> getJreMetadata(ScannerHttpClient scannerHttpClient, String os, String arch) {
     try {
-      String response = scannerHttpClient.callRestApi(format(API_PATH_JRE + "?os=%s&arch=%s", os, arch));
-      Type listType = new TypeToken<ArrayList<JreMetadata>>() {
-      }.getType();
-      List<JreMetadata> jres = new Gson().fromJson(response, listType);
-      return jres.stream().findFirst();
+      return scannerHttpClient.callRestApi(format(API_PATH_JRE + "?os=%s&arch=%s", os, arch), JavaRunnerFactory::readFirstJre);
     } catch (Exception e) {
       throw new MessageException("Failed to query JRE metadata: " + e.getMessage(), e);
     }
@@ -244,18 +252,43 @@ public class JavaRunnerFactory {
   static class JreDownloader implements Downloader {
     private final ScannerHttpClient connection;
     private final JreMetadata jreMetadata;
+    private final ArtifactMirrors mirrors;
 
     JreDownloader(ScannerHttpClient connection, JreMetadata jreMetadata) {
+      this(connection, jreMetadata, ArtifactMirrors.NONE);
+    }
+
+    JreDownloader(ScannerHttpClient connection, JreMetadata jreMetadata, ArtifactMirrors mirrors) {
       this.connection = connection;
       this.jreMetadata = jreMetadata;
+      this.mirrors = mirrors;
+    }
+
+    @Override
+    public void download(String filename, Path toFile) {
+      download(toFile, null, null);
+    }
+
+    @Override
+    public boolean download(String filename, Path toFile, MessageDigest digest) {
+      download(toFile, digest, null);
+      return true;
     }
 
     @Override
-    public void download(String filename, Path toFile) throws IOException {
+    public boolean download(String filename, Path toFile, MessageDigest digest, DownloadProgressTracker progress) {
+      download(toFile, digest, progress);
+      return true;
+    }
+
+    private void download(Path toFile, @Nullable MessageDigest digest, @Nullable DownloadProgressTracker progress) {
+      if (mirrors.download(connection, jreMetadata.getFilename(), jreMetadata.getSha256(), toFile, digest, progress)) {
+        return;
+      }
       if (StringUtils.isNotBlank(jreMetadata.getDownloadUrl())) {
-        connection.downloadFromExternalUrl(jreMetadata.getDownloadUrl(), toFile);
+        connection.downloadFromExternalUrl(jreMetadata.getDownloadUrl(), toFile, digest, progress);
       } else {
-        connection.downloadFromRestApi(API_PATH_JRE + "/" + jreMetadata.id, toFile);
+        connection.downloadFromRestApi(API_PATH_JRE + "/" + jreMetadata.id, toFile, digest, progress);
       }
     }
   }
@@ -20,33 +20,44 @@
 package org.sonarsource.scanner.lib.internal.facade.forked;
 
 import java.util.Map;
+import java.util.Optional;
 import javax.annotation.Nullable;
+import org.sonarsource.scanner.lib.AnalysisResourceUsage;
 import org.sonarsource.scanner.lib.internal.facade.AbstractScannerEngineFacade;
+import org.sonarsource.scanner.lib.internal.logging.EngineLogging;
 
 public class NewScannerEngineFacade extends AbstractScannerEngineFacade {
   private final ScannerEngineLauncher launcher;
+  private final EngineLogging logging;
 
-  private NewScannerEngineFacade(Map<String, String> bootstrapProperties, ScannerEngineLauncher launcher,
+  private NewScannerEngineFacade(Map<String, String> bootstrapProperties, ScannerEngineLauncher launcher, EngineLogging logging,
     boolean isSonarQubeCloud, @Nullable String serverVersion) {
     super(bootstrapProperties, isSonarQubeCloud, serverVersion, launcher.didEngineCacheHit().orElse(null), launcher.getJreCacheHit());
     this.launcher = launcher;
+    this.logging = logging;
   }
 
-  public static NewScannerEngineFacade forSonarQubeCloud(Map<String, String> bootstrapProperties, ScannerEngineLauncher launcher) {
-    return new NewScannerEngineFacade(bootstrapProperties, launcher, true, null);
+  public static NewScannerEngineFacade forSonarQubeCloud(Map<String, String> bootstrapProperties, ScannerEngineLauncher launcher, EngineLogging logging) {
+    return new NewScannerEngineFacade(bootstrapProperties, launcher, logging, true, null);
   }
 
-  public static NewScannerEngineFacade forSonarQubeServer(Map<String, String> bootstrapProperties, ScannerEngineLauncher launcher, String serverVersion) {
-    return new NewScannerEngineFacade(bootstrapProperties, launcher, false, serverVersion);
+  public static NewScannerEngineFacade forSonarQubeServer(Map<String, String> bootstrapProperties, ScannerEngineLauncher launcher, EngineLogging logging,
+    String serverVersion) {
+    return new NewScannerEngineFacade(bootstrapProperties, launcher, logging, false, serverVersion);
   }
 
   @Override
   protected boolean doAnalyze(Map<String, String> allProps) {
-    return launcher.execute(allProps);
+    return launcher.execute(allProps, logging);
+  }
+
+  @Override
+  public Optional<AnalysisResourceUsage> getLastAnalysisResourceUsage() {
+    return launcher.getLastResourceUsage();
   }
 
   @Override
   public void close() throws Exception {
-    // nothing to do
+    launcher.close();
   }
 }
@@ -0,0 +1,181 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.forked;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonarsource.scanner.lib.AnalysisResourceUsage;
+import org.sonarsource.scanner.lib.internal.util.IoThreads;
+
+/**
+ * Samples the resources used by a child process while it runs. Once the process has exited, it is reaped by the JDK, and both
+ * {@link ProcessHandle.Info} and /proc/&lt;pid&gt; stop returning anything, so we can only keep the last sample. The pid can then be
+ * reused by another process, so /proc is only read while the process is alive.
+ * <p>
+ * The CPU time is portable. On Linux, it is split into user and system time, and the peak RSS and I/O bytes are read from /proc.
+ */
+class ProcessResourceSampler {
+
+  static final Duration SAMPLING_INTERVAL = Duration.ofMillis(500);
+  // The unit of the times in /proc/<pid>/stat, which is fixed to 100 for the user space ABI
+  private static final long USER_HZ = 100;
+
+  private final ProcessHandle process;
+  private final Path procDir;
+  private final long startNanos = System.nanoTime();
+  @Nullable
+  private Thread thread;
+  @Nullable
+  private volatile Duration cpuTime;
+  @Nullable
+  private volatile Duration userCpuTime;
+  @Nullable
+  private volatile Duration systemCpuTime;
+  @Nullable
+  private volatile Long peakRssBytes;
+  @Nullable
+  private volatile Long readBytes;
+  @Nullable
+  private volatile Long writtenBytes;
+
+  ProcessResourceSampler(ProcessHandle process) {
+    this(process, Paths.get("/proc"));
+  }
+
+  ProcessResourceSampler(ProcessHandle process, Path procRoot) {
+    this.process = process;
+    this.procDir = procRoot.resolve(Long.toString(process.pid()));
+  }
+
+  void start(IoThreads ioThreads) {
+    var samplerThread = ioThreads.newThread("sonar-scanner-resource-sampler", this::run);
+    samplerThread.setDaemon(true);
+    samplerThread.start();
+    this.thread = samplerThread;
+  }
+
+  private void run() {
+    try {
+      while (process.isAlive()) {
+        sample();
+        Thread.sleep(SAMPLING_INTERVAL.toMillis());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Stop sampling, as soon as the process has exited. A last sample is taken, which only succeeds if the process has not exited yet,
+   * so that the end of the analysis is accounted as much as possible.
+   */
+  AnalysisResourceUsage stop() throws InterruptedException {
+    var wallTime = Duration.ofNanos(System.nanoTime() - startNanos);
+    var samplerThread = thread;
+    if (samplerThread != null) {
+      samplerThread.interrupt();
+      samplerThread.join();
+    }
+    sample();
+    return new AnalysisResourceUsage(wallTime, cpuTime, userCpuTime, systemCpuTime, peakRssBytes, readBytes, writtenBytes);
+  }
+
+  /**
+   * Each figure keeps its previous value if it can't be read, for example because the process is exiting.
+   */
+  void sample() {
+    // The JDK checks the start time of the process, so this doesn't report the figures of another process reusing the pid
+    process.info().totalCpuDuration().ifPresent(d -> cpuTime = d);
+    if (!process.isAlive() || !Files.isDirectory(procDir)) {
+      return;
+    }
+    var stat = read("stat");
+    if (stat != null) {
+      parseCpuTimes(stat);
+    }
+    var status = read("status");
+    if (status != null) {
+      var peakRssKb = findValue(status, "VmHWM:");
+      if (peakRssKb != null) {
+        peakRssBytes = peakRssKb * 1024;
+      }
+    }
+    var io = read("io");
+    if (io != null) {
+      var read = findValue(io, "read_bytes:");
+      var written = findValue(io, "write_bytes:");
+      if (read != null && written != null) {
+        readBytes = read;
+        writtenBytes = written;
+      }
+    }
+  }
+
+  private void parseCpuTimes(String stat) {
+    // The command name, in parentheses, can contain spaces, so fields are counted from the closing parenthesis, which is followed by field 3
+    int commandEnd = stat.lastIndexOf(')');
+    if (commandEnd < 0) {
+      return;
+    }
+    String[] fields = stat.substring(commandEnd + 1).trim().split("\\s+");
+    if (fields.length < 13) {
+      return;
+    }
+    try {
+      // utime and stime are the fields 14 and 15
+      userCpuTime = Duration.ofMillis(Long.parseLong(fields[11]) * 1000 / USER_HZ);
+      systemCpuTime = Duration.ofMillis(Long.parseLong(fields[12]) * 1000 / USER_HZ);
+    } catch (NumberFormatException e) {
+      // keep the previous sample
+    }
+  }
+
+  @CheckForNull
+  private static Long findValue(String content, String key) {
+    for (String line : content.split("\n")) {
+      if (line.startsWith(key)) {
+        var value = line.substring(key.length()).trim();
+        int space = value.indexOf(' ');
+        try {
+          return Long.parseLong(space < 0 ? value : value.substring(0, space));
+        } catch (NumberFormatException e) {
+          return null;
+        }
+      }
+    }
+    return null;
+  }
+
+  @CheckForNull
+  private String read(String file) {
+    try {
+      return Files.readString(procDir.resolve(file), StandardCharsets.UTF_8);
+    } catch (IOException | RuntimeException e) {
+      // Gone because the process has exited, or not readable
+      return null;
+    }
+  }
+}
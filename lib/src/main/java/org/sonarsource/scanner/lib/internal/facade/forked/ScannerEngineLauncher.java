@@ -19,28 +19,39 @@
  */
 package org.sonarsource.scanner.lib.internal.facade.forked;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.annotations.SerializedName;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
 import org.sonarsource.scanner.downloadcache.CachedFile;
+import org.sonarsource.scanner.lib.AnalysisResourceUsage;
+import org.sonarsource.scanner.lib.LogEvent;
 import org.sonarsource.scanner.lib.ScannerProperties;
+import org.sonarsource.scanner.lib.internal.batch.LogOutput;
+import org.sonarsource.scanner.lib.internal.facade.inprocess.EmbeddedScannerEngine;
 import org.sonarsource.scanner.lib.internal.http.HttpClientFactory;
+import org.sonarsource.scanner.lib.internal.logging.EngineLogging;
 import org.sonarsource.scanner.lib.internal.util.Either;
+import org.sonarsource.scanner.lib.internal.util.Json;
 
-public class ScannerEngineLauncher {
+public class ScannerEngineLauncher implements AutoCloseable {
   private static final Set<String> SENSITIVE_JVM_ARGUMENTS = Set.of(
     "sonar.login",
     "password",
@@ -49,67 +60,121 @@ public class ScannerEngineLauncher {
   private static final Logger LOG = LoggerFactory.getLogger(ScannerEngineLauncher.class);
 
   private static final String JSON_FIELD_SCANNER_PROPERTIES = "scannerProperties";
+  static final String LOG_LEVEL_PROPERTY = "sonar.log.level";
+  static final String VERBOSE_PROPERTY = "sonar.verbose";
+  @Nullable
   private final JavaRunner javaRunner;
+  @Nullable
+  private final EmbeddedScannerEngine embeddedEngine;
   private final Either<CachedFile, Path> scannerEngineJar;
+  @Nullable
+  private volatile AnalysisResourceUsage lastResourceUsage;
 
   public ScannerEngineLauncher(JavaRunner javaRunner, Either<CachedFile, Path> scannerEngineJar) {
+    this(javaRunner, null, scannerEngineJar);
+  }
+
+  /**
+   * The engine runs in the current JVM, so there is no need for a JRE
+   */
+  public ScannerEngineLauncher(EmbeddedScannerEngine embeddedEngine, Either<CachedFile, Path> scannerEngineJar) {
+    this(null, embeddedEngine, scannerEngineJar);
+  }
+
+  private ScannerEngineLauncher(@Nullable JavaRunner javaRunner, @Nullable EmbeddedScannerEngine embeddedEngine, Either<CachedFile, Path> scannerEngineJar) {
     this.javaRunner = javaRunner;
+    this.embeddedEngine = embeddedEngine;
     this.scannerEngineJar = scannerEngineJar;
   }
 
   public boolean execute(Map<String, String> properties) {
-    return javaRunner.execute(buildArgs(properties), buildJsonProperties(properties), ScannerEngineLauncher::tryParse);
+    return execute(properties, EngineLogging.defaults());
   }
 
-  static void tryParse(String stdout) {
-    try {
-      var log = new Gson().fromJson(stdout, Log.class);
-      StringBuilder sb = new StringBuilder();
-      if (log.message != null) {
-        sb.append(log.message);
-      }
-      if (log.message != null && log.stacktrace != null) {
-        sb.append("\n");
+  public boolean execute(Map<String, String> properties, EngineLogging logging) {
+    try (var buffer = logging.open(LOG)) {
+      var decoder = new EngineLogDecoder();
+      EngineLogDecoder.Handler handler = (level, message, stacktrace) -> buffer.offer(toEvent(level, message, stacktrace));
+      Consumer<String> stdoutConsumer = stdout -> {
+        if (!decoder.decode(stdout, handler)) {
+          buffer.offer(new LogEvent(Level.INFO, "[stdout] " + stdout, null, Instant.now()));
+        }
+      };
+      // A custom sink may want the logs that SLF4J would discard
+      var loweredLogLevel = logging.hasCustomSink() ? Optional.<LogOutput.Level>empty() : lowerLogLevelToHost(properties, hostLogLevel());
+      var engineProperties = loweredLogLevel.map(level -> withLogLevel(properties, level)).orElse(properties);
+      if (embeddedEngine != null) {
+        return executeInProcess(embeddedEngine, engineProperties, stdoutConsumer);
       }
-      if (log.stacktrace != null) {
-        sb.append(log.stacktrace);
+      var args = buildArgs(properties, loweredLogLevel.orElse(null));
+      boolean success = javaRunner.execute(args, writer -> writeJsonProperties(engineProperties, writer), stdoutConsumer, true);
+      var resourceUsage = javaRunner.getLastResourceUsage();
+      lastResourceUsage = resourceUsage.orElse(null);
+      resourceUsage.ifPresent(usage -> LOG.info("Scanner Engine resource usage: {}", usage));
+      return success;
+    }
+  }
+
+  /**
+   * The forked engine gets {@link HttpClientFactory#BC_IGNORE_USELESS_PASSWD} on its command line. In the current JVM, system
+   * properties are global, so it is only set for the duration of the analysis, unless the host already set it.
+   */
+  private static boolean executeInProcess(EmbeddedScannerEngine engine, Map<String, String> engineProperties, Consumer<String> stdoutConsumer) {
+    boolean setByUs = System.getProperty(HttpClientFactory.BC_IGNORE_USELESS_PASSWD) == null;
+    if (setByUs) {
+      System.setProperty(HttpClientFactory.BC_IGNORE_USELESS_PASSWD, "true");
+    }
+    try {
+      return engine.execute(buildJsonProperties(engineProperties), stdoutConsumer);
+    } finally {
+      if (setByUs) {
+        System.clearProperty(HttpClientFactory.BC_IGNORE_USELESS_PASSWD);
       }
-      log(log.level, sb.toString());
-    } catch (Exception e) {
-      LOG.info("[stdout] {}", stdout);
     }
   }
 
-  private static void log(String level, String msg) {
-    switch (level) {
-      case "ERROR":
-        LOG.error(msg);
-        break;
-      case "WARN":
-        LOG.warn(msg);
-        break;
-      case "DEBUG":
-        LOG.debug(msg);
-        break;
-      case "TRACE":
-        LOG.trace(msg);
-        break;
-      case "INFO":
-      default:
-        LOG.info(msg);
+  private static LogEvent toEvent(LogOutput.Level level, @Nullable String message, @Nullable String stacktrace) {
+    return new LogEvent(Level.valueOf(level.name()), message == null ? "" : message, stacktrace, Instant.now());
+  }
+
+  static LogOutput.Level hostLogLevel() {
+    if (LOG.isTraceEnabled()) {
+      return LogOutput.Level.TRACE;
+    }
+    return LOG.isDebugEnabled() ? LogOutput.Level.DEBUG : LogOutput.Level.INFO;
+  }
+
+  /**
+   * Engine logs that the host would not print are still formatted, piped and decoded. So when the configured level of the engine is
+   * more detailed than the effective level of the host, it is lowered. It is never raised, since it also changes what the engine does.
+   *
+   * @return the level to give to the engine, or empty to keep the configured one
+   */
+  static Optional<LogOutput.Level> lowerLogLevelToHost(Map<String, String> properties, LogOutput.Level hostLevel) {
+    var configuredLevel = Boolean.parseBoolean(properties.get(VERBOSE_PROPERTY)) ? LogOutput.Level.DEBUG : LogOutput.Level.INFO;
+    var logLevel = properties.get(LOG_LEVEL_PROPERTY);
+    if (logLevel != null) {
+      try {
+        var level = LogOutput.Level.valueOf(logLevel.trim().toUpperCase(Locale.ENGLISH));
+        if (level.compareTo(configuredLevel) > 0) {
+          configuredLevel = level;
+        }
+      } catch (IllegalArgumentException e) {
+        // Let the engine deal with unsupported levels
+        return Optional.empty();
+      }
     }
+    return configuredLevel.compareTo(hostLevel) > 0 ? Optional.of(hostLevel) : Optional.empty();
   }
 
-  private static class Log {
-    @SerializedName("level")
-    private String level;
-    @SerializedName("message")
-    private String message;
-    @SerializedName("stacktrace")
-    private String stacktrace;
+  private static Map<String, String> withLogLevel(Map<String, String> properties, LogOutput.Level level) {
+    var adapted = new HashMap<>(properties);
+    adapted.put(LOG_LEVEL_PROPERTY, level.name());
+    adapted.put(VERBOSE_PROPERTY, Boolean.toString(level.compareTo(LogOutput.Level.DEBUG) >= 0));
+    return adapted;
   }
 
-  private List<String> buildArgs(Map<String, String> properties) {
+  private List<String> buildArgs(Map<String, String> properties, @Nullable LogOutput.Level loweredLogLevel) {
     List<String> args = new ArrayList<>();
     String javaOpts = properties.get(ScannerProperties.SCANNER_JAVA_OPTS);
     if (javaOpts != null) {
@@ -118,6 +183,10 @@ public class ScannerEngineLauncher {
       args.addAll(split);
     }
     args.add("-D" + HttpClientFactory.BC_IGNORE_USELESS_PASSWD + "=true");
+    if (loweredLogLevel != null) {
+      // Also applies to the logs of the engine before it reads its properties
+      args.add("-D" + LOG_LEVEL_PROPERTY + "=" + loweredLogLevel.name());
+    }
     args.add("-jar");
     args.add(scannerEngineJar.map(CachedFile::getPath, Function.identity()).toAbsolutePath().toString());
     return args;
@@ -145,18 +214,38 @@ public class ScannerEngineLauncher {
   }
 
   private static String buildJsonProperties(Map<String, String> properties) {
-    JsonArray propertiesArray = new JsonArray();
-    properties.entrySet().stream()
-      .filter(prop -> prop.getKey() != null)
-      .sorted(Map.Entry.comparingByKey()).forEach(prop -> {
-        JsonObject property = new JsonObject();
-        property.addProperty("key", prop.getKey());
-        property.addProperty("value", Optional.ofNullable(prop.getValue()).orElse(""));
-        propertiesArray.add(property);
-      });
-    JsonObject jsonObject = new JsonObject();
-    jsonObject.add(JSON_FIELD_SCANNER_PROPERTIES, propertiesArray);
-    return new Gson().toJson(jsonObject);
+    var json = new StringWriter();
+    try {
+      writeJsonProperties(properties, json);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return json.toString();
+  }
+
+  /**
+   * Properties can be large (long lists of files, tokens...), so they are streamed to the engine in key order, without building
+   * a JSON tree or string first.
+   */
+  static void writeJsonProperties(Map<String, String> properties, Writer writer) throws IOException {
+    List<Map.Entry<String, String>> sortedProperties = new ArrayList<>(properties.size());
+    for (var prop : properties.entrySet()) {
+      if (prop.getKey() != null) {
+        sortedProperties.add(prop);
+      }
+    }
+    sortedProperties.sort(Map.Entry.comparingByKey());
+    // Not closed, it would close the underlying writer that is owned by the caller
+    var json = Json.gson().newJsonWriter(writer);
+    json.beginObject().name(JSON_FIELD_SCANNER_PROPERTIES).beginArray();
+    for (var prop : sortedProperties) {
+      json.beginObject()
+        .name("key").value(prop.getKey())
+        .name("value").value(Optional.ofNullable(prop.getValue()).orElse(""))
+        .endObject();
+    }
+    json.endArray().endObject();
+    json.flush();
   }
 
   public Optional<Boolean> didEngineCacheHit() {
@@ -164,6 +253,24 @@ public class ScannerEngineLauncher {
   }
 
   public JreCacheHit getJreCacheHit() {
-    return javaRunner.getJreCacheHit();
+    return javaRunner == null ? JreCacheHit.DISABLED : javaRunner.getJreCacheHit();
+  }
+
+  /**
+   * @return empty if no analysis has completed yet, or if the engine runs in the current JVM
+   */
+  public Optional<AnalysisResourceUsage> getLastResourceUsage() {
+    return Optional.ofNullable(lastResourceUsage);
+  }
+
+  public boolean isInProcess() {
+    return embeddedEngine != null;
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (embeddedEngine != null) {
+      embeddedEngine.close();
+    }
   }
 }
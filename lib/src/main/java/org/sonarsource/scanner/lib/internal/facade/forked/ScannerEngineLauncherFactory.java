@@ -19,51 +19,93 @@
  */
 package org.sonarsource.scanner.lib.internal.facade.forked;
 
-import com.google.gson.Gson;
-import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.Collections;
 import java.util.Map;
+import java.util.function.Function;
 import javax.annotation.Nullable;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonarsource.scanner.downloadcache.CachedFile;
 import org.sonarsource.scanner.downloadcache.DownloadCache;
+import org.sonarsource.scanner.downloadcache.DownloadProgressTracker;
 import org.sonarsource.scanner.downloadcache.Downloader;
 import org.sonarsource.scanner.downloadcache.HashMismatchException;
 import org.sonarsource.scanner.lib.internal.MessageException;
+import org.sonarsource.scanner.lib.internal.facade.inprocess.EmbeddedScannerEngine;
 import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
 import org.sonarsource.scanner.lib.internal.util.Either;
+import org.sonarsource.scanner.lib.internal.util.Json;
 import org.sonarsource.scanner.lib.internal.util.ProcessWrapperFactory;
 import org.sonarsource.scanner.lib.internal.util.System2;
 
+import static org.sonarsource.scanner.lib.ScannerProperties.JAVA_EXECUTABLE_PATH;
+import static org.sonarsource.scanner.lib.ScannerProperties.SCANNER_ENGINE_IN_PROCESS;
 import static org.sonarsource.scanner.lib.ScannerProperties.SCANNER_ENGINE_JAR_PATH;
+import static org.sonarsource.scanner.lib.ScannerProperties.SCANNER_JAVA_OPTS;
 
 public class ScannerEngineLauncherFactory {
 
   private static final Logger LOG = LoggerFactory.getLogger(ScannerEngineLauncherFactory.class);
 
   static final String API_PATH_ENGINE = "/analysis/engine";
+  static final int MIN_JAVA_VERSION_IN_PROCESS = 17;
   private final JavaRunnerFactory javaRunnerFactory;
+  private final int hostJavaVersion;
 
   public ScannerEngineLauncherFactory(System2 system) {
-    this.javaRunnerFactory = new JavaRunnerFactory(system, new ProcessWrapperFactory());
+    this(new JavaRunnerFactory(system, new ProcessWrapperFactory()));
   }
 
   ScannerEngineLauncherFactory(JavaRunnerFactory javaRunnerFactory) {
+    this(javaRunnerFactory, Runtime.version().feature());
+  }
+
+  ScannerEngineLauncherFactory(JavaRunnerFactory javaRunnerFactory, int hostJavaVersion) {
     this.javaRunnerFactory = javaRunnerFactory;
+    this.hostJavaVersion = hostJavaVersion;
   }
 
   public ScannerEngineLauncher createLauncher(ScannerHttpClient scannerHttpClient, DownloadCache downloadCache, Map<String, String> properties) {
-    JavaRunner javaRunner = javaRunnerFactory.createRunner(scannerHttpClient, downloadCache, properties);
-    jreSanityCheck(javaRunner);
+    if (canRunInProcess(properties)) {
+      var scannerEngine = getScannerEngine(scannerHttpClient, downloadCache, properties);
+      var embeddedEngine = EmbeddedScannerEngine.load(scannerEngine.map(CachedFile::getPath, Function.identity()), scannerEngine.isLeft());
+      if (embeddedEngine.isPresent()) {
+        LOG.info("Running the Scanner Engine in the current JVM");
+        return new ScannerEngineLauncher(embeddedEngine.get(), scannerEngine);
+      }
+      return new ScannerEngineLauncher(createJavaRunner(scannerHttpClient, downloadCache, properties), scannerEngine);
+    }
+    JavaRunner javaRunner = createJavaRunner(scannerHttpClient, downloadCache, properties);
     var scannerEngine = getScannerEngine(scannerHttpClient, downloadCache, properties);
     return new ScannerEngineLauncher(javaRunner, scannerEngine);
   }
 
+  private JavaRunner createJavaRunner(ScannerHttpClient scannerHttpClient, DownloadCache downloadCache, Map<String, String> properties) {
+    JavaRunner javaRunner = javaRunnerFactory.createRunner(scannerHttpClient, downloadCache, properties);
+    jreSanityCheck(javaRunner);
+    return javaRunner;
+  }
+
+  private boolean canRunInProcess(Map<String, String> properties) {
+    if (!Boolean.parseBoolean(properties.getOrDefault(SCANNER_ENGINE_IN_PROCESS, "false"))) {
+      return false;
+    }
+    if (hostJavaVersion < MIN_JAVA_VERSION_IN_PROCESS) {
+      LOG.debug("The Scanner Engine requires Java {}+ to run in the current JVM, which runs Java {}", MIN_JAVA_VERSION_IN_PROCESS, hostJavaVersion);
+      return false;
+    }
+    if (properties.containsKey(JAVA_EXECUTABLE_PATH) || properties.containsKey(SCANNER_JAVA_OPTS)) {
+      LOG.debug("A Java executable or Java options are configured, the Scanner Engine will run in a separate JVM");
+      return false;
+    }
+    return true;
+  }
+
   private static void jreSanityCheck(JavaRunner javaRunner) {
     javaRunner.execute(Collections.singletonList("--version"), null, LOG::debug);
   }
@@ -78,19 +120,19 @@ public class ScannerEngineLauncherFactory {
       LOG.info("Using the configured Scanner Engine '{}'", path);
       return Either.forRight(path);
     }
-    return Either.forLeft(provisionScannerEngine(scannerHttpClient, downloadCache, true));
+    return Either.forLeft(provisionScannerEngine(scannerHttpClient, downloadCache, ArtifactMirrors.from(properties, downloadCache), true));
   }
 
-  private static CachedFile provisionScannerEngine(ScannerHttpClient scannerHttpClient, DownloadCache downloadCache, boolean retry) {
+  private static CachedFile provisionScannerEngine(ScannerHttpClient scannerHttpClient, DownloadCache downloadCache, ArtifactMirrors mirrors, boolean retry) {
     try {
       var scannerEngineMetadata = getScannerEngineMetadata(scannerHttpClient);
       return downloadCache.getOrDownload(scannerEngineMetadata.getFilename(), scannerEngineMetadata.getSha256(), "SHA-256",
-        new ScannerEngineDownloader(scannerHttpClient, scannerEngineMetadata));
+        new ScannerEngineDownloader(scannerHttpClient, scannerEngineMetadata, mirrors));
     } catch (HashMismatchException e) {
       if (retry) {
         // A new scanner-engine might have been published between the metadata fetch and the download
         LOG.warn("Failed to get the scanner-engine, retrying...");
-        return provisionScannerEngine(scannerHttpClient, downloadCache, false);
+        return provisionScannerEngine(scannerHttpClient, downloadCache, mirrors, false);
       }
       throw new IllegalStateException("Unable to provision the Scanner Engine", e);
     }
@@ -98,8 +140,7 @@ public class ScannerEngineLauncherFactory {
 
   private static ScannerEngineMetadata getScannerEngineMetadata(ScannerHttpClient scannerHttpClient) {
     try {
-      String response = scannerHttpClient.callRestApi(API_PATH_ENGINE);
-      return new Gson().fromJson(response, ScannerEngineMetadata.class);
+      return scannerHttpClient.callRestApi(API_PATH_ENGINE, reader -> Json.gson().<ScannerEngineMetadata>fromJson(reader, ScannerEngineMetadata.class));
     } catch (Exception e) {
       throw new MessageException("Failed to get the scanner-engine metadata: " + e.getMessage(), e);
     }
@@ -114,18 +155,43 @@ public class ScannerEngineLauncherFactory {
   static class ScannerEngineDownloader implements Downloader {
     private final ScannerHttpClient connection;
     private final ScannerEngineMetadata scannerEngineMetadata;
+    private final ArtifactMirrors mirrors;
 
     ScannerEngineDownloader(ScannerHttpClient connection, ScannerEngineMetadata scannerEngineMetadata) {
+      this(connection, scannerEngineMetadata, ArtifactMirrors.NONE);
+    }
+
+    ScannerEngineDownloader(ScannerHttpClient connection, ScannerEngineMetadata scannerEngineMetadata, ArtifactMirrors mirrors) {
       this.connection = connection;
       this.scannerEngineMetadata = scannerEngineMetadata;
+      this.mirrors = mirrors;
+    }
+
+    @Override
+    public void download(String filename, Path toFile) {
+      download(toFile, null, null);
     }
 
     @Override
-    public void download(String filename, Path toFile) throws IOException {
+    public boolean download(String filename, Path toFile, MessageDigest digest) {
+      download(toFile, digest, null);
+      return true;
+    }
+
+    @Override
+    public boolean download(String filename, Path toFile, MessageDigest digest, DownloadProgressTracker progress) {
+      download(toFile, digest, progress);
+      return true;
+    }
+
+    private void download(Path toFile, @Nullable MessageDigest digest, @Nullable DownloadProgressTracker progress) {
+      if (mirrors.download(connection, scannerEngineMetadata.getFilename(), scannerEngineMetadata.getSha256(), toFile, digest, progress)) {
+        return;
+      }
       if (StringUtils.isNotBlank(scannerEngineMetadata.getDownloadUrl())) {
-        connection.downloadFromExternalUrl(scannerEngineMetadata.getDownloadUrl(), toFile);
+        connection.downloadFromExternalUrl(scannerEngineMetadata.getDownloadUrl(), toFile, digest, progress);
       } else {
-        connection.downloadFromRestApi(API_PATH_ENGINE, toFile);
+        connection.downloadFromRestApi(API_PATH_ENGINE, toFile, digest, progress);
       }
     }
   }
@@ -19,43 +19,96 @@
  */
 package org.sonarsource.scanner.lib.internal.facade.inprocess;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
-import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.ThreadSafe;
 
-@Immutable
+/**
+ * Decide which classes can be loaded from the parent classloader. The longest matching prefix wins, and if there is a tie between a
+ * mask and an unmask rule, the class is masked.
+ * <p>
+ * Since this is called for every class load, the rules are compiled into a prefix tree, and the decision is memoized per package
+ * when no rule is more specific than the package itself.
+ */
+@ThreadSafe
 public class ClassloadRules {
-  private final List<String> mask;
-  private final List<String> unmask;
+  private final Node root = new Node();
+  private final Map<String, Boolean> decisionsByPackage = new ConcurrentHashMap<>();
 
   public ClassloadRules(Set<String> maskRules, Set<String> unmaskRules) {
-    this.mask = new ArrayList<>(maskRules);
-    this.unmask = new ArrayList<>(unmaskRules);
+    maskRules.forEach(rule -> add(rule).masked = true);
+    unmaskRules.forEach(rule -> add(rule).unmasked = true);
+  }
+
+  private Node add(String prefix) {
+    var node = root;
+    for (int i = 0; i < prefix.length(); i++) {
+      node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+    }
+    return node;
   }
 
   public boolean canLoad(String className) {
-    // if there is a tie -> block it
-    return unmaskSize(className) > maskSize(className);
+    int lastDot = className.lastIndexOf('.');
+    if (lastDot < 0) {
+      return match(className).canLoad();
+    }
+    String packagePrefix = className.substring(0, lastDot + 1);
+    var decision = decisionsByPackage.get(packagePrefix);
+    if (decision != null) {
+      return decision;
+    }
+    var packageMatch = match(packagePrefix);
+    if (packageMatch.node == null || packageMatch.node.children.isEmpty()) {
+      // No rule is longer than the package name, so all the classes of the package get the same decision
+      decisionsByPackage.put(packagePrefix, packageMatch.canLoad());
+      return packageMatch.canLoad();
+    }
+    return match(className).canLoad();
   }
 
-  private int maskSize(String className) {
-    return findBestMatch(mask, className);
+  private Match match(String name) {
+    // there can be a match of 0 ("")
+    var match = new Match();
+    var node = root;
+    match.record(node, 0);
+    for (int i = 0; i < name.length() && node != null; i++) {
+      node = node.children.get(name.charAt(i));
+      match.record(node, i + 1);
+    }
+    match.node = node;
+    return match;
   }
 
-  private int unmaskSize(String className) {
-    return findBestMatch(unmask, className);
+  private static class Node {
+    private final Map<Character, Node> children = new HashMap<>();
+    private boolean masked;
+    private boolean unmasked;
   }
 
-  private static int findBestMatch(List<String> list, String name) {
-    // there can be a match of 0 ("")
-    int bestMatch = -1;
-    for (String s : list) {
-      if (name.startsWith(s) && s.length() > bestMatch) {
-        bestMatch = s.length();
+  private static class Match {
+    private int maskSize = -1;
+    private int unmaskSize = -1;
+    @CheckForNull
+    private Node node;
+
+    void record(@CheckForNull Node node, int length) {
+      if (node != null) {
+        if (node.masked) {
+          maskSize = length;
+        }
+        if (node.unmasked) {
+          unmaskSize = length;
+        }
       }
     }
 
-    return bestMatch;
+    boolean canLoad() {
+      // if there is a tie -> block it
+      return unmaskSize > maskSize;
+    }
   }
 }
@@ -0,0 +1,158 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.inprocess;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Diagnostic checking that closed engine classloaders are garbage collected. A classloader that is still reachable after a few
+ * garbage collections keeps all its classes in metaspace, which eventually kills long-lived build daemons.
+ */
+class ClassloaderLeakDetector {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ClassloaderLeakDetector.class);
+
+  static final int DEFAULT_MAX_GCS = 5;
+  static final Duration DEFAULT_PAUSE_BETWEEN_GCS = Duration.ofMillis(200);
+
+  private final int maxGcs;
+  private final Duration pauseBetweenGcs;
+
+  ClassloaderLeakDetector() {
+    this(DEFAULT_MAX_GCS, DEFAULT_PAUSE_BETWEEN_GCS);
+  }
+
+  ClassloaderLeakDetector(int maxGcs, Duration pauseBetweenGcs) {
+    this.maxGcs = maxGcs;
+    this.pauseBetweenGcs = pauseBetweenGcs;
+  }
+
+  /**
+   * To be called when the classloader is created, to measure the metaspace used by its classes.
+   */
+  Tracked track(ClassLoader classloader) {
+    return new Tracked(classloader, metaspaceUsed());
+  }
+
+  /**
+   * The check runs in a background thread, so that the stack of the caller of {@link AutoCloseable#close()} no longer references the
+   * classloader. It is a platform thread on purpose: it doesn't do I/O but forces garbage collections, and it may outlive the
+   * bootstrap that configured the {@link org.sonarsource.scanner.lib.internal.util.IoThreads}.
+   *
+   * @return completed with true if the classloader was collected
+   */
+  CompletableFuture<Boolean> checkInBackground(Tracked tracked) {
+    var result = new CompletableFuture<Boolean>();
+    var thread = new Thread(() -> {
+      try {
+        result.complete(check(tracked));
+      } catch (Exception e) {
+        result.completeExceptionally(e);
+      }
+    }, "sonar-scanner-classloader-leak-check");
+    thread.setDaemon(true);
+    thread.start();
+    return result;
+  }
+
+  boolean check(Tracked tracked) throws InterruptedException {
+    long metaspaceAtClose = metaspaceUsed();
+    for (int gcs = 1; gcs <= maxGcs; gcs++) {
+      System.gc();
+      if (tracked.reference.get() == null) {
+        LOG.debug("Scanner Engine classloader collected after {} GC(s). Metaspace: {} used by the analysis, {} reclaimed", gcs,
+          formatDelta(tracked.metaspaceAtCreation, metaspaceAtClose), formatDelta(metaspaceUsed(), metaspaceAtClose));
+        return true;
+      }
+      Thread.sleep(pauseBetweenGcs.toMillis());
+    }
+    var suspects = findSuspects(tracked.reference.get());
+    LOG.warn("Scanner Engine classloader {} is still reachable after {} GC(s) and holds {} of metaspace. Suspects: {}", tracked.description,
+      maxGcs, formatDelta(tracked.metaspaceAtCreation, metaspaceUsed()), suspects.isEmpty() ? "none found, use a heap dump to find the GC roots" : String.join(", ", suspects));
+    return false;
+  }
+
+  /**
+   * Threads are the most common roots of classloader leaks: either they still have the classloader as context classloader, or they
+   * were started by the engine and never stopped.
+   */
+  static List<String> findSuspects(@Nullable ClassLoader classloader) {
+    List<String> suspects = new ArrayList<>();
+    if (classloader == null) {
+      return suspects;
+    }
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (isSameOrChild(thread.getContextClassLoader(), classloader)) {
+        suspects.add("thread '" + thread.getName() + "' has it as context classloader");
+      }
+      if (isSameOrChild(thread.getClass().getClassLoader(), classloader)) {
+        suspects.add("thread '" + thread.getName() + "' is a " + thread.getClass().getName() + " loaded by it");
+      }
+    }
+    return suspects;
+  }
+
+  private static boolean isSameOrChild(@Nullable ClassLoader candidate, ClassLoader classloader) {
+    for (var cl = candidate; cl != null; cl = cl.getParent()) {
+      if (cl == classloader) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String formatDelta(long before, long after) {
+    if (before < 0 || after < 0) {
+      return "unknown";
+    }
+    return FileUtils.byteCountToDisplaySize(Math.max(0, after - before));
+  }
+
+  private static long metaspaceUsed() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if ("Metaspace".equals(pool.getName())) {
+        return pool.getUsage().getUsed();
+      }
+    }
+    return -1;
+  }
+
+  static class Tracked {
+    private final WeakReference<ClassLoader> reference;
+    private final String description;
+    private final long metaspaceAtCreation;
+
+    private Tracked(ClassLoader classloader, long metaspaceAtCreation) {
+      this.reference = new WeakReference<>(classloader);
+      this.description = classloader.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(classloader));
+      this.metaspaceAtCreation = metaspaceAtCreation;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.inprocess;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.jar.JarFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scanner Engine of SonarQube Cloud and SonarQube Server 10.6+, run in the current JVM. The engine is isolated from the classes of the
+ * host: only the classes of the JDK are visible from its classloader. It receives its properties as JSON on its standard input, and
+ * writes its logs as JSON lines on its standard output, exactly like when it runs in a separate JVM.
+ */
+public class EmbeddedScannerEngine implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EmbeddedScannerEngine.class);
+
+  /**
+   * Same as the main method, but with the standard streams as parameters and the exit code as result, instead of calling
+   * {@link System#exit(int)}.
+   */
+  static final String ENTRY_POINT = "run";
+
+  private final IsolatedClassloader classloader;
+  private final Method entryPoint;
+
+  private EmbeddedScannerEngine(IsolatedClassloader classloader, Method entryPoint) {
+    this.classloader = classloader;
+    this.entryPoint = entryPoint;
+  }
+
+  /**
+   * @param inDownloadCache false for a jar provided by the user, which is not content-addressed
+   * @return empty if the engine has no entry point that can be called in the current JVM, in which case it has to be forked
+   */
+  public static Optional<EmbeddedScannerEngine> load(Path engineJar, boolean inDownloadCache) {
+    String mainClass;
+    try (var jarFile = new JarFile(engineJar.toFile())) {
+      var manifest = jarFile.getManifest();
+      mainClass = manifest == null ? null : manifest.getMainAttributes().getValue("Main-Class");
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read the Scanner Engine jar " + engineJar, e);
+    }
+    if (mainClass == null) {
+      LOG.debug("The Scanner Engine jar has no main class, it can't be run in the current JVM");
+      return Optional.empty();
+    }
+    var classloader = new IsolatedClassloader(EmbeddedScannerEngine.class.getClassLoader(), new ClassloadRules(Collections.emptySet(), Collections.emptySet()));
+    classloader.addFiles(List.of(engineJar), jar -> inDownloadCache);
+    try {
+      var method = classloader.loadClass(mainClass).getDeclaredMethod(ENTRY_POINT, InputStream.class, PrintStream.class);
+      if (!Modifier.isStatic(method.getModifiers()) || method.getReturnType() != int.class) {
+        throw new NoSuchMethodException(mainClass + "." + ENTRY_POINT);
+      }
+      method.setAccessible(true);
+      return Optional.of(new EmbeddedScannerEngine(classloader, method));
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      LOG.debug("The Scanner Engine has no entry point that can be called in the current JVM: {}", e.toString());
+      closeQuietly(classloader);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * @param stdoutConsumer called for each line written by the engine on its standard output
+   * @return true if the engine exited with code 0
+   */
+  public boolean execute(String jsonProperties, Consumer<String> stdoutConsumer) {
+    var stdin = new ByteArrayInputStream(jsonProperties.getBytes(StandardCharsets.UTF_8));
+    var thread = Thread.currentThread();
+    var initialContextClassLoader = thread.getContextClassLoader();
+    try (var stdout = new PrintStream(new LineOutputStream(stdoutConsumer), true, StandardCharsets.UTF_8)) {
+      thread.setContextClassLoader(classloader);
+      int exitCode = (int) entryPoint.invoke(null, stdin, stdout);
+      LOG.debug("Scanner Engine completed with exit code {}", exitCode);
+      return exitCode == 0;
+    } catch (InvocationTargetException e) {
+      var cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Error while running the Scanner Engine", cause);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Unable to run the Scanner Engine", e);
+    } finally {
+      thread.setContextClassLoader(initialContextClassLoader);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    classloader.close();
+  }
+
+  private static void closeQuietly(IsolatedClassloader classloader) {
+    try {
+      classloader.close();
+    } catch (IOException e) {
+      LOG.debug("Unable to close the Scanner Engine classloader", e);
+    }
+  }
+
+  /**
+   * Splits what the engine writes into lines, like the stdout of a forked process.
+   */
+  private static class LineOutputStream extends OutputStream {
+    private final Consumer<String> lineConsumer;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    private LineOutputStream(Consumer<String> lineConsumer) {
+      this.lineConsumer = lineConsumer;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+      if (b == '\n') {
+        emit();
+      } else {
+        buffer.write(b);
+      }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      int start = off;
+      for (int i = off; i < off + len; i++) {
+        if (b[i] == '\n') {
+          buffer.write(b, start, i - start);
+          emit();
+          start = i + 1;
+        }
+      }
+      buffer.write(b, start, off + len - start);
+    }
+
+    @Override
+    public synchronized void close() {
+      if (buffer.size() > 0) {
+        emit();
+      }
+    }
+
+    private void emit() {
+      var line = buffer.toString(StandardCharsets.UTF_8);
+      buffer.reset();
+      lineConsumer.accept(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+    }
+  }
+}
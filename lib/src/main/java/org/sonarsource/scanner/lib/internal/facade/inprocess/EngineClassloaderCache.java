@@ -0,0 +1,142 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.inprocess;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.lib.internal.facade.inprocess.IsolatedLauncherFactory.IsolatedLauncherAndClassloader;
+
+/**
+ * JVM-wide cache of the classloaders of legacy scanner engines, so that build daemons analyzing many projects reuse the classes already
+ * loaded and compiled by the JIT. Entries are keyed by the content of their jars, and are reference counted: they are closed once they
+ * have not been used for the idle timeout.
+ */
+class EngineClassloaderCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EngineClassloaderCache.class);
+
+  static final EngineClassloaderCache INSTANCE = new EngineClassloaderCache();
+
+  private final Map<List<String>, Entry> entries = new HashMap<>();
+  @CheckForNull
+  private ScheduledExecutorService evictionExecutor;
+
+  /**
+   * Jars of the download cache are stored in a directory named after their hash, so the directory and file names identify the content.
+   */
+  static List<String> keyOf(List<Path> jars) {
+    return jars.stream()
+      .map(jar -> jar.getParent() == null ? jar.getFileName().toString() : (jar.getParent().getFileName() + "/" + jar.getFileName()))
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * @param factory creates the launcher and its classloader when there is no cached one for these jars
+   * @return a launcher whose {@link IsolatedLauncherAndClassloader#close()} releases the cached classloader instead of closing it
+   */
+  synchronized IsolatedLauncherAndClassloader acquire(List<String> key, Duration idleTimeout, boolean engineCacheHit, Supplier<IsolatedLauncherAndClassloader> factory) {
+    var entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry(key, factory.get(), idleTimeout);
+      entries.put(key, entry);
+    } else {
+      LOG.debug("Reuse the Scanner Engine classloader of a previous analysis");
+    }
+    entry.refCount++;
+    entry.generation++;
+    var cached = entry;
+    var released = new AtomicBoolean();
+    return new IsolatedLauncherAndClassloader(entry.launcherAndClassloader.getLauncher(), () -> {
+      if (released.compareAndSet(false, true)) {
+        release(cached);
+      }
+    }, engineCacheHit);
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  private synchronized void release(Entry entry) {
+    entry.refCount--;
+    if (entry.refCount > 0) {
+      return;
+    }
+    long generation = entry.generation;
+    evictionExecutor().schedule(() -> evictIfIdle(entry, generation), entry.idleTimeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void evictIfIdle(Entry entry, long generation) {
+    // The generation changes each time the entry is acquired, so that an entry used in the meantime is not evicted
+    if (entry.refCount > 0 || entry.generation != generation || !entries.remove(entry.key, entry)) {
+      return;
+    }
+    LOG.debug("Close the idle Scanner Engine classloader");
+    try {
+      entry.launcherAndClassloader.close();
+    } catch (Exception e) {
+      LOG.debug("Unable to close the Scanner Engine classloader", e);
+    }
+  }
+
+  /**
+   * Not created from {@link org.sonarsource.scanner.lib.internal.util.IoThreads}: the cache is shared by all the bootstraps of the JVM,
+   * while the choice of virtual threads is made per bootstrap. The thread only closes classloaders, and exits once idle.
+   */
+  private ScheduledExecutorService evictionExecutor() {
+    if (evictionExecutor == null) {
+      var executor = new ScheduledThreadPoolExecutor(1, task -> {
+        var thread = new Thread(task, "sonar-scanner-engine-classloader-eviction");
+        thread.setDaemon(true);
+        return thread;
+      });
+      executor.setKeepAliveTime(1, TimeUnit.MINUTES);
+      executor.allowCoreThreadTimeOut(true);
+      evictionExecutor = executor;
+    }
+    return evictionExecutor;
+  }
+
+  private static class Entry {
+    private final List<String> key;
+    private final IsolatedLauncherAndClassloader launcherAndClassloader;
+    private final Duration idleTimeout;
+    private int refCount;
+    private long generation;
+
+    Entry(List<String> key, IsolatedLauncherAndClassloader launcherAndClassloader, Duration idleTimeout) {
+      this.key = key;
+      this.launcherAndClassloader = launcherAndClassloader;
+      this.idleTimeout = idleTimeout;
+    }
+  }
+}
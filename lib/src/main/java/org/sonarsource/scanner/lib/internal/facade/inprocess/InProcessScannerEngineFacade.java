@@ -19,23 +19,32 @@
  */
 package org.sonarsource.scanner.lib.internal.facade.inprocess;
 
+import java.time.Instant;
 import java.util.Map;
 import javax.annotation.Nullable;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.sonarsource.scanner.lib.LogEvent;
 import org.sonarsource.scanner.lib.internal.facade.AbstractScannerEngineFacade;
+import org.sonarsource.scanner.lib.internal.logging.EngineLogging;
 
 public class InProcessScannerEngineFacade extends AbstractScannerEngineFacade {
 
   private final IsolatedLauncherFactory.IsolatedLauncherAndClassloader launcherAndCl;
+  private final EngineLogging logging;
 
   public InProcessScannerEngineFacade(Map<String, String> bootstrapProperties, IsolatedLauncherFactory.IsolatedLauncherAndClassloader launcherAndCl,
-    boolean isSonarCloud, @Nullable String serverVersion) {
+    EngineLogging logging, boolean isSonarCloud, @Nullable String serverVersion) {
     super(bootstrapProperties, isSonarCloud, serverVersion, launcherAndCl.wasEngineCacheHit(), null);
     this.launcherAndCl = launcherAndCl;
+    this.logging = logging;
   }
 
   @Override
   protected boolean doAnalyze(Map<String, String> allProps) {
-    launcherAndCl.getLauncher().execute(allProps, new Slf4jLogOutputAdapter());
+    try (var buffer = logging.open(LoggerFactory.getLogger(Slf4jLogOutputAdapter.class))) {
+      launcherAndCl.getLauncher().execute(allProps, (formattedMessage, level) -> buffer.offer(new LogEvent(Level.valueOf(level.name()), formattedMessage, null, Instant.now())));
+    }
     return true;
   }
 
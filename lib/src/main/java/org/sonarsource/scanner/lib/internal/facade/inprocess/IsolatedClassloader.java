@@ -20,18 +20,46 @@
 package org.sonarsource.scanner.lib.internal.facade.inprocess;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipFile;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 
 /**
  * Special {@link java.net.URLClassLoader} to execute batch, which restricts loading from parent.
+ * <p>
+ * When all the files are jars, classes and resources are looked up with a {@link JarIndex}, directly in the jars that contain their
+ * package, instead of probing all the jars in order.
  */
 class IsolatedClassloader extends URLClassLoader {
+
+  static {
+    // Allow classes to be loaded concurrently, with one lock per class name instead of a lock on the whole classloader
+    ClassLoader.registerAsParallelCapable();
+  }
+
   private final ClassloadRules rules;
+  private final List<Path> files = new ArrayList<>();
+  private final Set<Path> contentAddressedFiles = new HashSet<>();
+  private final Map<Path, JarFile> openJars = new ConcurrentHashMap<>();
+  @Nullable
+  private volatile JarIndex jarIndex;
 
   /**
    * The parent classloader is used only for loading classes and resources in unmasked packages
@@ -41,21 +69,35 @@ class IsolatedClassloader extends URLClassLoader {
     this.rules = rules;
   }
 
-  void addFiles(List<Path> files) {
+  /**
+   * @param contentAddressed tells whether a file is stored in the download cache, see {@link JarIndex}
+   */
+  synchronized void addFiles(List<Path> files, Predicate<Path> contentAddressed) {
     try {
       for (var file : files) {
         addURL(file.toUri().toURL());
+        this.files.add(file);
+        if (contentAddressed.test(file)) {
+          contentAddressedFiles.add(file);
+        }
       }
     } catch (MalformedURLException e) {
       throw new IllegalStateException("Fail to create classloader", e);
     }
+    jarIndex = JarIndex.of(this.files, contentAddressedFiles::contains).orElse(null);
   }
 
   /**
    * Same behavior as in {@link java.net.URLClassLoader#loadClass(String, boolean)}, except loading from parent.
    */
   @Override
-  protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+  protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    synchronized (getClassLoadingLock(name)) {
+      return loadClassWithLock(name, resolve);
+    }
+  }
+
+  private Class<?> loadClassWithLock(String name, boolean resolve) throws ClassNotFoundException {
     // First, check if the class has already been loaded
     Class<?> c = findLoadedClass(name);
     if (c == null) {
@@ -88,6 +130,125 @@ class IsolatedClassloader extends URLClassLoader {
     return c;
   }
 
+  @Override
+  protected Class<?> findClass(String name) throws ClassNotFoundException {
+    var index = jarIndex;
+    if (index == null) {
+      return super.findClass(name);
+    }
+    String path = name.replace('.', '/').concat(".class");
+    for (Path jar : index.jarsFor(path)) {
+      try {
+        JarFile jarFile = openJar(jar);
+        JarEntry entry = jarFile.getJarEntry(path);
+        if (entry != null) {
+          return defineClass(name, jar, jarFile, entry);
+        }
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+    throw new ClassNotFoundException(name);
+  }
+
+  private Class<?> defineClass(String name, Path jar, JarFile jarFile, JarEntry entry) throws IOException {
+    byte[] bytes;
+    try (InputStream in = jarFile.getInputStream(entry)) {
+      bytes = in.readAllBytes();
+    }
+    URL jarUrl = jar.toUri().toURL();
+    definePackageIfNeeded(name, jarFile, jarUrl);
+    // Code signers are only available once the entry has been fully read
+    return defineClass(name, bytes, 0, bytes.length, new CodeSource(jarUrl, entry.getCodeSigners()));
+  }
+
+  private void definePackageIfNeeded(String className, JarFile jarFile, URL jarUrl) throws IOException {
+    int lastDot = className.lastIndexOf('.');
+    if (lastDot < 0) {
+      return;
+    }
+    String packageName = className.substring(0, lastDot);
+    if (getDefinedPackage(packageName) != null) {
+      return;
+    }
+    try {
+      var manifest = jarFile.getManifest();
+      if (manifest != null) {
+        definePackage(packageName, manifest, jarUrl);
+      } else {
+        definePackage(packageName, null, null, null, null, null, null, null);
+      }
+    } catch (IllegalArgumentException e) {
+      // Defined concurrently by another thread
+    }
+  }
+
+  @Override
+  public URL findResource(String name) {
+    var index = jarIndex;
+    if (index == null) {
+      return super.findResource(name);
+    }
+    for (Path jar : index.jarsFor(name)) {
+      URL url = resourceUrl(jar, name);
+      if (url != null) {
+        return url;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Enumeration<URL> findResources(String name) throws IOException {
+    var index = jarIndex;
+    if (index == null) {
+      return super.findResources(name);
+    }
+    List<URL> urls = new ArrayList<>();
+    for (Path jar : index.jarsFor(name)) {
+      URL url = resourceUrl(jar, name);
+      if (url != null) {
+        urls.add(url);
+      }
+    }
+    return Collections.enumeration(urls);
+  }
+
+  @CheckForNull
+  private URL resourceUrl(Path jar, String name) {
+    try {
+      if (openJar(jar).getJarEntry(name) == null) {
+        return null;
+      }
+      return new URL("jar:" + jar.toUri().toURL() + "!/" + name);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private JarFile openJar(Path jar) throws IOException {
+    var jarFile = openJars.get(jar);
+    if (jarFile == null) {
+      var opened = new JarFile(jar.toFile(), true, ZipFile.OPEN_READ, JarFile.runtimeVersion());
+      jarFile = openJars.putIfAbsent(jar, opened);
+      if (jarFile == null) {
+        jarFile = opened;
+      } else {
+        opened.close();
+      }
+    }
+    return jarFile;
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    for (JarFile jarFile : openJars.values()) {
+      jarFile.close();
+    }
+    openJars.clear();
+  }
+
   /**
    * Unlike {@link java.net.URLClassLoader#getResource(String)} don't return resource from parent.
    * See http://jira.codehaus.org/browse/SONAR-2276
@@ -21,9 +21,11 @@ package org.sonarsource.scanner.lib.internal.facade.inprocess;
 
 import java.net.URLClassLoader;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -33,21 +35,37 @@ import org.sonarsource.scanner.lib.internal.batch.IsolatedLauncher;
 import org.sonarsource.scanner.downloadcache.CachedFile;
 import org.sonarsource.scanner.downloadcache.DownloadCache;
 import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
+import org.sonarsource.scanner.lib.internal.util.IoThreads;
+import org.sonarsource.scanner.lib.internal.util.Utils;
+
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_ENGINE_CLASSLOADER_IDLE_TIMEOUT;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_ENGINE_CLASSLOADER_LEAK_CHECK;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_REUSE_ENGINE_CLASSLOADER;
 
 public class IsolatedLauncherFactory {
 
   private static final Logger LOG = LoggerFactory.getLogger(IsolatedLauncherFactory.class);
 
   static final String ISOLATED_LAUNCHER_IMPL = "org.sonarsource.scanner.lib.internal.batch.BatchIsolatedLauncher";
+  static final Duration DEFAULT_CLASSLOADER_IDLE_TIMEOUT = Duration.ofMinutes(10);
   private final TempCleaning tempCleaning;
   private final String launcherImplClassName;
+  private final EngineClassloaderCache classloaderCache;
 
   /**
    * For unit tests
    */
-  IsolatedLauncherFactory(String isolatedLauncherClassName, TempCleaning tempCleaning) {
+  IsolatedLauncherFactory(String isolatedLauncherClassName, TempCleaning tempCleaning, EngineClassloaderCache classloaderCache) {
     this.tempCleaning = tempCleaning;
     this.launcherImplClassName = isolatedLauncherClassName;
+    this.classloaderCache = classloaderCache;
+  }
+
+  /**
+   * For unit tests
+   */
+  IsolatedLauncherFactory(String isolatedLauncherClassName, TempCleaning tempCleaning) {
+    this(isolatedLauncherClassName, tempCleaning, EngineClassloaderCache.INSTANCE);
   }
 
   public IsolatedLauncherFactory() {
@@ -56,53 +74,125 @@ public class IsolatedLauncherFactory {
 
   private IsolatedClassloader createClassLoader(List<Path> jarFiles, ClassloadRules maskRules) {
     IsolatedClassloader classloader = new IsolatedClassloader(getClass().getClassLoader(), maskRules);
-    classloader.addFiles(jarFiles);
+    // The jars are in the download cache, unless they had to be extracted to the temp directory
+    classloader.addFiles(jarFiles, jar -> !tempCleaning.isInTempDir(jar));
 
     return classloader;
   }
 
-  public IsolatedLauncherAndClassloader createLauncher(ScannerHttpClient scannerHttpClient, DownloadCache downloadCache) {
-    Set<String> unmaskRules = new HashSet<>();
-    unmaskRules.add("org.sonarsource.scanner.lib.internal.batch.");
-    ClassloadRules rules = new ClassloadRules(Collections.emptySet(), unmaskRules);
-    LegacyScannerEngineDownloader legacyScannerEngineDownloader = new LegacyScannerEngineDownloaderFactory(scannerHttpClient, downloadCache).create();
-    return createLauncher(legacyScannerEngineDownloader, rules);
+  public IsolatedLauncherAndClassloader createLauncher(ScannerHttpClient scannerHttpClient, DownloadCache downloadCache, Map<String, String> properties) {
+    LegacyScannerEngineDownloader legacyScannerEngineDownloader = new LegacyScannerEngineDownloaderFactory(scannerHttpClient, downloadCache,
+      IoThreads.fromProperties(properties)).create();
+    return createLauncher(legacyScannerEngineDownloader, properties);
+  }
+
+  IsolatedLauncherAndClassloader createLauncher(LegacyScannerEngineDownloader legacyScannerEngineDownloader, Map<String, String> properties) {
+    boolean reuse = Boolean.parseBoolean(properties.getOrDefault(SONAR_SCANNER_REUSE_ENGINE_CLASSLOADER, "false"));
+    var leakDetector = Boolean.parseBoolean(properties.getOrDefault(SONAR_SCANNER_ENGINE_CLASSLOADER_LEAK_CHECK, "false")) ? new ClassloaderLeakDetector() : null;
+    var idleTimeout = reuse ? loadIdleTimeout(properties) : null;
+    var ioThreads = IoThreads.fromProperties(properties);
+    List<CachedFile> jarFiles = getOrDownload(legacyScannerEngineDownloader);
+    // Jars extracted to the temp directory are not content addressed, so their classloader can't be safely reused
+    if (idleTimeout == null || jarFiles.stream().anyMatch(f -> tempCleaning.isInTempDir(f.getPath()))) {
+      return createLauncher(jarFiles, defaultRules(), leakDetector, ioThreads);
+    }
+    var key = EngineClassloaderCache.keyOf(jarFiles.stream().map(CachedFile::getPath).collect(Collectors.toList()));
+    return classloaderCache.acquire(key, idleTimeout, jarFiles.stream().allMatch(CachedFile::didCacheHit), () -> createLauncher(jarFiles, defaultRules(), leakDetector, ioThreads));
   }
 
   IsolatedLauncherAndClassloader createLauncher(final LegacyScannerEngineDownloader legacyScannerEngineDownloader, final ClassloadRules rules) {
+    return createLauncher(getOrDownload(legacyScannerEngineDownloader), rules, null, IoThreads.platform());
+  }
+
+  private static List<CachedFile> getOrDownload(LegacyScannerEngineDownloader legacyScannerEngineDownloader) {
+    try {
+      return legacyScannerEngineDownloader.getOrDownload();
+    } catch (Exception e) {
+      throw new ScannerException("Unable to execute SonarScanner analysis", e);
+    }
+  }
+
+  private IsolatedLauncherAndClassloader createLauncher(List<CachedFile> jarFiles, ClassloadRules rules, @Nullable ClassloaderLeakDetector leakDetector,
+    IoThreads ioThreads) {
     try {
-      List<CachedFile> jarFiles = legacyScannerEngineDownloader.getOrDownload();
       LOG.debug("Create isolated classloader...");
       var cl = createClassLoader(jarFiles.stream().map(CachedFile::getPath).collect(Collectors.toList()), rules);
       IsolatedLauncher objProxy = IsolatedLauncherProxy.create(cl, IsolatedLauncher.class, launcherImplClassName);
-      tempCleaning.clean();
+      if (jarFiles.stream().anyMatch(f -> tempCleaning.isInTempDir(f.getPath()))) {
+        // Only scan the temp directory when the batch jar could not be extracted to the cache
+        tempCleaning.cleanInBackground(ioThreads);
+      } else {
+        tempCleaning.cleanLegacyTempDirInBackground(ioThreads);
+      }
 
-      return new IsolatedLauncherAndClassloader(objProxy, cl, jarFiles.stream().allMatch(CachedFile::didCacheHit));
+      boolean engineCacheHit = jarFiles.stream().allMatch(CachedFile::didCacheHit);
+      if (leakDetector != null) {
+        var tracked = leakDetector.track(cl);
+        return new IsolatedLauncherAndClassloader(objProxy, () -> {
+          cl.close();
+          leakDetector.checkInBackground(tracked);
+        }, engineCacheHit);
+      }
+      return new IsolatedLauncherAndClassloader(objProxy, cl, engineCacheHit);
     } catch (Exception e) {
       // Catch all other exceptions, which relates to reflection
       throw new ScannerException("Unable to execute SonarScanner analysis", e);
     }
   }
 
+  private static ClassloadRules defaultRules() {
+    Set<String> unmaskRules = new HashSet<>();
+    unmaskRules.add("org.sonarsource.scanner.lib.internal.batch.");
+    return new ClassloadRules(Collections.emptySet(), unmaskRules);
+  }
+
+  private static Duration loadIdleTimeout(Map<String, String> properties) {
+    var value = properties.get(SONAR_SCANNER_ENGINE_CLASSLOADER_IDLE_TIMEOUT);
+    if (value == null || value.isBlank()) {
+      return DEFAULT_CLASSLOADER_IDLE_TIMEOUT;
+    }
+    return Utils.parseDurationProperty(value, SONAR_SCANNER_ENGINE_CLASSLOADER_IDLE_TIMEOUT);
+  }
+
   public static class IsolatedLauncherAndClassloader implements AutoCloseable {
-    private final IsolatedLauncher launcher;
-    private final URLClassLoader classloader;
+    // Both are cleared once closed, so that the classloader can be garbage collected even if this object is still referenced
+    @Nullable
+    private volatile IsolatedLauncher launcher;
+    @Nullable
+    private volatile AutoCloseable closeable;
     private final boolean engineCacheHit;
 
     public IsolatedLauncherAndClassloader(IsolatedLauncher launcher, @Nullable URLClassLoader classloader, boolean engineCacheHit) {
+      this(launcher, (AutoCloseable) classloader, engineCacheHit);
+    }
+
+    /**
+     * @param closeable what to close once the analysis is done, for example the release of a shared classloader
+     */
+    IsolatedLauncherAndClassloader(IsolatedLauncher launcher, @Nullable AutoCloseable closeable, boolean engineCacheHit) {
       this.launcher = launcher;
-      this.classloader = classloader;
+      this.closeable = closeable;
       this.engineCacheHit = engineCacheHit;
     }
 
+    /**
+     * @throws IllegalStateException once closed
+     */
     public IsolatedLauncher getLauncher() {
-      return launcher;
+      var current = launcher;
+      if (current == null) {
+        throw new IllegalStateException("The Scanner Engine classloader is closed");
+      }
+      return current;
     }
 
     @Override
     public void close() throws Exception {
-      if (classloader != null) {
-        classloader.close();
+      var toClose = closeable;
+      closeable = null;
+      launcher = null;
+      if (toClose != null) {
+        toClose.close();
       }
     }
 
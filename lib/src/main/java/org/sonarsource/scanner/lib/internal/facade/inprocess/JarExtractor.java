@@ -19,26 +19,85 @@
  */
 package org.sonarsource.scanner.lib.internal.facade.inprocess;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.downloadcache.CachedFile;
+import org.sonarsource.scanner.downloadcache.DownloadCache;
+import org.sonarsource.scanner.downloadcache.HashMismatchException;
 
 public class JarExtractor {
 
+  private static final Logger LOG = LoggerFactory.getLogger(JarExtractor.class);
+
+  /**
+   * The embedded jars don't change during the life of the JVM, so they are hashed only once.
+   */
+  private static final Map<String, String> SHA256_BY_FILENAME = new ConcurrentHashMap<>();
+
+  /**
+   * Copy the embedded jar to the download cache, under its SHA-256, so that it is extracted only once and then reused by all the
+   * runs of the same library version. Fall back to a temporary copy if the cache can't be used.
+   */
+  public CachedFile extractToCache(String filenameWithoutSuffix, DownloadCache downloadCache) {
+    String filename = filenameWithoutSuffix + ".jar";
+    try {
+      String sha256 = SHA256_BY_FILENAME.computeIfAbsent(filename, this::sha256);
+      return downloadCache.getOrDownload(filename, sha256, "SHA-256", this::copy);
+    } catch (HashMismatchException | RuntimeException e) {
+      LOG.debug("Unable to extract {} to the cache, using a temporary copy: {}", filename, e.getMessage());
+      return new CachedFile(extractToTemp(filenameWithoutSuffix), false);
+    }
+  }
+
   public Path extractToTemp(String filenameWithoutSuffix) {
     String filename = filenameWithoutSuffix + ".jar";
-    URL url = getClass().getResource("/" + filename);
     try {
-      Path copy = Files.createTempFile(filenameWithoutSuffix, ".jar");
+      Path tempDir = Files.createDirectories(TempCleaning.defaultTempDir());
+      Path copy = Files.createTempFile(tempDir, filenameWithoutSuffix, ".jar");
       copy.toFile().deleteOnExit();
-      try (InputStream in = url.openStream()) {
-        Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
-      }
+      copy(filename, copy);
       return copy;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to extract " + filename, e);
     }
   }
+
+  private void copy(String filename, Path toFile) throws IOException {
+    try (InputStream in = resource(filename).openStream()) {
+      Files.copy(in, toFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private String sha256(String filename) {
+    try (InputStream in = resource(filename).openStream()) {
+      var digest = MessageDigest.getInstance("SHA-256");
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+      return String.format("%064x", new BigInteger(1, digest.digest()));
+    } catch (IOException | NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Fail to hash " + filename, e);
+    }
+  }
+
+  private URL resource(String filename) throws IOException {
+    URL url = getClass().getResource("/" + filename);
+    if (url == null) {
+      throw new IOException("Resource not found: " + filename);
+    }
+    return url;
+  }
 }
@@ -0,0 +1,134 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.inprocess;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.lib.internal.util.Utils;
+
+/**
+ * Index of the directories (i.e. packages, for classes) contained in each jar of a classpath, so that a class or a resource is only
+ * looked up in the jars that may contain it, instead of probing all of them in order.
+ * <p>
+ * The directories of a jar stored in the download cache are persisted next to it, in a {@value #INDEX_SUFFIX} file. Such jars are
+ * stored under their hash, so the index never has to be invalidated. Other jars, like a user-supplied one that can be replaced in
+ * place, are scanned each time, and nothing is written next to them.
+ */
+class JarIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JarIndex.class);
+
+  static final String INDEX_SUFFIX = ".index";
+
+  private final List<Path> jars;
+  private final Map<String, List<Integer>> jarsByDirectory;
+
+  private JarIndex(List<Path> jars, Map<String, List<Integer>> jarsByDirectory) {
+    this.jars = jars;
+    this.jarsByDirectory = jarsByDirectory;
+  }
+
+  /**
+   * @param contentAddressed tells whether a jar is stored in the download cache, so that its index can be persisted
+   * @return empty if one of the files is not a readable jar, in which case the lookups should not rely on an index
+   */
+  static Optional<JarIndex> of(List<Path> jars, Predicate<Path> contentAddressed) {
+    Map<String, List<Integer>> jarsByDirectory = new HashMap<>();
+    for (int i = 0; i < jars.size(); i++) {
+      var jar = jars.get(i);
+      var directories = directoriesOf(jar, contentAddressed.test(jar));
+      if (directories.isEmpty()) {
+        return Optional.empty();
+      }
+      for (String directory : directories.get()) {
+        jarsByDirectory.computeIfAbsent(directory, d -> new ArrayList<>(1)).add(i);
+      }
+    }
+    return Optional.of(new JarIndex(List.copyOf(jars), jarsByDirectory));
+  }
+
+  /**
+   * @param resourceName a resource name, like {@code org/sonar/Foo.class}
+   * @return the jars that may contain the resource, in classpath order
+   */
+  List<Path> jarsFor(String resourceName) {
+    var indexes = jarsByDirectory.get(directoryOf(resourceName));
+    if (indexes == null) {
+      return List.of();
+    }
+    return indexes.stream().map(jars::get).collect(Collectors.toList());
+  }
+
+  static String directoryOf(String resourceName) {
+    return resourceName.substring(0, resourceName.lastIndexOf('/') + 1);
+  }
+
+  private static Optional<Set<String>> directoriesOf(Path jar, boolean persistIndex) {
+    if (!Files.isRegularFile(jar)) {
+      return Optional.empty();
+    }
+    Path indexFile = jar.resolveSibling(jar.getFileName() + INDEX_SUFFIX);
+    if (persistIndex && Files.isRegularFile(indexFile)) {
+      try {
+        return Optional.of(new LinkedHashSet<>(Files.readAllLines(indexFile, StandardCharsets.UTF_8)));
+      } catch (IOException e) {
+        LOG.debug("Unable to read {}, the jar will be scanned again", indexFile, e);
+      }
+    }
+    try (var jarFile = new JarFile(jar.toFile(), false, ZipFile.OPEN_READ, JarFile.runtimeVersion())) {
+      Set<String> directories = jarFile.versionedStream()
+        .map(JarEntry::getName)
+        .map(JarIndex::directoryOf)
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+      if (persistIndex) {
+        save(indexFile, directories);
+      }
+      return Optional.of(directories);
+    } catch (IOException e) {
+      LOG.debug("Unable to index {}", jar, e);
+      return Optional.empty();
+    }
+  }
+
+  private static void save(Path indexFile, Set<String> directories) {
+    try {
+      Utils.writeAtomically(indexFile, tmp -> Files.write(tmp, directories, StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      // The index is only an optimization, it will be computed again next time
+      LOG.debug("Unable to save {}", indexFile, e);
+    }
+  }
+}
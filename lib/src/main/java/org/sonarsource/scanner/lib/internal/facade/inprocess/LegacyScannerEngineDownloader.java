@@ -19,20 +19,29 @@
  */
 package org.sonarsource.scanner.lib.internal.facade.inprocess;
 
-import java.io.IOException;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonarsource.scanner.downloadcache.CachedFile;
 import org.sonarsource.scanner.downloadcache.DownloadCache;
+import org.sonarsource.scanner.downloadcache.DownloadProgressTracker;
 import org.sonarsource.scanner.downloadcache.Downloader;
 import org.sonarsource.scanner.downloadcache.HashMismatchException;
 import org.sonarsource.scanner.lib.internal.facade.inprocess.BootstrapIndexDownloader.JarEntry;
 import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
+import org.sonarsource.scanner.lib.internal.util.IoThreads;
 
 import static java.lang.String.format;
 
@@ -42,39 +51,140 @@ import static java.lang.String.format;
 class LegacyScannerEngineDownloader {
 
   private static final Logger LOG = LoggerFactory.getLogger(LegacyScannerEngineDownloader.class);
+  static final int MAX_PARALLEL_DOWNLOADS = 4;
 
   private final DownloadCache downloadCache;
   private final JarExtractor jarExtractor;
   private final ScannerFileDownloader scannerFileDownloader;
   private final BootstrapIndexDownloader bootstrapIndexDownloader;
+  private final IoThreads ioThreads;
 
   LegacyScannerEngineDownloader(ScannerFileDownloader scannerFileDownloader, BootstrapIndexDownloader bootstrapIndexDownloader, DownloadCache downloadCache,
     JarExtractor jarExtractor) {
+    this(scannerFileDownloader, bootstrapIndexDownloader, downloadCache, jarExtractor, IoThreads.platform());
+  }
+
+  LegacyScannerEngineDownloader(ScannerFileDownloader scannerFileDownloader, BootstrapIndexDownloader bootstrapIndexDownloader, DownloadCache downloadCache,
+    JarExtractor jarExtractor, IoThreads ioThreads) {
     this.scannerFileDownloader = scannerFileDownloader;
     this.bootstrapIndexDownloader = bootstrapIndexDownloader;
     this.downloadCache = downloadCache;
     this.jarExtractor = jarExtractor;
+    this.ioThreads = ioThreads;
   }
 
   List<CachedFile> getOrDownload() {
     List<CachedFile> files = new ArrayList<>();
-    LOG.debug("Extract sonar-scanner-java-library-batch in temp...");
-    files.add(new CachedFile(jarExtractor.extractToTemp("sonar-scanner-java-library-batch"), true));
+    LOG.debug("Extract sonar-scanner-java-library-batch to the cache...");
+    var batchJar = jarExtractor.extractToCache("sonar-scanner-java-library-batch", downloadCache);
+    // The batch jar is embedded in the library, it doesn't count as a download from the server
+    files.add(new CachedFile(batchJar.getPath(), true));
     files.addAll(getOrDownloadScannerEngineFiles());
     return files;
   }
 
+  /**
+   * Old servers serve many small jars, so they are downloaded concurrently to avoid paying the round trip of each of them in sequence.
+   * On the first failure, the downloads in progress are interrupted and those that have not started yet are cancelled. The failures of
+   * the downloads that had already completed are added as suppressed exceptions, so that all the broken files are reported at once.
+   */
   private List<CachedFile> getOrDownloadScannerEngineFiles() {
-    Collection<JarEntry> index = bootstrapIndexDownloader.getIndex();
-    return index.stream()
-      .map(jar -> {
-        try {
-          return downloadCache.getOrDownload(jar.getFilename(), jar.getHash(), "MD5", scannerFileDownloader);
-        } catch (HashMismatchException e) {
-          throw new IllegalStateException("Unable to provision the Scanner Engine", e);
+    List<JarEntry> index = new ArrayList<>(bootstrapIndexDownloader.getIndex());
+    if (index.isEmpty()) {
+      return List.of();
+    }
+    var threadCount = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_PARALLEL_DOWNLOADS, index.size()), task -> {
+      var thread = ioThreads.newThread("sonar-scanner-download-" + threadCount.incrementAndGet(), task);
+      thread.setDaemon(true);
+      return thread;
+    });
+    var failed = new AtomicBoolean();
+    try {
+      var completionService = new ExecutorCompletionService<CachedFile>(executor);
+      List<Future<CachedFile>> futures = index.stream()
+        .map(jar -> completionService.submit(() -> getOrDownload(jar, failed)))
+        .collect(Collectors.toList());
+      awaitAll(completionService, futures);
+      List<CachedFile> files = futures.stream().map(LegacyScannerEngineDownloader::getDone).collect(Collectors.toList());
+      logCacheHitRatio(files);
+      return files;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Downloads may be picked by the pool after a failure and before they are cancelled, so they check for the failure first.
+   */
+  private CachedFile getOrDownload(JarEntry jar, AtomicBoolean failed) throws HashMismatchException {
+    if (failed.get()) {
+      throw new CancellationException();
+    }
+    try {
+      return downloadCache.getOrDownload(jar.getFilename(), jar.getHash(), "MD5", scannerFileDownloader);
+    } catch (HashMismatchException | RuntimeException e) {
+      failed.set(true);
+      throw e;
+    }
+  }
+
+  private static void awaitAll(ExecutorCompletionService<CachedFile> completionService, List<Future<CachedFile>> futures) {
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        completionService.take().get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof CancellationException) {
+          // Skipped because of a failure that is still to be taken
+          continue;
         }
-      })
-      .collect(Collectors.toList());
+        futures.forEach(f -> f.cancel(true));
+        throw collectFailures(e.getCause(), futures);
+      } catch (InterruptedException e) {
+        futures.forEach(f -> f.cancel(true));
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while provisioning the Scanner Engine", e);
+      }
+    }
+  }
+
+  static RuntimeException collectFailures(Throwable firstCause, List<Future<CachedFile>> futures) {
+    var failure = asRuntimeException(firstCause);
+    for (Future<CachedFile> future : futures) {
+      if (!future.isDone() || future.isCancelled()) {
+        continue;
+      }
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        var cause = e.getCause();
+        if (cause != firstCause && !(cause instanceof CancellationException)) {
+          failure.addSuppressed(asRuntimeException(cause));
+        }
+      } catch (InterruptedException e) {
+        // Not expected, the future is done
+        Thread.currentThread().interrupt();
+      }
+    }
+    return failure;
+  }
+
+  private static RuntimeException asRuntimeException(Throwable cause) {
+    return cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException("Unable to provision the Scanner Engine", cause);
+  }
+
+  private static CachedFile getDone(Future<CachedFile> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException | ExecutionException e) {
+      // Not expected, all the futures completed successfully
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void logCacheHitRatio(List<CachedFile> files) {
+    long hits = files.stream().filter(CachedFile::didCacheHit).count();
+    LOG.debug("Scanner Engine files found in cache: {}/{} ({}%)", hits, files.size(), hits * 100 / files.size());
   }
 
   static class ScannerFileDownloader implements Downloader {
@@ -85,8 +195,20 @@ class LegacyScannerEngineDownloader {
     }
 
     @Override
-    public void download(String filename, Path toFile) throws IOException {
+    public void download(String filename, Path toFile) {
       connection.downloadFromWebApi(format("/batch/file?name=%s", filename), toFile);
     }
+
+    @Override
+    public boolean download(String filename, Path toFile, MessageDigest digest) {
+      connection.downloadFromWebApi(format("/batch/file?name=%s", filename), toFile, digest, null);
+      return true;
+    }
+
+    @Override
+    public boolean download(String filename, Path toFile, MessageDigest digest, DownloadProgressTracker progress) {
+      connection.downloadFromWebApi(format("/batch/file?name=%s", filename), toFile, digest, progress);
+      return true;
+    }
   }
 }
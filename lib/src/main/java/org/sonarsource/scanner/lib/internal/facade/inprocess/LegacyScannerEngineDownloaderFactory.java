@@ -21,20 +21,23 @@ package org.sonarsource.scanner.lib.internal.facade.inprocess;
 
 import org.sonarsource.scanner.downloadcache.DownloadCache;
 import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
+import org.sonarsource.scanner.lib.internal.util.IoThreads;
 
 class LegacyScannerEngineDownloaderFactory {
   private final ScannerHttpClient scannerHttpClient;
   private final DownloadCache downloadCache;
+  private final IoThreads ioThreads;
 
-  LegacyScannerEngineDownloaderFactory(ScannerHttpClient conn, DownloadCache downloadCache) {
+  LegacyScannerEngineDownloaderFactory(ScannerHttpClient conn, DownloadCache downloadCache, IoThreads ioThreads) {
     this.scannerHttpClient = conn;
     this.downloadCache = downloadCache;
+    this.ioThreads = ioThreads;
   }
 
   LegacyScannerEngineDownloader create() {
     BootstrapIndexDownloader bootstrapIndexDownloader = new BootstrapIndexDownloader(scannerHttpClient);
     LegacyScannerEngineDownloader.ScannerFileDownloader scannerFileDownloader = new LegacyScannerEngineDownloader.ScannerFileDownloader(scannerHttpClient);
     JarExtractor jarExtractor = new JarExtractor();
-    return new LegacyScannerEngineDownloader(scannerFileDownloader, bootstrapIndexDownloader, downloadCache, jarExtractor);
+    return new LegacyScannerEngineDownloader(scannerFileDownloader, bootstrapIndexDownloader, downloadCache, jarExtractor, ioThreads);
   }
 }
@@ -20,52 +20,231 @@
 package org.sonarsource.scanner.lib.internal.facade.inprocess;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.stream.Stream;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.lib.internal.util.IoThreads;
 import org.sonarsource.scanner.lib.internal.util.Utils;
 
 /**
  * The file sonar-runner-batch.jar is locked by the classloader on Windows and can't be dropped at the end of the execution.
  * See {@link IsolatedLauncherFactory}
+ * <p>
+ * Temporary copies are created in a dedicated subdirectory of the JVM temp directory, so that cleaning doesn't have to list a
+ * potentially huge shared directory. The cleaning is done at most once a day (tracked by a marker file), and stops after a bounded
+ * number of entries or time. Entries are visited in name order, and the name of the last visited entry is saved in the marker file,
+ * so that the next cleaning resumes from there instead of visiting the same entries again. An interrupted sweep is resumed without
+ * waiting for a day.
+ * <p>
+ * Older versions extracted the batch jar directly in the JVM temp directory. Those copies are cleaned once, within the same bounds,
+ * whatever the location of the batch jar of the current analysis.
  */
 public class TempCleaning {
 
   private static final Logger LOG = LoggerFactory.getLogger(TempCleaning.class);
 
   static final int ONE_DAY_IN_MILLISECONDS = 24 * 60 * 60 * 1000;
+  static final String TEMP_DIR_NAME = "sonar-scanner-java-library";
+  static final String MARKER_FILENAME = ".last-cleaning";
+  static final String LEGACY_MARKER_FILENAME = ".legacy-cleaning-done";
+  static final String BATCH_GLOB = "sonar-scanner-java-library-batch*";
+  static final int DEFAULT_MAX_ENTRIES = 1_000;
+  static final Duration DEFAULT_MAX_DURATION = Duration.ofSeconds(1);
 
   final Path tempDir;
+  @Nullable
+  private final Path legacyTempDir;
+  private final int maxEntries;
+  private final Duration maxDuration;
 
   public TempCleaning() {
-    this(Paths.get(System.getProperty("java.io.tmpdir")));
+    this(defaultTempDir(), Paths.get(System.getProperty("java.io.tmpdir")), DEFAULT_MAX_ENTRIES, DEFAULT_MAX_DURATION);
   }
 
   /**
    * For unit tests
    */
   TempCleaning(Path tempDir) {
+    this(tempDir, null, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_DURATION);
+  }
+
+  TempCleaning(Path tempDir, @Nullable Path legacyTempDir, int maxEntries, Duration maxDuration) {
     this.tempDir = tempDir;
+    this.legacyTempDir = legacyTempDir;
+    this.maxEntries = maxEntries;
+    this.maxDuration = maxDuration;
+  }
+
+  /**
+   * The directory where the library creates its temporary files. It is not created by this method.
+   */
+  static Path defaultTempDir() {
+    return Paths.get(System.getProperty("java.io.tmpdir")).resolve(TEMP_DIR_NAME);
+  }
+
+  boolean isInTempDir(Path file) {
+    return file.toAbsolutePath().startsWith(tempDir.toAbsolutePath());
+  }
+
+  /**
+   * Same as {@link #clean()}, in a daemon thread, so that the bootstrap doesn't wait for it.
+   */
+  public void cleanInBackground(IoThreads ioThreads) {
+    var thread = ioThreads.newThread("sonar-scanner-temp-cleaning", this::clean);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Clean the copies left directly in the JVM temp directory by older versions, in a daemon thread. Nothing is done once it has been
+   * completed, so that the shared temp directory is not listed again.
+   */
+  public void cleanLegacyTempDirInBackground(IoThreads ioThreads) {
+    if (legacyTempDir == null || Files.exists(tempDir.resolve(LEGACY_MARKER_FILENAME))) {
+      return;
+    }
+    var thread = ioThreads.newThread("sonar-scanner-temp-cleaning", () -> cleanLegacyTempDir(System.currentTimeMillis() - ONE_DAY_IN_MILLISECONDS,
+      new Budget(maxEntries, maxDuration)));
+    thread.setDaemon(true);
+    thread.start();
   }
 
   public void clean() {
+    if (!Files.isDirectory(tempDir)) {
+      return;
+    }
+    Path marker = tempDir.resolve(MARKER_FILENAME);
+    String cursor = readCursor(marker);
+    if (cursor.isEmpty() && !markCleaningStarted(marker)) {
+      return;
+    }
     LOG.debug("Start temp cleaning...");
+    var budget = new Budget(maxEntries, maxDuration);
     long cutoff = System.currentTimeMillis() - ONE_DAY_IN_MILLISECONDS;
 
-    try (Stream<Path> files = Files.list(tempDir)) {
-      files
-        .filter(p -> p.getFileName().toString().startsWith("sonar-scanner-java-library-batch"))
-        .filter(p -> lastModifiedTime(p) < cutoff)
-        .forEach(Utils::deleteQuietly);
+    try {
+      String lastVisited = cleanFrom(cursor, cutoff, budget);
+      writeCursor(marker, lastVisited == null ? "" : lastVisited);
+      if (lastVisited != null) {
+        LOG.debug("Temp cleaning interrupted after {} entries, it will be resumed next time", budget.visited);
+        return;
+      }
+      cleanLegacyTempDir(cutoff, budget);
       LOG.debug("Temp cleaning done");
     } catch (IOException e) {
       LOG.warn("Failed to clean files in {}", tempDir, e);
     }
   }
 
+  /**
+   * @return the name of the last visited entry if the budget was exhausted before the end of the directory, null otherwise
+   */
+  @CheckForNull
+  private String cleanFrom(String cursor, long cutoff, Budget budget) throws IOException {
+    SortedSet<String> names = new TreeSet<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(tempDir, BATCH_GLOB)) {
+      for (Path file : files) {
+        var name = file.getFileName().toString();
+        if (name.compareTo(cursor) > 0) {
+          names.add(name);
+        }
+      }
+    }
+    String lastVisited = null;
+    for (String name : names) {
+      if (budget.isExhausted()) {
+        return lastVisited;
+      }
+      budget.visited++;
+      lastVisited = name;
+      deleteIfOlder(tempDir.resolve(name), cutoff);
+    }
+    return null;
+  }
+
+  private void cleanLegacyTempDir(long cutoff, Budget budget) {
+    if (legacyTempDir == null || Files.exists(tempDir.resolve(LEGACY_MARKER_FILENAME))) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(legacyTempDir, BATCH_GLOB)) {
+      for (Path file : files) {
+        if (budget.isExhausted()) {
+          // Entries deleted so far won't be visited again
+          LOG.debug("Cleaning of {} interrupted, it will be resumed next time", legacyTempDir);
+          return;
+        }
+        budget.visited++;
+        deleteIfOlder(file, cutoff);
+      }
+      Files.createDirectories(tempDir);
+      Files.createFile(tempDir.resolve(LEGACY_MARKER_FILENAME));
+    } catch (IOException e) {
+      LOG.debug("Failed to clean files in {}", legacyTempDir, e);
+    }
+  }
+
+  private static void deleteIfOlder(Path file, long cutoff) {
+    if (lastModifiedTime(file) < cutoff) {
+      Utils.deleteQuietly(file);
+    }
+  }
+
+  /**
+   * @return the name of the entry after which the previous cleaning was interrupted, empty if it completed
+   */
+  private static String readCursor(Path marker) {
+    try {
+      return Files.exists(marker) ? Files.readString(marker, StandardCharsets.UTF_8).trim() : "";
+    } catch (IOException e) {
+      LOG.debug("Unable to read {}", marker, e);
+      return "";
+    }
+  }
+
+  private static void writeCursor(Path marker, String cursor) {
+    try {
+      // Keep the modification time, which is the date of the last complete cleaning
+      var lastModified = Files.getLastModifiedTime(marker);
+      Files.writeString(marker, cursor, StandardCharsets.UTF_8);
+      Files.setLastModifiedTime(marker, lastModified);
+    } catch (IOException e) {
+      // The cleaning will restart from the beginning
+      LOG.debug("Unable to update {}", marker, e);
+    }
+  }
+
+  /**
+   * @return false if a cleaning was already started less than a day ago
+   */
+  private static boolean markCleaningStarted(Path marker) {
+    long now = System.currentTimeMillis();
+    try {
+      if (Files.exists(marker)) {
+        long lastCleaning = Files.getLastModifiedTime(marker).toMillis();
+        if (lastCleaning > now - ONE_DAY_IN_MILLISECONDS && lastCleaning <= now) {
+          return false;
+        }
+      } else {
+        Files.createFile(marker);
+      }
+      Files.setLastModifiedTime(marker, FileTime.fromMillis(now));
+    } catch (IOException e) {
+      // The cleaning is bounded anyway
+      LOG.debug("Unable to update {}", marker, e);
+    }
+    return true;
+  }
+
   private static long lastModifiedTime(Path file) {
     try {
       return Files.getLastModifiedTime(file).toMillis();
@@ -74,4 +253,19 @@ public class TempCleaning {
       return System.currentTimeMillis();
     }
   }
+
+  private static class Budget {
+    private final int maxEntries;
+    private final long deadline;
+    private int visited;
+
+    Budget(int maxEntries, Duration maxDuration) {
+      this.maxEntries = maxEntries;
+      this.deadline = System.nanoTime() + maxDuration.toNanos();
+    }
+
+    boolean isExhausted() {
+      return visited >= maxEntries || System.nanoTime() > deadline;
+    }
+  }
 }
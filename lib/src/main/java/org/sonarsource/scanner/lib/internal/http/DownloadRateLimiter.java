@@ -0,0 +1,194 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.lib.internal.util.Utils;
+
+/**
+ * Token bucket limiting the bandwidth used by downloads. The bucket holds at most one second worth of tokens (bytes).
+ * <p>
+ * Two caps can be configured: one for this process, and one for the whole host. The host cap is shared equally between the processes
+ * that are currently downloading, each of them advertising itself with a lease file in a shared directory. A lease is considered
+ * active as long as it has been refreshed recently, so that leases left by killed processes are eventually ignored, and deleted.
+ */
+class DownloadRateLimiter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DownloadRateLimiter.class);
+
+  static final DownloadRateLimiter UNLIMITED = new DownloadRateLimiter(0, 0, null, System::nanoTime);
+
+  static final Duration LEASE_REFRESH = Duration.ofSeconds(2);
+  static final Duration LEASE_EXPIRY = Duration.ofSeconds(10);
+  private static final String LEASE_SUFFIX = ".lease";
+
+  private final long processBytesPerSecond;
+  private final long hostBytesPerSecond;
+  @Nullable
+  private final Path leaseDir;
+  private final LongSupplier nanoClock;
+  private final String leaseName = ProcessHandle.current().pid() + "-" + UUID.randomUUID() + LEASE_SUFFIX;
+
+  private int activeDownloads;
+  private long rate;
+  private double available;
+  private long lastRefill;
+  private long lastLeaseRefresh;
+
+  /**
+   * @param processBytesPerSecond the cap for this process, 0 for unlimited
+   * @param hostBytesPerSecond    the cap for the whole host, 0 for unlimited
+   * @param leaseDir              the directory shared by all processes of the host, required when there is a host cap
+   */
+  DownloadRateLimiter(long processBytesPerSecond, long hostBytesPerSecond, @Nullable Path leaseDir, LongSupplier nanoClock) {
+    this.processBytesPerSecond = processBytesPerSecond;
+    this.hostBytesPerSecond = leaseDir != null ? hostBytesPerSecond : 0;
+    this.leaseDir = leaseDir;
+    this.nanoClock = nanoClock;
+  }
+
+  static DownloadRateLimiter from(HttpConfig httpConfig) {
+    long processCap = httpConfig.getDownloadRateLimit();
+    long hostCap = httpConfig.getDownloadHostRateLimit();
+    if (processCap <= 0 && hostCap <= 0) {
+      return UNLIMITED;
+    }
+    return new DownloadRateLimiter(processCap, hostCap, httpConfig.getSonarUserHome().resolve("cache").resolve("_download_leases"), System::nanoTime);
+  }
+
+  boolean isUnlimited() {
+    return processBytesPerSecond <= 0 && hostBytesPerSecond <= 0;
+  }
+
+  synchronized void downloadStarted() {
+    if (isUnlimited()) {
+      return;
+    }
+    activeDownloads++;
+    if (activeDownloads == 1) {
+      long now = nanoClock.getAsLong();
+      refreshLease(now);
+      rate = computeRate();
+      available = rate;
+      lastRefill = now;
+      LOG.debug("Downloads limited to {} bytes/s", rate);
+    }
+  }
+
+  synchronized void downloadFinished() {
+    if (isUnlimited() || activeDownloads == 0) {
+      return;
+    }
+    activeDownloads--;
+    if (activeDownloads == 0 && hostBytesPerSecond > 0) {
+      Utils.deleteQuietly(leaseDir.resolve(leaseName));
+    }
+  }
+
+  /**
+   * Consume tokens for the given number of bytes.
+   *
+   * @return how long to wait, in nanoseconds, before receiving more data
+   */
+  synchronized long reserve(long bytes) {
+    if (isUnlimited() || rate <= 0) {
+      return 0;
+    }
+    long now = nanoClock.getAsLong();
+    if (hostBytesPerSecond > 0 && now - lastLeaseRefresh >= LEASE_REFRESH.toNanos()) {
+      refreshLease(now);
+      rate = computeRate();
+    }
+    available = Math.min(rate, available + (now - lastRefill) * rate / 1_000_000_000d);
+    lastRefill = now;
+    available -= bytes;
+    if (available >= 0) {
+      return 0;
+    }
+    return (long) (-available * 1_000_000_000d / rate);
+  }
+
+  private long computeRate() {
+    long result = Long.MAX_VALUE;
+    if (processBytesPerSecond > 0) {
+      result = processBytesPerSecond;
+    }
+    if (hostBytesPerSecond > 0) {
+      result = Math.min(result, hostBytesPerSecond / Math.max(1, countActiveLeases()));
+    }
+    return Math.max(1, result);
+  }
+
+  private void refreshLease(long now) {
+    lastLeaseRefresh = now;
+    if (hostBytesPerSecond <= 0) {
+      return;
+    }
+    try {
+      Files.createDirectories(leaseDir);
+      var lease = leaseDir.resolve(leaseName);
+      if (!Files.exists(lease)) {
+        Files.createFile(lease);
+      }
+      Files.setLastModifiedTime(lease, FileTime.from(Instant.now()));
+    } catch (IOException e) {
+      LOG.debug("Unable to refresh download lease in {}: {}", leaseDir, e.getMessage());
+    }
+  }
+
+  private int countActiveLeases() {
+    var threshold = Instant.now().minus(LEASE_EXPIRY);
+    try (Stream<Path> leases = Files.list(leaseDir)) {
+      return (int) leases
+        .filter(p -> p.getFileName().toString().endsWith(LEASE_SUFFIX))
+        .filter(p -> isActiveOrDelete(p, threshold))
+        .count();
+    } catch (IOException e) {
+      return 1;
+    }
+  }
+
+  /**
+   * A lease that was refreshed by its owner in the meantime is recreated at its next refresh, so there is no harm in deleting it.
+   */
+  private static boolean isActiveOrDelete(Path lease, Instant threshold) {
+    try {
+      if (Files.getLastModifiedTime(lease).toInstant().isAfter(threshold)) {
+        return true;
+      }
+    } catch (IOException e) {
+      // Probably deleted in the meantime
+      return false;
+    }
+    Utils.deleteQuietly(lease);
+    return false;
+  }
+}
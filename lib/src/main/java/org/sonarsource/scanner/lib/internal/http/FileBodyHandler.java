@@ -0,0 +1,205 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonarsource.scanner.downloadcache.DownloadProgressTracker;
+
+/**
+ * Write successful response bodies directly to a {@link FileChannel}, chunk by chunk, as they are received by the HTTP client.
+ * The optional digest is updated with the same buffers, so that the file doesn't have to be read again to be hashed, and the optional
+ * progress tracker is notified of each chunk.
+ * <p>
+ * Other responses (redirects, errors) are exposed as an {@link InputStream}, so that the error body can still be read. For successful
+ * responses, the body stream is empty, since the content has already been written to the file.
+ */
+class FileBodyHandler implements HttpResponse.BodyHandler<InputStream> {
+
+  private final Path toFile;
+  @Nullable
+  private final MessageDigest digest;
+  @Nullable
+  private final DownloadProgressTracker progress;
+  private final DownloadRateLimiter rateLimiter;
+  @Nullable
+  private volatile FileWriteException writeFailure;
+
+  FileBodyHandler(Path toFile, @Nullable MessageDigest digest, @Nullable DownloadProgressTracker progress) {
+    this(toFile, digest, progress, DownloadRateLimiter.UNLIMITED);
+  }
+
+  FileBodyHandler(Path toFile, @Nullable MessageDigest digest, @Nullable DownloadProgressTracker progress, DownloadRateLimiter rateLimiter) {
+    this.toFile = toFile;
+    this.digest = digest;
+    this.progress = progress;
+    this.rateLimiter = rateLimiter;
+  }
+
+  @Override
+  public HttpResponse.BodySubscriber<InputStream> apply(HttpResponse.ResponseInfo responseInfo) {
+    if (responseInfo.statusCode() < 200 || responseInfo.statusCode() >= 300) {
+      return HttpResponse.BodySubscribers.ofInputStream();
+    }
+    var subscriber = new FileChannelSubscriber(toFile, digest, progress, rateLimiter, contentLength(responseInfo.headers()));
+    subscriber.getBody().whenComplete((body, error) -> {
+      if (error instanceof FileWriteException) {
+        writeFailure = (FileWriteException) error;
+      }
+    });
+    return subscriber;
+  }
+
+  /**
+   * On HTTP/2, the call may fail with the cancellation of the stream rather than with the local write error that caused it, so the
+   * latter is kept here.
+   */
+  @CheckForNull
+  FileWriteException getWriteFailure() {
+    return writeFailure;
+  }
+
+  private static long contentLength(HttpHeaders headers) {
+    return headers.firstValueAsLong("Content-Length").orElse(-1L);
+  }
+
+  static class FileChannelSubscriber implements HttpResponse.BodySubscriber<InputStream> {
+    private final CompletableFuture<InputStream> result = new CompletableFuture<>();
+    private final Path toFile;
+    @Nullable
+    private final MessageDigest digest;
+    @Nullable
+    private final DownloadProgressTracker progress;
+    private final DownloadRateLimiter rateLimiter;
+    private final long expectedLength;
+    private FileChannel channel;
+    private Flow.Subscription subscription;
+    private long written;
+
+    FileChannelSubscriber(Path toFile, @Nullable MessageDigest digest, @Nullable DownloadProgressTracker progress, DownloadRateLimiter rateLimiter,
+      long expectedLength) {
+      this.toFile = toFile;
+      this.digest = digest;
+      this.progress = progress;
+      this.rateLimiter = rateLimiter;
+      this.expectedLength = expectedLength;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      try {
+        channel = FileChannel.open(toFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      } catch (IOException e) {
+        // Fail before cancelling, otherwise the HTTP client may report the cancellation instead
+        fail(new FileWriteException(toFile, e));
+        subscription.cancel();
+        return;
+      }
+      if (digest != null) {
+        digest.reset();
+      }
+      if (progress != null) {
+        progress.start(expectedLength);
+      }
+      subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+      long before = written;
+      try {
+        for (ByteBuffer buffer : buffers) {
+          if (digest != null) {
+            digest.update(buffer.duplicate());
+          }
+          while (buffer.hasRemaining()) {
+            written += channel.write(buffer, written);
+          }
+        }
+        if (progress != null) {
+          progress.update(written - before);
+        }
+      } catch (IOException e) {
+        // Fail before cancelling, otherwise the HTTP client may report the cancellation instead
+        fail(new FileWriteException(toFile, e));
+        subscription.cancel();
+        return;
+      }
+      long waitNanos = rateLimiter.reserve(written - before);
+      if (waitNanos > 0) {
+        // Don't block the HTTP client thread, only delay the demand for more data
+        CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS).execute(() -> subscription.request(1));
+      } else {
+        subscription.request(1);
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      fail(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      if (expectedLength >= 0 && written < expectedLength) {
+        fail(new IOException(String.format("Response body is truncated: received %d bytes out of %d", written, expectedLength)));
+        return;
+      }
+      try {
+        channel.close();
+      } catch (IOException e) {
+        result.completeExceptionally(new FileWriteException(toFile, e));
+        return;
+      }
+      result.complete(InputStream.nullInputStream());
+    }
+
+    private void fail(Throwable t) {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          t.addSuppressed(e);
+        }
+      }
+      result.completeExceptionally(t);
+    }
+
+    @Override
+    public CompletionStage<InputStream> getBody() {
+      return result;
+    }
+  }
+}
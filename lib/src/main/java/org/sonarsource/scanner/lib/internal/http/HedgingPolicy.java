@@ -0,0 +1,93 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Decide when an idempotent API call that is still waiting for a response should be hedged, i.e. sent a second time. The delay is a
+ * percentile of the latencies (time to first byte) observed so far in the session, or a fixed delay until enough latencies are known.
+ * The share of hedged calls is capped, so that a slow server is not overloaded by twice as many requests.
+ */
+class HedgingPolicy {
+
+  static final int MIN_SAMPLES = 5;
+  static final int MAX_SAMPLES = 100;
+
+  private final int percentile;
+  private final Duration initialDelay;
+  private final int maxExtraLoad;
+  private final Deque<Long> latenciesMillis = new ArrayDeque<>();
+  private int calls;
+  private int hedgedCalls;
+
+  HedgingPolicy(int percentile, Duration initialDelay, int maxExtraLoad) {
+    this.percentile = percentile;
+    this.initialDelay = initialDelay;
+    this.maxExtraLoad = maxExtraLoad;
+  }
+
+  static HedgingPolicy from(HttpConfig httpConfig) {
+    return new HedgingPolicy(httpConfig.getHedgingPercentile(), httpConfig.getHedgingDelay(), httpConfig.getHedgingMaxExtraLoad());
+  }
+
+  boolean isEnabled() {
+    return percentile > 0 && maxExtraLoad > 0;
+  }
+
+  synchronized void callStarted() {
+    calls++;
+  }
+
+  synchronized void recordLatency(Duration latency) {
+    if (latenciesMillis.size() == MAX_SAMPLES) {
+      latenciesMillis.removeFirst();
+    }
+    latenciesMillis.addLast(latency.toMillis());
+  }
+
+  /**
+   * @return the time to wait for a response before hedging
+   */
+  synchronized Duration delay() {
+    if (latenciesMillis.size() < MIN_SAMPLES) {
+      return initialDelay;
+    }
+    long[] sorted = latenciesMillis.stream().mapToLong(Long::longValue).sorted().toArray();
+    // Nearest-rank percentile
+    int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+    return Duration.ofMillis(sorted[Math.max(rank, 1) - 1]);
+  }
+
+  /**
+   * @return true if one more call can be hedged without exceeding the maximum extra load
+   */
+  synchronized boolean tryHedge() {
+    // Rounded up, so that the first slow call can always be hedged
+    long allowed = ((long) calls * maxExtraLoad + 99) / 100;
+    if (hedgedCalls < allowed) {
+      hedgedCalls++;
+      return true;
+    }
+    return false;
+  }
+}
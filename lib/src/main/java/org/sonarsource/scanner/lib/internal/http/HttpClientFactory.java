@@ -71,6 +71,8 @@ public class HttpClientFactory {
       .sslParameters(sslContext.getSslParameters())
       .followRedirects(HttpClient.Redirect.NEVER);
 
+    httpConfig.getIoThreads().httpClientExecutor().ifPresent(httpClientBuilder::executor);
+
     if (httpConfig.getProxy() != null) {
       var proxyAddress = httpConfig.getProxy().address();
       if (proxyAddress instanceof InetSocketAddress) {
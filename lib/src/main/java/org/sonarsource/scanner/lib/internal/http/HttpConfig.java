@@ -26,7 +26,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
-import java.time.format.DateTimeParseException;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -40,7 +39,9 @@ import org.sonarsource.scanner.lib.ScannerProperties;
 import org.sonarsource.scanner.lib.internal.InternalProperties;
 import org.sonarsource.scanner.lib.internal.http.ssl.CertificateStore;
 import org.sonarsource.scanner.lib.internal.http.ssl.SslConfig;
+import org.sonarsource.scanner.lib.internal.util.IoThreads;
 import org.sonarsource.scanner.lib.internal.util.System2;
+import org.sonarsource.scanner.lib.internal.util.Utils;
 
 import static java.lang.Integer.parseInt;
 import static java.lang.String.format;
@@ -48,6 +49,18 @@ import static org.apache.commons.lang3.StringUtils.defaultIfBlank;
 import static org.sonarsource.scanner.lib.EnvironmentConfig.TOKEN_ENV_VARIABLE;
 import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_LOGIN;
 import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_CONNECT_TIMEOUT;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_DOWNLOAD_HOST_RATE_LIMIT;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_DOWNLOAD_PROGRESS_INTERVAL;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_DOWNLOAD_RATE_LIMIT;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_HTTP_COMPRESSION;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_HTTP_HEDGING_DELAY;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_HTTP_HEDGING_MAX_EXTRA_LOAD;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_HTTP_HEDGING_PERCENTILE;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_HTTP_MAX_RETRIES;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_HTTP_PREWARM;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_HTTP_REDIRECT_CACHE_TTL;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_HTTP_RETRY_BACKOFF;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_HTTP_RETRY_BUDGET;
 import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_KEYSTORE_PASSWORD;
 import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_KEYSTORE_PATH;
 import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_PROXY_HOST;
@@ -76,6 +89,13 @@ public class HttpConfig {
   public static final String READ_TIMEOUT_SEC_PROPERTY = "sonar.ws.timeout";
   static final Duration DEFAULT_READ_TIMEOUT_SEC = Duration.ofSeconds(60);
   static final int DEFAULT_PROXY_PORT = 80;
+  static final int DEFAULT_MAX_RETRIES = 0;
+  static final Duration DEFAULT_RETRY_BACKOFF = Duration.ofMillis(500);
+  static final Duration DEFAULT_RETRY_BUDGET = Duration.ofSeconds(60);
+  static final Duration DEFAULT_REDIRECT_CACHE_TTL = Duration.ZERO;
+  static final Duration DEFAULT_DOWNLOAD_PROGRESS_INTERVAL = Duration.ofSeconds(10);
+  static final Duration DEFAULT_HEDGING_DELAY = Duration.ofSeconds(1);
+  static final int DEFAULT_HEDGING_MAX_EXTRA_LOAD = 10;
 
   private final String webApiBaseUrl;
   private final String restApiBaseUrl;
@@ -102,6 +122,20 @@ public class HttpConfig {
   private final Map<String, String> extraHeaders;
   private final boolean hasCustomAuthorization;
   private final boolean hasCustomProxyAuthorization;
+  private final IoThreads ioThreads;
+  private final int maxRetries;
+  private final Duration retryBackoff;
+  private final Duration retryBudget;
+  private final boolean compressionEnabled;
+  private final Path sonarUserHome;
+  private final Duration redirectCacheTtl;
+  private final boolean prewarmEnabled;
+  private final Duration downloadProgressInterval;
+  private final long downloadRateLimit;
+  private final long downloadHostRateLimit;
+  private final int hedgingPercentile;
+  private final Duration hedgingDelay;
+  private final int hedgingMaxExtraLoad;
 
   public HttpConfig(Map<String, String> bootstrapProperties, Path sonarUserHome, System2 system) {
     this.webApiBaseUrl = StringUtils.removeEnd(bootstrapProperties.get(ScannerProperties.HOST_URL), "/");
@@ -126,6 +160,20 @@ public class HttpConfig {
     this.extraHeaders = parseExtraHeaders(bootstrapProperties);
     this.hasCustomAuthorization = extraHeaders.keySet().stream().anyMatch("authorization"::equalsIgnoreCase);
     this.hasCustomProxyAuthorization = extraHeaders.keySet().stream().anyMatch("proxy-authorization"::equalsIgnoreCase);
+    this.ioThreads = IoThreads.fromProperties(bootstrapProperties);
+    this.maxRetries = loadInt(bootstrapProperties, SONAR_SCANNER_HTTP_MAX_RETRIES, DEFAULT_MAX_RETRIES);
+    this.retryBackoff = loadDuration(bootstrapProperties, SONAR_SCANNER_HTTP_RETRY_BACKOFF, null, DEFAULT_RETRY_BACKOFF);
+    this.retryBudget = loadDuration(bootstrapProperties, SONAR_SCANNER_HTTP_RETRY_BUDGET, null, DEFAULT_RETRY_BUDGET);
+    this.compressionEnabled = Boolean.parseBoolean(defaultIfBlank(bootstrapProperties.get(SONAR_SCANNER_HTTP_COMPRESSION), "false"));
+    this.sonarUserHome = sonarUserHome;
+    this.redirectCacheTtl = loadDuration(bootstrapProperties, SONAR_SCANNER_HTTP_REDIRECT_CACHE_TTL, null, DEFAULT_REDIRECT_CACHE_TTL);
+    this.prewarmEnabled = Boolean.parseBoolean(defaultIfBlank(bootstrapProperties.get(SONAR_SCANNER_HTTP_PREWARM), "false"));
+    this.downloadProgressInterval = loadDuration(bootstrapProperties, SONAR_SCANNER_DOWNLOAD_PROGRESS_INTERVAL, null, DEFAULT_DOWNLOAD_PROGRESS_INTERVAL);
+    this.downloadRateLimit = loadMegabytesPerSecond(bootstrapProperties, SONAR_SCANNER_DOWNLOAD_RATE_LIMIT);
+    this.downloadHostRateLimit = loadMegabytesPerSecond(bootstrapProperties, SONAR_SCANNER_DOWNLOAD_HOST_RATE_LIMIT);
+    this.hedgingPercentile = loadIntInRange(bootstrapProperties, SONAR_SCANNER_HTTP_HEDGING_PERCENTILE, 0, 0, 99);
+    this.hedgingDelay = loadDuration(bootstrapProperties, SONAR_SCANNER_HTTP_HEDGING_DELAY, null, DEFAULT_HEDGING_DELAY);
+    this.hedgingMaxExtraLoad = loadIntInRange(bootstrapProperties, SONAR_SCANNER_HTTP_HEDGING_MAX_EXTRA_LOAD, DEFAULT_HEDGING_MAX_EXTRA_LOAD, 0, 100);
   }
 
   @CheckForNull
@@ -142,15 +190,30 @@ public class HttpConfig {
 
   private static Duration loadDuration(Map<String, String> bootstrapProperties, String propKey, @Nullable String deprecatedPropKey, Duration defaultValue) {
     if (bootstrapProperties.containsKey(propKey)) {
-      return parseDurationProperty(bootstrapProperties.get(propKey), propKey);
+      return Utils.parseDurationProperty(bootstrapProperties.get(propKey), propKey);
     } else if (deprecatedPropKey != null && bootstrapProperties.containsKey(deprecatedPropKey)) {
       LOG.warn("Property {} is deprecated and will be removed in a future version. Please use {} instead.", deprecatedPropKey, propKey);
-      return parseDurationProperty(bootstrapProperties.get(deprecatedPropKey), deprecatedPropKey);
+      return Utils.parseDurationProperty(bootstrapProperties.get(deprecatedPropKey), deprecatedPropKey);
     } else {
       return defaultValue;
     }
   }
 
+  private static int loadInt(Map<String, String> bootstrapProperties, String propKey, int defaultValue) {
+    if (bootstrapProperties.containsKey(propKey)) {
+      return parseIntProperty(bootstrapProperties.get(propKey), propKey);
+    }
+    return defaultValue;
+  }
+
+  private static int loadIntInRange(Map<String, String> bootstrapProperties, String propKey, int defaultValue, int min, int max) {
+    int value = loadInt(bootstrapProperties, propKey, defaultValue);
+    if (value < min || value > max) {
+      throw new IllegalArgumentException(propKey + " must be between " + min + " and " + max + ": " + value);
+    }
+    return value;
+  }
+
   @Nullable
   private static Proxy loadProxy(Map<String, String> bootstrapProperties) {
     String proxyHost = defaultIfBlank(bootstrapProperties.get(SONAR_SCANNER_PROXY_HOST), null);
@@ -171,11 +234,22 @@ public class HttpConfig {
    * For testing, we can accept timeouts that are smaller than a second, expressed using ISO-8601 format for durations.
    * If we can't parse as ISO-8601, then fallback to the official format that is simply the number of seconds
    */
-  private static Duration parseDurationProperty(String propValue, String propKey) {
+  /**
+   * @return the value in bytes per second, or 0 if not set
+   */
+  private static long loadMegabytesPerSecond(Map<String, String> bootstrapProperties, String propKey) {
+    var value = defaultIfBlank(bootstrapProperties.get(propKey), null);
+    if (value == null) {
+      return 0;
+    }
     try {
-      return Duration.parse(propValue);
-    } catch (DateTimeParseException e) {
-      return Duration.ofSeconds(parseIntProperty(propValue, propKey));
+      double megabytes = Double.parseDouble(value.trim());
+      if (megabytes < 0 || Double.isNaN(megabytes) || Double.isInfinite(megabytes)) {
+        throw new IllegalArgumentException(propKey + " is not a valid number of MB/s: " + value);
+      }
+      return (long) (megabytes * 1024 * 1024);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(propKey + " is not a valid number of MB/s: " + value, e);
     }
   }
 
@@ -322,6 +396,74 @@ public class HttpConfig {
     return hasCustomProxyAuthorization;
   }
 
+  public IoThreads getIoThreads() {
+    return ioThreads;
+  }
+
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  public Duration getRetryBackoff() {
+    return retryBackoff;
+  }
+
+  public Duration getRetryBudget() {
+    return retryBudget;
+  }
+
+  public boolean isCompressionEnabled() {
+    return compressionEnabled;
+  }
+
+  public Path getSonarUserHome() {
+    return sonarUserHome;
+  }
+
+  public Duration getRedirectCacheTtl() {
+    return redirectCacheTtl;
+  }
+
+  public boolean isPrewarmEnabled() {
+    return prewarmEnabled;
+  }
+
+  public Duration getDownloadProgressInterval() {
+    return downloadProgressInterval;
+  }
+
+  /**
+   * @return the maximum download bandwidth of this process in bytes per second, or 0 if unlimited
+   */
+  public long getDownloadRateLimit() {
+    return downloadRateLimit;
+  }
+
+  /**
+   * @return the maximum download bandwidth shared by all the scanners of the host in bytes per second, or 0 if unlimited
+   */
+  public long getDownloadHostRateLimit() {
+    return downloadHostRateLimit;
+  }
+
+  /**
+   * @return the percentile of the observed latencies after which API calls are hedged, or 0 if hedging is disabled
+   */
+  public int getHedgingPercentile() {
+    return hedgingPercentile;
+  }
+
+  public Duration getHedgingDelay() {
+    return hedgingDelay;
+  }
+
+  /**
+   * @return the maximum percentage of API calls that can be hedged
+   */
+  public int getHedgingMaxExtraLoad() {
+    return hedgingMaxExtraLoad;
+  }
+
   private static Map<String, String> parseExtraHeaders(Map<String, String> bootstrapProperties) {
     var rawValue = bootstrapProperties.get(SONAR_SCANNER_HTTP_EXTRA_HEADERS);
     if (rawValue == null || rawValue.isBlank()) {
@@ -0,0 +1,149 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.sonarsource.scanner.lib.HttpTiming;
+
+/**
+ * Collect the {@link HttpTiming} of a single call, across its redirects and retries. The response headers and body bytes are observed
+ * by wrapping the body handler of each attempt. Hedged attempts run concurrently, so each one has its own {@link Attempt}, and only
+ * the one whose response is used is kept.
+ */
+class HttpTimingRecorder {
+
+  private final String method;
+  private final URI uri;
+  private final long start = System.nanoTime();
+  @Nullable
+  private volatile Attempt attempt;
+  private int statusCode = -1;
+  private int redirects;
+  private int retries;
+
+  HttpTimingRecorder(String method, URI uri) {
+    this.method = method;
+    this.uri = uri;
+  }
+
+  /**
+   * Start a new attempt, whose response is used unless a hedged attempt wins
+   */
+  Attempt attemptStarted() {
+    var newAttempt = new Attempt();
+    attempt = newAttempt;
+    return newAttempt;
+  }
+
+  /**
+   * Start a hedged attempt. It is only kept if its response is used, see {@link #hedgeWon(Attempt)}.
+   */
+  Attempt hedgeStarted() {
+    return new Attempt();
+  }
+
+  void hedgeWon(Attempt hedge) {
+    attempt = hedge;
+  }
+
+  void responseReceived(int statusCode) {
+    this.statusCode = statusCode;
+  }
+
+  void redirected() {
+    redirects++;
+  }
+
+  void retried() {
+    retries++;
+  }
+
+  HttpTiming finish(@Nullable String failure) {
+    long end = System.nanoTime();
+    var current = attempt;
+    long attemptStart = current != null ? current.start : start;
+    long headersReceived = current != null ? current.headersReceived : -1;
+    long firstByte = headersReceived >= 0 ? headersReceived : end;
+    return new HttpTiming(method, uri, statusCode,
+      Duration.ofNanos(end - start),
+      Duration.ofNanos(attemptStart - start),
+      Duration.ofNanos(firstByte - attemptStart),
+      Duration.ofNanos(end - firstByte),
+      current != null ? current.bytes.get() : 0, redirects, retries, failure);
+  }
+
+  static class Attempt {
+    private final long start = System.nanoTime();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile long headersReceived = -1;
+
+    <T> HttpResponse.BodyHandler<T> wrap(HttpResponse.BodyHandler<T> bodyHandler) {
+      return responseInfo -> {
+        headersReceived = System.nanoTime();
+        return new CountingSubscriber<>(bodyHandler.apply(responseInfo), bytes);
+      };
+    }
+  }
+
+  private static class CountingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+    private final HttpResponse.BodySubscriber<T> delegate;
+    private final AtomicLong bytes;
+
+    CountingSubscriber(HttpResponse.BodySubscriber<T> delegate, AtomicLong bytes) {
+      this.delegate = delegate;
+      this.bytes = bytes;
+    }
+
+    @Override
+    public CompletionStage<T> getBody() {
+      return delegate.getBody();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      delegate.onSubscribe(subscription);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+      // Count before the delegate consumes the buffers
+      bytes.addAndGet(item.stream().mapToLong(ByteBuffer::remaining).sum());
+      delegate.onNext(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      delegate.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      delegate.onComplete();
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.lib.HttpTiming;
+import org.sonarsource.scanner.lib.HttpTimingListener;
+
+/**
+ * Collect the timings of the HTTP calls made during the bootstrap, and log a summary of them, so that a slow step (proxy, server,
+ * transfer) can be spotted.
+ */
+public class HttpTimingReport implements HttpTimingListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HttpTimingReport.class);
+
+  private final List<HttpTiming> timings = new CopyOnWriteArrayList<>();
+
+  @Override
+  public void onCallCompleted(HttpTiming timing) {
+    timings.add(timing);
+  }
+
+  public List<HttpTiming> getTimings() {
+    return List.copyOf(timings);
+  }
+
+  public void log() {
+    if (!LOG.isDebugEnabled() || timings.isEmpty()) {
+      return;
+    }
+    var total = timings.stream().map(HttpTiming::getTotal).reduce(Duration.ZERO, Duration::plus);
+    long bytes = timings.stream().mapToLong(HttpTiming::getBytes).sum();
+    int redirects = timings.stream().mapToInt(HttpTiming::getRedirects).sum();
+    int retries = timings.stream().mapToInt(HttpTiming::getRetries).sum();
+    LOG.debug("HTTP calls during bootstrap: {} in {}ms, {} received, {} redirect(s), {} retry(ies)", timings.size(), total.toMillis(),
+      FileUtils.byteCountToDisplaySize(bytes), redirects, retries);
+    timings.stream()
+      .sorted(Comparator.comparing(HttpTiming::getTotal).reversed())
+      .forEach(timing -> LOG.debug("  {}", timing));
+  }
+}
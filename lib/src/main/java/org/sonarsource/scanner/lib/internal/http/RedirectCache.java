@@ -0,0 +1,249 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.lib.internal.util.Utils;
+
+/**
+ * Remember the targets of permanent redirects (HTTP 301 and 308), so that later requests can go straight to the final location.
+ * <p>
+ * Since later requests go straight to the remembered location, with the {@code Authorization} header, only redirects that stay on
+ * the same origin, or that upgrade it from http to https on the same authority, are remembered. In the latter case (for example
+ * {@code http://sonar} to {@code https://sonar}), the whole origin is remembered, so that other URLs on the same server benefit from it.
+ * <p>
+ * Entries are kept for the session. When a TTL is configured, they are also persisted in the given file, to be reused by
+ * subsequent runs until they expire.
+ */
+class RedirectCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RedirectCache.class);
+  private static final int MAX_HOPS = 10;
+  private static final String ORIGIN_PREFIX = "origin:";
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  @Nullable
+  private final Path file;
+  private final Duration ttl;
+
+  /**
+   * Create a cache that only lives for the session.
+   */
+  RedirectCache() {
+    this(null, Duration.ZERO);
+  }
+
+  /**
+   * @param file where to persist the entries, or null to only keep them for the session
+   * @param ttl  how long persisted entries are valid. Zero disables persistence.
+   */
+  RedirectCache(@Nullable Path file, Duration ttl) {
+    this.file = ttl.isZero() || ttl.isNegative() ? null : file;
+    this.ttl = ttl;
+    load();
+  }
+
+  static RedirectCache from(HttpConfig httpConfig) {
+    return new RedirectCache(httpConfig.getSonarUserHome().resolve("cache").resolve("http-redirects.properties"), httpConfig.getRedirectCacheTtl());
+  }
+
+  /**
+   * @return the final location of the given URL, following the known permanent redirects. The URL itself if none is known.
+   */
+  String resolve(String url) {
+    String current = url;
+    for (int i = 0; i < MAX_HOPS; i++) {
+      String next = lookup(current);
+      if (next == null || next.equals(current)) {
+        return current;
+      }
+      current = next;
+    }
+    return current;
+  }
+
+  @CheckForNull
+  private String lookup(String url) {
+    var now = Instant.now();
+    var exact = valid(url, now);
+    if (exact != null) {
+      return exact;
+    }
+    var origin = originOf(url);
+    if (origin != null) {
+      var targetOrigin = valid(ORIGIN_PREFIX + origin, now);
+      if (targetOrigin != null) {
+        return targetOrigin + url.substring(origin.length());
+      }
+    }
+    return null;
+  }
+
+  @CheckForNull
+  private String valid(String key, Instant now) {
+    var entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.expiresAt != null && entry.expiresAt.isBefore(now)) {
+      entries.remove(key, entry);
+      return null;
+    }
+    return entry.target;
+  }
+
+  void put(String from, String to) {
+    if (from.equals(to)) {
+      return;
+    }
+    var fromOrigin = originOf(from);
+    var toOrigin = originOf(to);
+    if (!isSafe(fromOrigin, toOrigin)) {
+      LOG.debug("Not remembering permanent redirect of {} to {}, which leaves the origin", from, to);
+      return;
+    }
+    var expiresAt = file != null ? Instant.now().plus(ttl) : null;
+    if (!fromOrigin.equals(toOrigin) && from.substring(fromOrigin.length()).equals(to.substring(toOrigin.length()))) {
+      LOG.debug("Remembering permanent redirect of {} to {}", fromOrigin, toOrigin);
+      entries.put(ORIGIN_PREFIX + fromOrigin, new Entry(toOrigin, expiresAt));
+    } else {
+      LOG.debug("Remembering permanent redirect of {} to {}", from, to);
+      entries.put(from, new Entry(to, expiresAt));
+    }
+    save();
+  }
+
+  /**
+   * Forget what is known about the given URL, for example because the remembered location doesn't work anymore.
+   */
+  void forget(String url) {
+    boolean removed = entries.remove(url) != null;
+    var origin = originOf(url);
+    if (origin != null) {
+      removed |= entries.remove(ORIGIN_PREFIX + origin) != null;
+    }
+    if (removed) {
+      save();
+    }
+  }
+
+  /**
+   * The credentials can be sent again to the same origin, or to the same authority over https.
+   */
+  private static boolean isSafe(@Nullable String fromOrigin, @Nullable String toOrigin) {
+    if (fromOrigin == null || toOrigin == null) {
+      return false;
+    }
+    return fromOrigin.equals(toOrigin) || (fromOrigin.startsWith("http://") && toOrigin.equals("https://" + fromOrigin.substring("http://".length())));
+  }
+
+  @CheckForNull
+  private static String originOf(String url) {
+    try {
+      var uri = URI.create(url);
+      if (uri.getScheme() == null || uri.getRawAuthority() == null) {
+        return null;
+      }
+      return uri.getScheme() + "://" + uri.getRawAuthority();
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private void load() {
+    if (file == null || !Files.isRegularFile(file)) {
+      return;
+    }
+    var props = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      props.load(in);
+    } catch (IOException e) {
+      LOG.debug("Unable to read redirect cache {}: {}", file, e.getMessage());
+      return;
+    }
+    var now = Instant.now();
+    props.forEach((k, v) -> {
+      var value = (String) v;
+      int sep = value.lastIndexOf(' ');
+      if (sep < 0) {
+        return;
+      }
+      try {
+        var expiresAt = Instant.ofEpochMilli(Long.parseLong(value.substring(sep + 1)));
+        var key = (String) k;
+        var target = value.substring(0, sep);
+        // Entries persisted by older versions may not be safe to follow
+        var from = key.startsWith(ORIGIN_PREFIX) ? key.substring(ORIGIN_PREFIX.length()) : key;
+        if (expiresAt.isAfter(now) && isSafe(originOf(from), originOf(target))) {
+          entries.put(key, new Entry(target, expiresAt));
+        }
+      } catch (NumberFormatException e) {
+        // Ignore corrupted entry
+      }
+    });
+  }
+
+  private void save() {
+    if (file == null) {
+      return;
+    }
+    var props = new Properties();
+    entries.forEach((k, e) -> {
+      if (e.expiresAt != null) {
+        props.setProperty(k, e.target + " " + e.expiresAt.toEpochMilli());
+      }
+    });
+    try {
+      Files.createDirectories(file.getParent());
+      Utils.writeAtomically(file, tmp -> {
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+          props.store(out, null);
+        }
+      });
+    } catch (IOException e) {
+      LOG.debug("Unable to write redirect cache {}: {}", file, e.getMessage());
+    }
+  }
+
+  private static class Entry {
+    private final String target;
+    @Nullable
+    private final Instant expiresAt;
+
+    private Entry(String target, @Nullable Instant expiresAt) {
+      this.target = target;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
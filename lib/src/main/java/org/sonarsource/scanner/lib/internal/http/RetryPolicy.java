@@ -0,0 +1,124 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLException;
+
+/**
+ * Decide if, and when, a failed idempotent request should be sent again. Transient failures are connection errors and
+ * HTTP 429, 502, 503 and 504. The delay grows exponentially with each retry, with jitter to avoid many scanners retrying in
+ * sync, and honors the {@code Retry-After} header. No retry is attempted once the total retry budget would be exceeded.
+ */
+class RetryPolicy {
+
+  static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+
+  private final int maxRetries;
+  private final Duration initialBackoff;
+  private final Duration budget;
+
+  RetryPolicy(int maxRetries, Duration initialBackoff, Duration budget) {
+    this.maxRetries = maxRetries;
+    this.initialBackoff = initialBackoff;
+    this.budget = budget;
+  }
+
+  static RetryPolicy from(HttpConfig httpConfig) {
+    return new RetryPolicy(httpConfig.getMaxRetries(), httpConfig.getRetryBackoff(), httpConfig.getRetryBudget());
+  }
+
+  int getMaxRetries() {
+    return maxRetries;
+  }
+
+  static boolean isRetryable(int statusCode) {
+    return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+  }
+
+  static boolean isRetryable(IOException e) {
+    // SSL errors are usually caused by a misconfiguration, that will not go away by retrying
+    if (e instanceof SSLException) {
+      return false;
+    }
+    // Neither will local write errors. The HTTP client wraps the exceptions of the body subscriber, so the whole chain is checked.
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof FileWriteException) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param retryNumber the number of the retry about to be attempted, starting at 1
+   * @param elapsed     the time spent since the first attempt
+   * @param retryAfter  the delay requested by the server, if any
+   * @return the delay to wait before retrying, or empty if we should give up
+   */
+  Optional<Duration> nextDelay(int retryNumber, Duration elapsed, @Nullable Duration retryAfter) {
+    if (retryNumber > maxRetries) {
+      return Optional.empty();
+    }
+    Duration delay = retryAfter != null ? retryAfter : backoff(retryNumber);
+    if (elapsed.plus(delay).compareTo(budget) > 0) {
+      return Optional.empty();
+    }
+    return Optional.of(delay);
+  }
+
+  /**
+   * Exponential backoff with "equal jitter": half of the delay is fixed, the other half is random.
+   */
+  private Duration backoff(int retryNumber) {
+    long exponential = initialBackoff.toMillis() << Math.min(retryNumber - 1, 20);
+    long capped = Math.min(exponential, MAX_BACKOFF.toMillis());
+    long half = capped / 2;
+    return Duration.ofMillis(half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0));
+  }
+
+  /**
+   * Parse the {@code Retry-After} header, that can be either a number of seconds or an HTTP date.
+   */
+  static Optional<Duration> parseRetryAfter(HttpHeaders headers, Instant now) {
+    return headers.firstValue("Retry-After").map(String::trim).flatMap(value -> {
+      try {
+        return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(value))));
+      } catch (NumberFormatException e) {
+        // Not a number of seconds, try as a date
+      }
+      try {
+        var date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+        return Optional.of(date.isAfter(now) ? Duration.between(now, date) : Duration.ZERO);
+      } catch (DateTimeParseException e) {
+        return Optional.empty();
+      }
+    });
+  }
+}
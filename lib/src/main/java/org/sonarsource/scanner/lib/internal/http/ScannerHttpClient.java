@@ -19,23 +19,39 @@
  */
 package org.sonarsource.scanner.lib.internal.http;
 
+import com.google.gson.stream.JsonReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.downloadcache.DownloadProgressTracker;
+import org.sonarsource.scanner.lib.HttpTiming;
+import org.sonarsource.scanner.lib.HttpTimingListener;
 import org.sonarsource.scanner.lib.internal.util.Utils;
 
 import static java.lang.String.format;
@@ -45,9 +61,15 @@ public class ScannerHttpClient {
 
   private static final Logger LOG = LoggerFactory.getLogger(ScannerHttpClient.class);
   private static final String EXCEPTION_MESSAGE_MISSING_SLASH = "URL path must start with slash: %s";
+  static final long MAX_JSON_RESPONSE_SIZE = 10L * 1024 * 1024;
 
+  private final List<HttpTimingListener> timingListeners = new CopyOnWriteArrayList<>();
   private HttpClient httpClient;
   private HttpConfig httpConfig;
+  private RetryPolicy retryPolicy;
+  private RedirectCache redirectCache;
+  private DownloadRateLimiter downloadRateLimiter;
+  private HedgingPolicy hedgingPolicy;
 
   public void init(HttpConfig httpConfig) {
     init(httpConfig, HttpClientFactory.create(httpConfig));
@@ -56,48 +78,155 @@ public class ScannerHttpClient {
   void init(HttpConfig httpConfig, HttpClient httpClient) {
     this.httpConfig = httpConfig;
     this.httpClient = httpClient;
+    this.retryPolicy = RetryPolicy.from(httpConfig);
+    this.redirectCache = RedirectCache.from(httpConfig);
+    this.downloadRateLimiter = DownloadRateLimiter.from(httpConfig);
+    this.hedgingPolicy = HedgingPolicy.from(httpConfig);
+  }
+
+  /**
+   * Register a listener notified of the {@link HttpTiming} of each call made through the API and download methods.
+   */
+  public void addTimingListener(HttpTimingListener listener) {
+    timingListeners.add(listener);
+  }
+
+  public void removeTimingListener(HttpTimingListener listener) {
+    timingListeners.remove(listener);
+  }
+
+  /**
+   * If enabled, send a cheap HEAD request to each distinct server origin in the background, so that the connections (DNS, proxy
+   * tunnel, TLS handshake) are established, and kept in the client pool, by the time the first request to this origin is sent.
+   * The origin of the REST API is skipped: the first request of the bootstrap is sent to it right away, and would only wait for the
+   * same handshake. Failures are ignored, they will be reported by the real requests.
+   */
+  public CompletableFuture<Void> prewarm() {
+    if (!httpConfig.isPrewarmEnabled()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    var restApiOrigin = originOf(httpConfig.getRestApiBaseUrl());
+    var futures = originOf(httpConfig.getWebApiBaseUrl()).stream()
+      .filter(origin -> !restApiOrigin.equals(Optional.of(origin)))
+      .map(this::prewarm)
+      .toArray(CompletableFuture[]::new);
+    return CompletableFuture.allOf(futures);
+  }
+
+  private CompletableFuture<Void> prewarm(String origin) {
+    var url = redirectCache.resolve(origin + "/");
+    var request = prepareRequestBuilder(url, null, false, false)
+      .method("HEAD", HttpRequest.BodyPublishers.noBody())
+      .build();
+    Instant start = Instant.now();
+    LOG.debug("Pre-warming connection to {}", origin);
+    return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+      .handle((response, error) -> {
+        if (error != null) {
+          LOG.debug("Unable to pre-warm connection to {}: {}", origin, error.getMessage());
+        } else {
+          LOG.debug("Connection to {} pre-warmed ({}ms)", origin, Duration.between(start, Instant.now()).toMillis());
+        }
+        return null;
+      });
+  }
+
+  /**
+   * Measure the time needed to get an answer to an unauthenticated HEAD request on the given URL. Any answer that is not a server
+   * error counts, since a file server doesn't have to serve anything at its root.
+   *
+   * @return the round trip time, or empty if the server is not reachable
+   */
+  public Optional<Duration> measureLatency(String url) {
+    var request = prepareRequestBuilder(url, null, false, false)
+      .method("HEAD", HttpRequest.BodyPublishers.noBody())
+      .build();
+    Instant start = Instant.now();
+    try {
+      var response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+      if (response.statusCode() >= 500) {
+        return Optional.empty();
+      }
+      return Optional.of(Duration.between(start, Instant.now()));
+    } catch (IOException e) {
+      LOG.debug("Unable to reach {}: {}", url, e.getMessage());
+      return Optional.empty();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Optional.empty();
+    }
+  }
+
+  private static Optional<String> originOf(String url) {
+    try {
+      var uri = URI.create(url);
+      if (uri.getScheme() == null || uri.getRawAuthority() == null) {
+        return Optional.empty();
+      }
+      return Optional.of(uri.getScheme() + "://" + uri.getRawAuthority());
+    } catch (IllegalArgumentException e) {
+      return Optional.empty();
+    }
   }
 
   public void downloadFromRestApi(String urlPath, Path toFile) {
+    downloadFromRestApi(urlPath, toFile, null, null);
+  }
+
+  public void downloadFromRestApi(String urlPath, Path toFile, @Nullable MessageDigest digest, @Nullable DownloadProgressTracker progress) {
     if (!urlPath.startsWith("/")) {
       throw new IllegalArgumentException(format(EXCEPTION_MESSAGE_MISSING_SLASH, urlPath));
     }
     String url = httpConfig.getRestApiBaseUrl() + urlPath;
-    downloadFile(url, toFile, true);
+    downloadFile(url, toFile, true, digest, progress);
   }
 
   public void downloadFromWebApi(String urlPath, Path toFile) {
+    downloadFromWebApi(urlPath, toFile, null, null);
+  }
+
+  public void downloadFromWebApi(String urlPath, Path toFile, @Nullable MessageDigest digest, @Nullable DownloadProgressTracker progress) {
     if (!urlPath.startsWith("/")) {
       throw new IllegalArgumentException(format(EXCEPTION_MESSAGE_MISSING_SLASH, urlPath));
     }
     String url = httpConfig.getWebApiBaseUrl() + urlPath;
-    downloadFile(url, toFile, true);
+    downloadFile(url, toFile, true, digest, progress);
   }
 
   public void downloadFromExternalUrl(String url, Path toFile) {
-    downloadFile(url, toFile, false);
+    downloadFromExternalUrl(url, toFile, null, null);
+  }
+
+  public void downloadFromExternalUrl(String url, Path toFile, @Nullable MessageDigest digest, @Nullable DownloadProgressTracker progress) {
+    downloadFile(url, toFile, false, digest, progress);
   }
 
   /**
-   * Download file from the given URL.
+   * Download file from the given URL. The body is written directly to the file as it is received.
    *
    * @param url            the URL of the file to download
    * @param toFile         the target file
    * @param authentication if true, the request will be authenticated with the token
+   * @param digest         if not null, will be updated with the content of the file
+   * @param progress       if not null, will be notified of the received bytes
    * @throws IllegalStateException if HTTP response code is different than 2xx
    */
-  private void downloadFile(String url, Path toFile, boolean authentication) {
+  private void downloadFile(String url, Path toFile, boolean authentication, @Nullable MessageDigest digest, @Nullable DownloadProgressTracker progress) {
     LOG.debug("Download {} to {}", url, toFile.toAbsolutePath());
 
-    callUrl(url, authentication, "application/octet-stream", response -> {
-      try (InputStream in = response.body()) {
-        Files.copy(in, toFile, StandardCopyOption.REPLACE_EXISTING);
+    downloadRateLimiter.downloadStarted();
+    try {
+      callUrl(url, authentication, "application/octet-stream", false, false, new FileBodyHandler(toFile, digest, progress, downloadRateLimiter), response -> {
+        // Body has already been written to the file
+        response.body().close();
         return null;
-      } catch (IOException | RuntimeException e) {
-        Utils.deleteQuietly(toFile);
-        throw e;
-      }
-    });
+      });
+    } catch (RuntimeException e) {
+      Utils.deleteQuietly(toFile);
+      throw e;
+    } finally {
+      downloadRateLimiter.downloadFinished();
+    }
   }
 
   public String callRestApi(String urlPath) {
@@ -108,6 +237,23 @@ public class ScannerHttpClient {
     return callApi(url);
   }
 
+  /**
+   * Call a REST API and parse the JSON response as it is received. The handler may stop reading before the end of the response.
+   *
+   * @throws IllegalStateException if HTTP response code is different than 2xx, or if the response is larger than {@link #MAX_JSON_RESPONSE_SIZE}
+   */
+  public <T> T callRestApi(String urlPath, JsonResponseHandler<T> handler) {
+    if (!urlPath.startsWith("/")) {
+      throw new IllegalArgumentException(format(EXCEPTION_MESSAGE_MISSING_SLASH, urlPath));
+    }
+    String url = httpConfig.getRestApiBaseUrl() + urlPath;
+    return callUrl(url, true, null, httpConfig.isCompressionEnabled(), true, HttpResponse.BodyHandlers.ofInputStream(), response -> {
+      try (var reader = new JsonReader(new InputStreamReader(new SizeLimitedInputStream(decodedBody(response), MAX_JSON_RESPONSE_SIZE), StandardCharsets.UTF_8))) {
+        return handler.handle(reader);
+      }
+    });
+  }
+
   public String callWebApi(String urlPath) {
     if (!urlPath.startsWith("/")) {
       throw new IllegalArgumentException(format(EXCEPTION_MESSAGE_MISSING_SLASH, urlPath));
@@ -117,14 +263,14 @@ public class ScannerHttpClient {
   }
 
   /**
-   * Call a server API and get the response as a string.
+   * Call a server API and get the response as a string. If enabled, a compressed response is negotiated and decompressed on the fly.
    *
    * @param url the url to call
    * @throws IllegalStateException if HTTP response code is different than 2xx
    */
   private String callApi(String url) {
-    return callUrl(url, true, null, response -> {
-      try (InputStream in = response.body()) {
+    return callUrl(url, true, null, httpConfig.isCompressionEnabled(), true, HttpResponse.BodyHandlers.ofInputStream(), response -> {
+      try (InputStream in = decodedBody(response)) {
         return new String(in.readAllBytes(), StandardCharsets.UTF_8);
       }
     });
@@ -136,65 +282,268 @@ public class ScannerHttpClient {
    * @param url            the URL to call
    * @param authentication if true, the request will be authenticated with the token
    * @param acceptHeader   the value of the Accept header
+   * @param compression    if true, the request will accept a gzip or deflate encoded response
+   * @param hedgeable      if true, the response is small and has no side effect, so the request can be hedged if enabled
    */
-  private <G> G callUrl(String url, boolean authentication, @Nullable String acceptHeader, ResponseHandler<G> responseHandler) {
-    return callUrlWithRedirects(url, authentication, acceptHeader, responseHandler);
+  private <G> G callUrl(String url, boolean authentication, @Nullable String acceptHeader, boolean compression, boolean hedgeable,
+    HttpResponse.BodyHandler<InputStream> bodyHandler, ResponseHandler<G> responseHandler) {
+    var recorder = new HttpTimingRecorder("GET", URI.create(url));
+    boolean hedging = hedgeable && hedgingPolicy.isEnabled();
+    if (hedging) {
+      hedgingPolicy.callStarted();
+    }
+    String failure = null;
+    try {
+      return callUrlWithRedirects(url, authentication, acceptHeader, compression, hedging, bodyHandler, responseHandler, recorder);
+    } catch (RuntimeException e) {
+      failure = e.getMessage();
+      throw e;
+    } finally {
+      var timing = recorder.finish(failure);
+      if (hedging && timing.getStatusCode() >= 200 && timing.getStatusCode() < 300) {
+        hedgingPolicy.recordLatency(timing.getTimeToFirstByte());
+      }
+      timingListeners.forEach(listener -> listener.onCallCompleted(timing));
+    }
   }
 
-  private <G> G callUrlWithRedirects(String url, boolean authentication, @Nullable String acceptHeader, ResponseHandler<G> responseHandler) {
-    return callUrlWithRedirectsAndProxyAuth(url, authentication, acceptHeader, responseHandler, 0);
-  }
+  private <G> G callUrlWithRedirects(String url, boolean authentication, @Nullable String acceptHeader, boolean compression, boolean hedging,
+    HttpResponse.BodyHandler<InputStream> bodyHandler, ResponseHandler<G> responseHandler, HttpTimingRecorder recorder) {
+    String currentUrl = redirectCache.resolve(url);
+    boolean fromRedirectCache = !currentUrl.equals(url);
+    // Set when the remembered location was unreachable, until the original URL answers
+    boolean revalidating = false;
+    int redirectCount = 0;
+    while (true) {
+      if (redirectCount > 10) {
+        throw new IllegalStateException("Too many redirects (>10) for URL: " + url);
+      }
+      var request = prepareRequest(currentUrl, acceptHeader, compression, authentication);
+
+      HttpResponse<InputStream> response = null;
+      Instant start = Instant.now();
+      try {
+        LOG.debug("--> {} {}", request.method(), request.uri());
+        try {
+          response = sendWithRetries(request, bodyHandler, hedging, recorder);
+        } catch (IOException e) {
+          if (!fromRedirectCache) {
+            throw e;
+          }
+          LOG.debug("Remembered location {} of {} failed: {}, trying the original URL", currentUrl, url, e.getMessage());
+          recorder.redirected();
+          currentUrl = url;
+          fromRedirectCache = false;
+          revalidating = true;
+          continue;
+        }
+        recorder.responseReceived(response.statusCode());
+        if (revalidating) {
+          revalidating = false;
+          forgetIfNoLongerRedirected(url, response.statusCode());
+        }
 
-  private <G> G callUrlWithRedirectsAndProxyAuth(String url, boolean authentication, @Nullable String acceptHeader, ResponseHandler<G> responseHandler,
-    int redirectCount) {
-    if (redirectCount > 10) {
-      throw new IllegalStateException("Too many redirects (>10) for URL: " + url);
-    }
+        if (isRedirect(response.statusCode())) {
+          var locationHeader = response.headers().firstValue("Location");
+          if (locationHeader.isPresent()) {
+            String redirectUrl = locationHeader.get();
+            if (!redirectUrl.startsWith("http")) {
+              URI originalUri = URI.create(currentUrl);
+              redirectUrl = originalUri.getScheme() + "://" + originalUri.getAuthority() + redirectUrl;
+            }
+            if (isPermanentRedirect(response.statusCode())) {
+              redirectCache.put(currentUrl, redirectUrl);
+            }
+            closeQuietly(response);
+            currentUrl = redirectUrl;
+            redirectCount++;
+            recorder.redirected();
+            continue;
+          }
+        }
 
-    var request = prepareRequest(url, acceptHeader, authentication);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+          Optional<String> errorBody = tryReadBodyQuietly(response);
+          throw new HttpException(URI.create(currentUrl).toURL(), response.statusCode(), errorBody.orElse(null));
+        }
 
-    HttpResponse<InputStream> response = null;
-    Instant start = Instant.now();
-    try {
-      LOG.debug("--> {} {}", request.method(), request.uri());
-      response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
-
-      if (isRedirect(response.statusCode())) {
-        var locationHeader = response.headers().firstValue("Location");
-        if (locationHeader.isPresent()) {
-          String redirectUrl = locationHeader.get();
-          if (!redirectUrl.startsWith("http")) {
-            URI originalUri = URI.create(url);
-            redirectUrl = originalUri.getScheme() + "://" + originalUri.getAuthority() + redirectUrl;
-          }
-          return callUrlWithRedirectsAndProxyAuth(redirectUrl, authentication, acceptHeader, responseHandler, redirectCount + 1);
+        return responseHandler.apply(requireNonNull(response, "Response is empty"));
+      } catch (HttpException e) {
+        throw e;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(format("Call to URL [%s] was interrupted: %s", currentUrl, e.getMessage()), e);
+      } catch (Exception e) {
+        throw new IllegalStateException(format("Call to URL [%s] failed: %s", currentUrl, e.getMessage()), e);
+      } finally {
+        if (response != null) {
+          LOG.debug("<-- {} {} ({}ms)", response.statusCode(), response.uri(), Duration.between(start, Instant.now()).toMillis());
         }
       }
+    }
+  }
+
+  /**
+   * Called with the response of the original URL, when its remembered location was unreachable. A new permanent redirect replaces the
+   * remembered one. A direct answer, or a temporary redirect, means the remembered location is obsolete. Errors don't tell anything.
+   */
+  private void forgetIfNoLongerRedirected(String url, int statusCode) {
+    boolean directAnswer = statusCode >= 200 && statusCode < 300;
+    boolean temporaryRedirect = isRedirect(statusCode) && !isPermanentRedirect(statusCode);
+    if (directAnswer || temporaryRedirect) {
+      LOG.debug("{} is no longer permanently redirected", url);
+      redirectCache.forget(url);
+    }
+  }
 
-      if (response.statusCode() < 200 || response.statusCode() >= 300) {
-        Optional<String> errorBody = tryReadBodyQuietly(response);
-        throw new HttpException(URI.create(url).toURL(), response.statusCode(), errorBody.orElse(null));
+  private HttpResponse<InputStream> sendWithRetries(HttpRequest request, HttpResponse.BodyHandler<InputStream> bodyHandler, boolean hedging,
+    HttpTimingRecorder recorder) throws IOException, InterruptedException {
+    // Only idempotent requests can be safely sent again
+    boolean canRetry = "GET".equals(request.method()) || "HEAD".equals(request.method());
+    Instant firstAttempt = Instant.now();
+    int retryNumber = 1;
+    while (true) {
+      HttpResponse<InputStream> response;
+      try {
+        var attempt = recorder.attemptStarted();
+        response = hedging ? sendHedged(request, bodyHandler, recorder, attempt) : httpClient.send(request, attempt.wrap(bodyHandler));
+      } catch (IOException e) {
+        var failure = writeFailureOr(bodyHandler, e);
+        var delay = canRetry && RetryPolicy.isRetryable(failure) ? retryPolicy.nextDelay(retryNumber, Duration.between(firstAttempt, Instant.now()), null)
+          : Optional.<Duration>empty();
+        if (delay.isEmpty()) {
+          throw failure;
+        }
+        waitBeforeRetry(recorder, request, failure.toString(), retryNumber, delay.get());
+        retryNumber++;
+        continue;
       }
+      if (canRetry && RetryPolicy.isRetryable(response.statusCode())) {
+        var retryAfter = RetryPolicy.parseRetryAfter(response.headers(), Instant.now()).orElse(null);
+        var delay = retryPolicy.nextDelay(retryNumber, Duration.between(firstAttempt, Instant.now()), retryAfter);
+        if (delay.isPresent()) {
+          closeQuietly(response);
+          waitBeforeRetry(recorder, request, "HTTP " + response.statusCode(), retryNumber, delay.get());
+          retryNumber++;
+          continue;
+        }
+      }
+      return response;
+    }
+  }
 
-      return responseHandler.apply(requireNonNull(response, "Response is empty"));
-    } catch (HttpException e) {
-      throw e;
+  /**
+   * Send the request, and if no response has been received after the hedging delay, send the same request again. The first successful
+   * response wins, the other request is cancelled and its response, if any, is discarded. Only the timing of the winner is recorded.
+   */
+  private HttpResponse<InputStream> sendHedged(HttpRequest request, HttpResponse.BodyHandler<InputStream> bodyHandler, HttpTimingRecorder recorder,
+    HttpTimingRecorder.Attempt firstAttempt) throws IOException, InterruptedException {
+    var first = httpClient.sendAsync(request, firstAttempt.wrap(bodyHandler));
+    Duration delay = hedgingPolicy.delay();
+    try {
+      return first.get(delay.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      // Still waiting, hedge below
+    } catch (ExecutionException e) {
+      throw asIOException(e.getCause());
     } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new IllegalStateException(format("Call to URL [%s] was interrupted: %s", url, e.getMessage()), e);
-    } catch (Exception e) {
-      throw new IllegalStateException(format("Call to URL [%s] failed: %s", url, e.getMessage()), e);
+      first.cancel(true);
+      throw e;
+    }
+    if (!hedgingPolicy.tryHedge()) {
+      LOG.debug("No response after {}ms for {} {}, but the maximum extra load is reached", delay.toMillis(), request.method(), request.uri());
+      return awaitResponse(first, List.of(first));
+    }
+    LOG.debug("No response after {}ms for {} {}, sending a hedged request", delay.toMillis(), request.method(), request.uri());
+    var hedge = recorder.hedgeStarted();
+    var second = httpClient.sendAsync(request, hedge.wrap(bodyHandler));
+    var winner = new CompletableFuture<HttpResponse<InputStream>>();
+    var failures = new AtomicInteger();
+    for (var attempt : List.of(first, second)) {
+      attempt.whenComplete((response, error) -> {
+        if (error == null) {
+          if (!winner.complete(response)) {
+            closeQuietly(response);
+          }
+        } else if (failures.incrementAndGet() == 2) {
+          winner.completeExceptionally(error);
+        }
+      });
+    }
+    var response = awaitResponse(winner, List.of(first, second));
+    if (second.isDone() && !second.isCompletedExceptionally() && second.join() == response) {
+      recorder.hedgeWon(hedge);
+    }
+    return response;
+  }
+
+  private static HttpResponse<InputStream> awaitResponse(CompletableFuture<HttpResponse<InputStream>> future, List<CompletableFuture<HttpResponse<InputStream>>> attempts)
+    throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      throw asIOException(e.getCause());
     } finally {
-      if (response != null) {
-        LOG.debug("<-- {} {} ({}ms)", response.statusCode(), response.uri(), Duration.between(start, Instant.now()).toMillis());
+      // Cancel the loser, or all attempts if interrupted. Cancelling a completed attempt has no effect.
+      attempts.forEach(attempt -> attempt.cancel(true));
+    }
+  }
+
+  private static IOException writeFailureOr(HttpResponse.BodyHandler<InputStream> bodyHandler, IOException e) {
+    if (bodyHandler instanceof FileBodyHandler) {
+      var writeFailure = ((FileBodyHandler) bodyHandler).getWriteFailure();
+      if (writeFailure != null) {
+        return writeFailure;
       }
     }
+    return e;
+  }
+
+  private static IOException asIOException(Throwable cause) {
+    if (cause instanceof CompletionException && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+  }
+
+  private void waitBeforeRetry(HttpTimingRecorder recorder, HttpRequest request, String reason, int retryNumber, Duration delay) throws InterruptedException {
+    LOG.warn("{} {} failed with {}, retrying in {}ms ({}/{})", request.method(), request.uri(), reason, delay.toMillis(), retryNumber, retryPolicy.getMaxRetries());
+    recorder.retried();
+    Thread.sleep(delay.toMillis());
+  }
+
+  private static void closeQuietly(HttpResponse<InputStream> response) {
+    try (InputStream body = response.body()) {
+      // Only release the connection
+    } catch (IOException e) {
+      // Ignore
+    }
+  }
+
+  /**
+   * Wrap the response body to decompress it according to the {@code Content-Encoding} header. The JDK HTTP client doesn't do it.
+   */
+  private static InputStream decodedBody(HttpResponse<InputStream> response) throws IOException {
+    return decode(response, response.body());
+  }
+
+  private static InputStream decode(HttpResponse<InputStream> response, InputStream body) throws IOException {
+    String encoding = response.headers().firstValue("Content-Encoding").map(e -> e.trim().toLowerCase(Locale.ROOT)).orElse("identity");
+    switch (encoding) {
+      case "gzip":
+      case "x-gzip":
+        return new GZIPInputStream(body);
+      case "deflate":
+        return new InflaterInputStream(body);
+      default:
+        return body;
+    }
   }
 
   private static Optional<String> tryReadBodyQuietly(HttpResponse<InputStream> response) {
     try (InputStream body = response.body()) {
       if (body != null) {
-        return Optional.of(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        return Optional.of(new String(decode(response, body).readAllBytes(), StandardCharsets.UTF_8));
       }
     } catch (IOException e) {
       // Ignore
@@ -207,11 +556,62 @@ public class ScannerHttpClient {
       statusCode == 307 || statusCode == 308;
   }
 
+  private static boolean isPermanentRedirect(int statusCode) {
+    return statusCode == 301 || statusCode == 308;
+  }
+
   private interface ResponseHandler<G> {
     G apply(HttpResponse<InputStream> response) throws IOException;
   }
 
-  private HttpRequest prepareRequest(String url, @Nullable String acceptHeader, boolean authentication) {
+  @FunctionalInterface
+  public interface JsonResponseHandler<T> {
+    T handle(JsonReader reader) throws IOException;
+  }
+
+  /**
+   * Fail instead of buffering an unexpectedly large response, for example an error page sent by a misconfigured proxy.
+   */
+  private static class SizeLimitedInputStream extends FilterInputStream {
+    private final long maxSize;
+    private long count;
+
+    SizeLimitedInputStream(InputStream in, long maxSize) {
+      super(in);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count(n);
+      }
+      return n;
+    }
+
+    private void count(int n) throws IOException {
+      count += n;
+      if (count > maxSize) {
+        throw new IOException("Response is larger than " + maxSize + " bytes");
+      }
+    }
+  }
+
+  private HttpRequest prepareRequest(String url, @Nullable String acceptHeader, boolean compression, boolean authentication) {
+    return prepareRequestBuilder(url, acceptHeader, compression, authentication).build();
+  }
+
+  private HttpRequest.Builder prepareRequestBuilder(String url, @Nullable String acceptHeader, boolean compression, boolean authentication) {
     var timeout = httpConfig.getResponseTimeout().isZero() ? httpConfig.getSocketTimeout() : httpConfig.getResponseTimeout();
 
     var requestBuilder = HttpRequest.newBuilder()
@@ -224,6 +624,10 @@ public class ScannerHttpClient {
       requestBuilder.header("Accept", acceptHeader);
     }
 
+    if (compression) {
+      requestBuilder.header("Accept-Encoding", "gzip, deflate");
+    }
+
     // Extra headers are sent on every request (authenticated or not), to support corporate
     // proxies or SSO systems that require a specific header on all outbound traffic.
     httpConfig.getExtraHeaders().forEach(requestBuilder::header);
@@ -248,6 +652,6 @@ public class ScannerHttpClient {
       requestBuilder.header("Proxy-Authorization", "Basic " + encodedProxyCredentials);
     }
 
-    return requestBuilder.build();
+    return requestBuilder;
   }
 }
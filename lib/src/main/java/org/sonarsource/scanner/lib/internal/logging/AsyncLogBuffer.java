@@ -0,0 +1,267 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.sonarsource.scanner.lib.LogEvent;
+import org.sonarsource.scanner.lib.LogSink;
+import org.sonarsource.scanner.lib.internal.util.IoThreads;
+
+/**
+ * Bounded ring buffer between the thread reading the engine logs and a {@link LogSink}, which is called in batches from a dedicated
+ * thread. When the buffer is full, the {@link OverflowPolicy} decides whether the reader waits or the event is dropped.
+ * <p>
+ * If the sink throws an {@link Error}, the sink thread stops, and the pending and next events are dropped, so that the analysis is
+ * not blocked forever.
+ */
+public class AsyncLogBuffer implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncLogBuffer.class);
+
+  static final int MAX_BATCH_SIZE = 256;
+
+  public enum OverflowPolicy {
+    /**
+     * Wait until there is room in the buffer: no log is lost
+     */
+    BLOCK,
+    /**
+     * DEBUG and TRACE logs are dropped once the buffer is three quarters full, other levels wait until there is room
+     */
+    DROP_DEBUG_FIRST;
+
+    static OverflowPolicy parse(String value, String propKey) {
+      try {
+        return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(propKey + " must be one of " + Stream.of(values()).map(Enum::name).collect(Collectors.joining(", ")) + ": " + value, e);
+      }
+    }
+  }
+
+  private final LogSink sink;
+  private final OverflowPolicy policy;
+  private final LogEvent[] ring;
+  private final int debugLimit;
+  private final long[] dropped = new long[Level.values().length];
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final Condition drained = lock.newCondition();
+  private final Thread thread;
+  private int head;
+  private int size;
+  private boolean sinking;
+  private boolean closed;
+  private boolean sinkFailed;
+  private boolean sinkStopped;
+
+  public AsyncLogBuffer(LogSink sink, int capacity, OverflowPolicy policy) {
+    this(sink, capacity, policy, IoThreads.platform());
+  }
+
+  public AsyncLogBuffer(LogSink sink, int capacity, OverflowPolicy policy, IoThreads ioThreads) {
+    this.sink = sink;
+    this.policy = policy;
+    this.ring = new LogEvent[capacity];
+    this.debugLimit = capacity - Math.max(1, capacity / 4);
+    this.thread = ioThreads.newThread("sonar-scanner-log-sink", this::run);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void offer(LogEvent event) {
+    lock.lock();
+    try {
+      if (closed || (policy == OverflowPolicy.DROP_DEBUG_FIRST && isDebugOrTrace(event.getLevel()) && size >= debugLimit)) {
+        dropped[event.getLevel().ordinal()]++;
+        return;
+      }
+      while (size == ring.length && !sinkStopped) {
+        notFull.awaitUninterruptibly();
+      }
+      if (sinkStopped) {
+        dropped[event.getLevel().ordinal()]++;
+        return;
+      }
+      ring[(head + size) % ring.length] = event;
+      size++;
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait until all the events offered so far have been given to the sink
+   */
+  public void flush() {
+    lock.lock();
+    try {
+      while ((size > 0 || sinking) && !sinkStopped) {
+        drained.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int size() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long droppedCount() {
+    lock.lock();
+    try {
+      long count = 0;
+      for (long d : dropped) {
+        count += d;
+      }
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Flush the events, stop the sink thread and report the dropped events
+   */
+  @Override
+  public void close() {
+    flush();
+    lock.lock();
+    try {
+      closed = true;
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    reportDropped();
+  }
+
+  private void run() {
+    while (true) {
+      List<LogEvent> batch;
+      lock.lock();
+      try {
+        while (size == 0 && !closed) {
+          notEmpty.awaitUninterruptibly();
+        }
+        if (size == 0) {
+          return;
+        }
+        batch = new ArrayList<>(Math.min(size, MAX_BATCH_SIZE));
+        while (size > 0 && batch.size() < MAX_BATCH_SIZE) {
+          batch.add(ring[head]);
+          ring[head] = null;
+          head = (head + 1) % ring.length;
+          size--;
+        }
+        sinking = true;
+        notFull.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      boolean sinkAlive = sink(batch);
+      lock.lock();
+      try {
+        sinking = false;
+        if (!sinkAlive) {
+          stopSinking(batch);
+          return;
+        }
+        if (size == 0) {
+          drained.signalAll();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * @return false if the sink threw an {@link Error}, after which it is not called anymore
+   */
+  private boolean sink(List<LogEvent> batch) {
+    try {
+      sink.log(batch);
+    } catch (RuntimeException e) {
+      // Don't flood the logs if the sink is broken
+      if (!sinkFailed) {
+        sinkFailed = true;
+        LOG.warn("Failed to write the scanner engine logs", e);
+      }
+    } catch (Throwable t) {
+      LOG.error("Failed to write the scanner engine logs, the next ones will be dropped", t);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Drop the given batch and the pending events, and wake up the threads waiting for the sink. Called with the lock held.
+   */
+  private void stopSinking(List<LogEvent> batch) {
+    sinkStopped = true;
+    batch.forEach(event -> dropped[event.getLevel().ordinal()]++);
+    while (size > 0) {
+      dropped[ring[head].getLevel().ordinal()]++;
+      ring[head] = null;
+      head = (head + 1) % ring.length;
+      size--;
+    }
+    notFull.signalAll();
+    drained.signalAll();
+  }
+
+  private void reportDropped() {
+    long count = droppedCount();
+    if (count > 0) {
+      var perLevel = Stream.of(Level.values())
+        .filter(level -> dropped[level.ordinal()] > 0)
+        .map(level -> level + ": " + dropped[level.ordinal()])
+        .collect(Collectors.joining(", "));
+      LOG.warn("{} scanner engine log(s) dropped because logging could not keep up ({})", count, perLevel);
+    }
+  }
+
+  private static boolean isDebugOrTrace(Level level) {
+    return level == Level.DEBUG || level == Level.TRACE;
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.logging;
+
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.sonarsource.scanner.lib.LogSink;
+import org.sonarsource.scanner.lib.internal.util.IoThreads;
+
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_LOG_BUFFER_SIZE;
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_LOG_OVERFLOW_POLICY;
+
+/**
+ * Where and how the logs of the scanner engine are written
+ */
+public class EngineLogging {
+
+  static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  @Nullable
+  private final LogSink customSink;
+  private final int bufferSize;
+  private final AsyncLogBuffer.OverflowPolicy overflowPolicy;
+  private final IoThreads ioThreads;
+
+  EngineLogging(@Nullable LogSink customSink, int bufferSize, AsyncLogBuffer.OverflowPolicy overflowPolicy, IoThreads ioThreads) {
+    this.customSink = customSink;
+    this.bufferSize = bufferSize;
+    this.overflowPolicy = overflowPolicy;
+    this.ioThreads = ioThreads;
+  }
+
+  public static EngineLogging defaults() {
+    return new EngineLogging(null, DEFAULT_BUFFER_SIZE, AsyncLogBuffer.OverflowPolicy.BLOCK, IoThreads.platform());
+  }
+
+  public static EngineLogging from(Map<String, String> properties, @Nullable LogSink customSink) {
+    int bufferSize = DEFAULT_BUFFER_SIZE;
+    var bufferSizeValue = properties.get(SONAR_SCANNER_LOG_BUFFER_SIZE);
+    if (bufferSizeValue != null) {
+      try {
+        bufferSize = Integer.parseInt(bufferSizeValue.trim());
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(SONAR_SCANNER_LOG_BUFFER_SIZE + " is not a valid integer: " + bufferSizeValue, e);
+      }
+      if (bufferSize < 1) {
+        throw new IllegalArgumentException(SONAR_SCANNER_LOG_BUFFER_SIZE + " must be positive: " + bufferSize);
+      }
+    }
+    var policyValue = properties.get(SONAR_SCANNER_LOG_OVERFLOW_POLICY);
+    var policy = policyValue == null ? AsyncLogBuffer.OverflowPolicy.BLOCK : AsyncLogBuffer.OverflowPolicy.parse(policyValue, SONAR_SCANNER_LOG_OVERFLOW_POLICY);
+    return new EngineLogging(customSink, bufferSize, policy, IoThreads.fromProperties(properties));
+  }
+
+  /**
+   * When logs go to SLF4J, the engine doesn't need to produce the logs that SLF4J would discard
+   */
+  public boolean hasCustomSink() {
+    return customSink != null;
+  }
+
+  /**
+   * @param defaultLogger where to write the logs when there is no custom sink
+   */
+  public AsyncLogBuffer open(Logger defaultLogger) {
+    return new AsyncLogBuffer(customSink != null ? customSink : new Slf4jLogSink(defaultLogger), bufferSize, overflowPolicy, ioThreads);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.logging;
+
+import java.util.List;
+import org.slf4j.Logger;
+import org.sonarsource.scanner.lib.LogEvent;
+import org.sonarsource.scanner.lib.LogSink;
+
+/**
+ * Default sink, writing the engine logs to SLF4J
+ */
+public class Slf4jLogSink implements LogSink {
+
+  private final Logger logger;
+
+  public Slf4jLogSink(Logger logger) {
+    this.logger = logger;
+  }
+
+  @Override
+  public void log(List<LogEvent> events) {
+    for (LogEvent event : events) {
+      log(event);
+    }
+  }
+
+  private void log(LogEvent event) {
+    var msg = text(event);
+    switch (event.getLevel()) {
+      case ERROR:
+        logger.error(msg);
+        break;
+      case WARN:
+        logger.warn(msg);
+        break;
+      case DEBUG:
+        logger.debug(msg);
+        break;
+      case TRACE:
+        logger.trace(msg);
+        break;
+      case INFO:
+      default:
+        logger.info(msg);
+    }
+  }
+
+  private static String text(LogEvent event) {
+    var stacktrace = event.getStacktrace();
+    if (stacktrace == null) {
+      return event.getMessage();
+    }
+    return event.getMessage().isEmpty() ? stacktrace : (event.getMessage() + "\n" + stacktrace);
+  }
+}
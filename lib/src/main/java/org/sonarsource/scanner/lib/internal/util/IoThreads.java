@@ -0,0 +1,137 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.util;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.sonarsource.scanner.lib.ScannerProperties.SONAR_SCANNER_USE_VIRTUAL_THREADS;
+
+/**
+ * Creates the threads used for I/O plumbing (process stream gobbling, HTTP client callbacks, parallel bootstrap tasks).
+ * When virtual threads are requested and the runtime supports them (Java 21+), they are used. Otherwise, we fall back to
+ * platform threads, which is the only option on Java 11.
+ * Virtual threads are looked up by reflection, since the library is compiled for Java 11.
+ * The owner closes it once the HTTP client is no longer used, which shuts down the executor given to the client.
+ */
+public class IoThreads implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IoThreads.class);
+
+  private static final IoThreads PLATFORM = new IoThreads(null);
+
+  @Nullable
+  private final ThreadFactory virtualThreadFactory;
+  @Nullable
+  private ExecutorService httpClientExecutor;
+
+  private IoThreads(@Nullable ThreadFactory virtualThreadFactory) {
+    this.virtualThreadFactory = virtualThreadFactory;
+  }
+
+  public static IoThreads platform() {
+    return PLATFORM;
+  }
+
+  public static IoThreads fromProperties(Map<String, String> properties) {
+    return create(Boolean.parseBoolean(StringUtils.defaultIfBlank(properties.get(SONAR_SCANNER_USE_VIRTUAL_THREADS), "false")));
+  }
+
+  public static IoThreads create(boolean preferVirtualThreads) {
+    if (!preferVirtualThreads) {
+      return PLATFORM;
+    }
+    var factory = lookupVirtualThreadFactory();
+    if (factory == null) {
+      LOG.debug("Virtual threads are not supported by this runtime, falling back to platform threads");
+      return PLATFORM;
+    }
+    return new IoThreads(factory);
+  }
+
+  public boolean usesVirtualThreads() {
+    return virtualThreadFactory != null;
+  }
+
+  /**
+   * Create a new, unstarted, thread.
+   */
+  public Thread newThread(String name, Runnable task) {
+    if (virtualThreadFactory != null) {
+      var thread = virtualThreadFactory.newThread(task);
+      thread.setName(name);
+      return thread;
+    }
+    return new Thread(task, name);
+  }
+
+  /**
+   * Executor to be given to the JDK {@link java.net.http.HttpClient}. Empty when platform threads are used, so that the
+   * client keeps its default cached thread pool. The executor is created on first call and shared by all the clients.
+   */
+  public synchronized Optional<ExecutorService> httpClientExecutor() {
+    if (virtualThreadFactory == null) {
+      return Optional.empty();
+    }
+    if (httpClientExecutor == null) {
+      httpClientExecutor = newThreadPerTaskExecutor(virtualThreadFactory);
+    }
+    return Optional.of(httpClientExecutor);
+  }
+
+  @Override
+  public synchronized void close() {
+    if (httpClientExecutor != null) {
+      httpClientExecutor.shutdown();
+      httpClientExecutor = null;
+    }
+  }
+
+  @CheckForNull
+  private static ThreadFactory lookupVirtualThreadFactory() {
+    try {
+      Method ofVirtual = Thread.class.getMethod("ofVirtual");
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = ofVirtual.invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "sonar-scanner-io-", 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Java < 21, or preview feature not enabled on Java 19/20
+      return null;
+    }
+  }
+
+  private static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(threadFactory);
+    }
+  }
+}
@@ -24,7 +24,10 @@ import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
 
 public class Utils {
 
@@ -40,6 +43,42 @@ public class Utils {
     }
   }
 
+  /**
+   * Parse the value of a duration property, either in the ISO-8601 format (for example PT1M30S), or as a number of seconds. All the
+   * duration properties of the scanner use this syntax.
+   */
+  public static Duration parseDurationProperty(String propValue, String propKey) {
+    try {
+      return Duration.parse(propValue);
+    } catch (DateTimeParseException e) {
+      try {
+        return Duration.ofSeconds(Integer.parseInt(propValue));
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException(propKey + " is not a valid integer: " + propValue, nfe);
+      }
+    }
+  }
+
+  /**
+   * Write the content to a temporary file next to the given file, then move it over the given file atomically, so that concurrent
+   * scanners never read a partially written file. The temporary file is deleted if anything fails.
+   */
+  public static void writeAtomically(Path file, ContentWriter writer) throws IOException {
+    Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      writer.writeTo(tmp);
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      deleteQuietly(tmp);
+      throw e;
+    }
+  }
+
+  @FunctionalInterface
+  public interface ContentWriter {
+    void writeTo(Path file) throws IOException;
+  }
+
   private static class DeleteQuietlyFileVisitor extends SimpleFileVisitor<Path> {
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
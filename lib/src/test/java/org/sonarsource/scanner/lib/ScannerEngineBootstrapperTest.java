@@ -64,7 +64,9 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sonarsource.scanner.lib.ScannerEngineBootstrapper.SQ_VERSION_NEW_BOOTSTRAPPING;
@@ -141,6 +143,22 @@ class ScannerEngineBootstrapperTest {
     }
   }
 
+  @Test
+  void should_register_http_timing_listeners_only_while_bootstrapping() throws Exception {
+    HttpTimingListener listener = timing -> {
+    };
+    when(scannerHttpClient.callRestApi("/analysis/version")).thenReturn(SQ_VERSION_NEW_BOOTSTRAPPING);
+    try (var bootstrapResult = underTest.setBootstrapProperty(ScannerProperties.HOST_URL, "http://localhost:1234/")
+      .addHttpTimingListener(listener)
+      .bootstrap()) {
+      var inOrder = inOrder(scannerHttpClient);
+      inOrder.verify(scannerHttpClient).addTimingListener(listener);
+      inOrder.verify(scannerHttpClient).callRestApi("/analysis/version");
+      inOrder.verify(scannerHttpClient).removeTimingListener(listener);
+      verify(scannerHttpClient, times(2)).removeTimingListener(any());
+    }
+  }
+
   @Test
   void should_use_new_bootstrapping_with_sonarqube_10_6() throws Exception {
     when(scannerHttpClient.callRestApi("/analysis/version")).thenReturn(SQ_VERSION_NEW_BOOTSTRAPPING);
@@ -182,7 +200,7 @@ class ScannerEngineBootstrapperTest {
   @Test
   void should_issue_deprecation_warning_for_sonar_login_property_sonarqube_10_0() throws Exception {
     IsolatedLauncherFactory launcherFactory = mock(IsolatedLauncherFactory.class);
-    when(launcherFactory.createLauncher(eq(scannerHttpClient), any(DownloadCache.class)))
+    when(launcherFactory.createLauncher(eq(scannerHttpClient), any(DownloadCache.class), anyMap()))
       .thenReturn(mock(IsolatedLauncherFactory.IsolatedLauncherAndClassloader.class));
 
     ScannerEngineBootstrapper bootstrapper = new ScannerEngineBootstrapper("Gradle", "3.1", system, scannerHttpClient,
@@ -192,7 +210,7 @@ class ScannerEngineBootstrapperTest {
 
     try (var bootstrapResult = bootstrapper.setBootstrapProperty(ScannerProperties.HOST_URL, "http://localhost").setBootstrapProperty(ScannerProperties.SONAR_LOGIN,
       "mockTokenValue").bootstrap()) {
-      verify(launcherFactory).createLauncher(eq(scannerHttpClient), any(DownloadCache.class));
+      verify(launcherFactory).createLauncher(eq(scannerHttpClient), any(DownloadCache.class), anyMap());
       assertThat(bootstrapResult.getEngineFacade().isSonarQubeCloud()).isFalse();
       assertThat(logTester.logs(Level.WARN)).contains("Use of 'sonar.login' property has been deprecated in favor of 'sonar.token' (or the env variable alternative " +
         "'SONAR_TOKEN'). Please use the latter when passing a token.");
@@ -216,7 +234,7 @@ class ScannerEngineBootstrapperTest {
   @Test
   void should_use_old_bootstrapping_with_sonarqube_9_9() throws Exception {
     IsolatedLauncherFactory launcherFactory = mock(IsolatedLauncherFactory.class);
-    when(launcherFactory.createLauncher(eq(scannerHttpClient), any(DownloadCache.class)))
+    when(launcherFactory.createLauncher(eq(scannerHttpClient), any(DownloadCache.class), anyMap()))
       .thenReturn(mock(IsolatedLauncherFactory.IsolatedLauncherAndClassloader.class));
 
     ScannerEngineBootstrapper bootstrapper = new ScannerEngineBootstrapper("Gradle", "3.1", system, scannerHttpClient,
@@ -225,7 +243,7 @@ class ScannerEngineBootstrapperTest {
     when(scannerHttpClient.callWebApi("/api/server/version")).thenReturn("9.9");
 
     try (var bootstrapResult = bootstrapper.setBootstrapProperty(ScannerProperties.HOST_URL, "http://myserver").bootstrap()) {
-      verify(launcherFactory).createLauncher(eq(scannerHttpClient), any(DownloadCache.class));
+      verify(launcherFactory).createLauncher(eq(scannerHttpClient), any(DownloadCache.class), anyMap());
       assertThat(bootstrapResult.getEngineFacade().isSonarQubeCloud()).isFalse();
       assertThat(bootstrapResult.getEngineFacade().getServerVersion()).isEqualTo("9.9");
       verifySonarQubeServerTypeLogged("9.9");
@@ -235,7 +253,7 @@ class ScannerEngineBootstrapperTest {
   @Test
   void should_use_old_bootstrapping_with_sonarqube_10_5() throws Exception {
     IsolatedLauncherFactory launcherFactory = mock(IsolatedLauncherFactory.class);
-    when(launcherFactory.createLauncher(eq(scannerHttpClient), any(DownloadCache.class)))
+    when(launcherFactory.createLauncher(eq(scannerHttpClient), any(DownloadCache.class), anyMap()))
       .thenReturn(mock(IsolatedLauncherFactory.IsolatedLauncherAndClassloader.class));
 
     ScannerEngineBootstrapper bootstrapper = new ScannerEngineBootstrapper("Gradle", "3.1", system, scannerHttpClient,
@@ -244,7 +262,7 @@ class ScannerEngineBootstrapperTest {
     when(scannerHttpClient.callWebApi("/api/server/version")).thenReturn("10.5");
 
     try (var bootstrapResult = bootstrapper.setBootstrapProperty(ScannerProperties.HOST_URL, "http://myserver").bootstrap()) {
-      verify(launcherFactory).createLauncher(eq(scannerHttpClient), any(DownloadCache.class));
+      verify(launcherFactory).createLauncher(eq(scannerHttpClient), any(DownloadCache.class), anyMap());
       assertThat(bootstrapResult.getEngineFacade().isSonarQubeCloud()).isFalse();
       assertThat(bootstrapResult.getEngineFacade().getServerVersion()).isEqualTo("10.5");
       verifySonarQubeServerTypeLogged("10.5");
@@ -254,7 +272,7 @@ class ScannerEngineBootstrapperTest {
   @Test
   void should_show_help_on_proxy_auth_error() throws Exception {
     IsolatedLauncherFactory launcherFactory = mock(IsolatedLauncherFactory.class);
-    when(launcherFactory.createLauncher(eq(scannerHttpClient), any(DownloadCache.class)))
+    when(launcherFactory.createLauncher(eq(scannerHttpClient), any(DownloadCache.class), anyMap()))
       .thenReturn(mock(IsolatedLauncherFactory.IsolatedLauncherAndClassloader.class));
 
     ScannerEngineBootstrapper bootstrapper = new ScannerEngineBootstrapper("Gradle", "3.1", system, scannerHttpClient,
@@ -280,7 +298,7 @@ class ScannerEngineBootstrapperTest {
   @Test
   void should_preserve_both_exceptions_when_checking_version() throws Exception {
     IsolatedLauncherFactory launcherFactory = mock(IsolatedLauncherFactory.class);
-    when(launcherFactory.createLauncher(eq(scannerHttpClient), any(DownloadCache.class)))
+    when(launcherFactory.createLauncher(eq(scannerHttpClient), any(DownloadCache.class), anyMap()))
       .thenReturn(mock(IsolatedLauncherFactory.IsolatedLauncherAndClassloader.class));
 
     ScannerEngineBootstrapper bootstrapper = new ScannerEngineBootstrapper("Gradle", "3.1", system, scannerHttpClient,
@@ -308,7 +326,7 @@ class ScannerEngineBootstrapperTest {
   @CsvSource({"401,Unauthorized", "403,Forbidden"})
   void should_log_user_friendly_message_when_auth_error(int code, String message) throws Exception {
     IsolatedLauncherFactory launcherFactory = mock(IsolatedLauncherFactory.class);
-    when(launcherFactory.createLauncher(eq(scannerHttpClient), any(DownloadCache.class)))
+    when(launcherFactory.createLauncher(eq(scannerHttpClient), any(DownloadCache.class), anyMap()))
       .thenReturn(mock(IsolatedLauncherFactory.IsolatedLauncherAndClassloader.class));
 
     ScannerEngineBootstrapper bootstrapper = new ScannerEngineBootstrapper("Gradle", "3.1", system, scannerHttpClient,
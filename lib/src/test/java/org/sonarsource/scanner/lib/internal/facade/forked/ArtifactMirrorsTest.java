@@ -0,0 +1,163 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.forked;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.scanner.downloadcache.DownloadCache;
+import org.sonarsource.scanner.lib.ScannerProperties;
+import org.sonarsource.scanner.lib.internal.InternalProperties;
+import org.sonarsource.scanner.lib.internal.http.HttpConfig;
+import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
+import org.sonarsource.scanner.lib.internal.util.System2;
+import testutils.LogTester;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.head;
+import static com.github.tomakehurst.wiremock.client.WireMock.headRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArtifactMirrorsTest {
+
+  private static final String CONTENT = "jre content";
+
+  @RegisterExtension
+  private final LogTester logTester = new LogTester();
+
+  @RegisterExtension
+  static WireMockExtension mirror1 = WireMockExtension.newInstance()
+    .options(wireMockConfig().dynamicPort())
+    .build();
+
+  @RegisterExtension
+  static WireMockExtension mirror2 = WireMockExtension.newInstance()
+    .options(wireMockConfig().dynamicPort())
+    .build();
+
+  @TempDir
+  private Path sonarUserHome;
+
+  @TempDir
+  private Path tmp;
+
+  private final ScannerHttpClient connection = new ScannerHttpClient();
+  private DownloadCache downloadCache;
+  private String sha256;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Map<String, String> props = new HashMap<>();
+    props.put(InternalProperties.SCANNER_APP, "user");
+    props.put(InternalProperties.SCANNER_APP_VERSION, "agent");
+    connection.init(new HttpConfig(props, sonarUserHome, new System2()));
+    downloadCache = new DownloadCache(sonarUserHome.resolve("cache"));
+    sha256 = ArtifactMirrors.toHex(MessageDigest.getInstance("SHA-256").digest(CONTENT.getBytes(StandardCharsets.UTF_8)));
+    mirror1.stubFor(head(urlEqualTo("/")).willReturn(aResponse().withStatus(404)));
+    mirror2.stubFor(head(urlEqualTo("/")).willReturn(aResponse().withStatus(200)));
+  }
+
+  @Test
+  void should_be_empty_when_not_configured() {
+    var mirrors = ArtifactMirrors.from(Map.of(), downloadCache);
+
+    assertThat(mirrors.isEmpty()).isTrue();
+    assertThat(mirrors.download(connection, "jre.tar.gz", sha256, tmp.resolve("jre.tar.gz"), null, null)).isFalse();
+  }
+
+  @Test
+  void should_download_from_mirror_and_verify_sha256() throws Exception {
+    mirror1.stubFor(get("/jre.tar.gz").willReturn(aResponse().withBody(CONTENT)));
+    var mirrors = mirrors(mirror1.baseUrl() + "/");
+    var digest = MessageDigest.getInstance("SHA-256");
+
+    assertThat(mirrors.download(connection, "jre.tar.gz", sha256, tmp.resolve("jre.tar.gz"), digest, null)).isTrue();
+
+    assertThat(tmp.resolve("jre.tar.gz")).hasContent(CONTENT);
+    // The digest given by the caller can still be used
+    assertThat(ArtifactMirrors.toHex(digest.digest())).isEqualTo(sha256);
+    assertThat(sonarUserHome.resolve("cache").resolve(ArtifactMirrors.STATS_FILENAME)).exists();
+  }
+
+  @Test
+  void should_fail_over_to_next_mirror() {
+    mirror1.stubFor(get("/jre.tar.gz").willReturn(aResponse().withStatus(404)));
+    mirror2.stubFor(get("/jre.tar.gz").willReturn(aResponse().withBody(CONTENT)));
+    // Make sure the first mirror is the fastest to answer the probe
+    mirror2.stubFor(head(urlEqualTo("/")).willReturn(aResponse().withStatus(200).withFixedDelay(200)));
+    var mirrors = mirrors(mirror1.baseUrl() + "," + mirror2.baseUrl());
+
+    assertThat(mirrors.download(connection, "jre.tar.gz", sha256, tmp.resolve("jre.tar.gz"), null, null)).isTrue();
+    assertThat(tmp.resolve("jre.tar.gz")).hasContent(CONTENT);
+
+    // The failing mirror is tried last the next time
+    mirror1.resetRequests();
+    mirror2.resetRequests();
+    assertThat(mirrors(mirror1.baseUrl() + "," + mirror2.baseUrl()).download(connection, "jre.tar.gz", sha256, tmp.resolve("jre.tar.gz"), null, null)).isTrue();
+    mirror1.verify(0, getRequestedFor(urlEqualTo("/jre.tar.gz")));
+    // Statistics are fresh, no need to probe again
+    mirror2.verify(0, headRequestedFor(urlEqualTo("/")));
+  }
+
+  @Test
+  void should_skip_mirror_serving_unexpected_content() {
+    mirror1.stubFor(get("/jre.tar.gz").willReturn(aResponse().withBody("corrupted")));
+    var mirrors = mirrors(mirror1.baseUrl());
+
+    assertThat(mirrors.download(connection, "jre.tar.gz", sha256, tmp.resolve("jre.tar.gz"), null, null)).isFalse();
+    assertThat(logTester.logs()).anyMatch(l -> l.contains("served jre.tar.gz with an unexpected SHA-256"));
+  }
+
+  @Test
+  void should_ignore_corrupted_statistics() throws Exception {
+    Files.writeString(sonarUserHome.resolve("cache").resolve(ArtifactMirrors.STATS_FILENAME), "{not json");
+    mirror1.stubFor(get("/jre.tar.gz").willReturn(aResponse().withBody(CONTENT)));
+
+    assertThat(mirrors(mirror1.baseUrl()).download(connection, "jre.tar.gz", sha256, tmp.resolve("jre.tar.gz"), null, null)).isTrue();
+  }
+
+  @Test
+  void downloader_should_fall_back_to_server_when_no_mirror_works() {
+    mirror1.stubFor(get("/jre.tar.gz").willReturn(aResponse().withStatus(500)));
+    mirror2.stubFor(get("/jre.zip").willReturn(aResponse().withBody(CONTENT)));
+    var metadata = new JavaRunnerFactory.JreMetadata("jre.zip", sha256, mirror2.baseUrl() + "/jre.zip", "uuid", "bin/java");
+    var downloader = new JavaRunnerFactory.JreDownloader(connection, metadata, mirrors(mirror1.baseUrl()));
+
+    downloader.download("jre.zip", tmp.resolve("jre.zip"));
+
+    assertThat(tmp.resolve("jre.zip")).hasContent(CONTENT);
+  }
+
+  private ArtifactMirrors mirrors(String value) {
+    return ArtifactMirrors.from(Map.of(ScannerProperties.SONAR_SCANNER_ARTIFACT_MIRRORS, value), downloadCache);
+  }
+}
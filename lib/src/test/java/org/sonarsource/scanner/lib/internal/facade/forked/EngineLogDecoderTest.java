@@ -0,0 +1,101 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.forked;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EngineLogDecoderTest {
+
+  private final EngineLogDecoder underTest = new EngineLogDecoder();
+  private final List<String> logs = new ArrayList<>();
+  private final EngineLogDecoder.Handler handler = (level, message, stacktrace) -> logs.add(level + " " + message + (stacktrace == null ? "" : " | " + stacktrace));
+
+  @Test
+  void should_decode_logs() {
+    assertThat(underTest.decode("{\"level\":\"WARN\",\"message\":\"Some warning\"}", handler)).isTrue();
+    assertThat(underTest.decode(" { \"message\" : \"Some error\" , \"level\" : \"ERROR\", \"stacktrace\": \"at Foo\" } ", handler)).isTrue();
+    assertThat(underTest.decode("{\"level\":\"TRACE\",\"stacktrace\":\"at Foo\"}", handler)).isTrue();
+    assertThat(underTest.decode("{\"level\":\"DEBUG\",\"message\":null}", handler)).isTrue();
+    assertThat(underTest.decode("{\"level\":\"FATAL\",\"message\":\"Unknown level\"}", handler)).isTrue();
+
+    assertThat(logs).containsExactly(
+      "WARN Some warning",
+      "ERROR Some error | at Foo",
+      "TRACE null | at Foo",
+      "DEBUG null",
+      "INFO Unknown level");
+  }
+
+  @Test
+  void should_decode_pretty_printed_logs() {
+    assertThat(underTest.decode("{\n" +
+      "    \"level\": \"ERROR\",\n" +
+      "    \"message\": \"Some error message\",\n" +
+      "    \"stacktrace\": \"exception\"\n" +
+      "}", handler)).isTrue();
+    assertThat(underTest.decode("{\"level\": \"WARN\", \"message\": \"Some warn message\"}", handler)).isTrue();
+    assertThat(underTest.decode("{\"level\": \"DEBUG\", \"message\": \"Some debug message\"}", handler)).isTrue();
+    assertThat(underTest.decode("{\"level\": \"TRACE\", \"message\": \"Some trace message\"}", handler)).isTrue();
+    assertThat(underTest.decode("{\"level\": \"INFO\", \"message\": \"Some info message\"}", handler)).isTrue();
+    assertThat(underTest.decode("{\"level\": \"UNKNOWN-LEVEL\", \"message\": \"Some unknown level message\"}", handler)).isTrue();
+
+    assertThat(logs).containsExactly(
+      "ERROR Some error message | exception",
+      "WARN Some warn message",
+      "DEBUG Some debug message",
+      "TRACE Some trace message",
+      "INFO Some info message",
+      "INFO Some unknown level message");
+  }
+
+  @Test
+  void should_unescape_strings() {
+    assertThat(underTest.decode("{\"level\":\"INFO\",\"message\":\"a\\\"b\\\\c\\/d\\ne\\tf\\u00e9\\u12\"}", handler)).isTrue();
+    assertThat(underTest.decode("{\"level\":\"\\u0045RROR\",\"message\":\"escaped level\"}", handler)).isTrue();
+
+    assertThat(logs).containsExactly("INFO a\"b\\c/d\ne\tf\u00e9\\u12", "ERROR escaped level");
+  }
+
+  @Test
+  void should_ignore_other_fields() {
+    assertThat(underTest.decode("{\"timestamp\":123,\"level\":\"INFO\",\"mdc\":{\"a\":[1,\"}\"]},\"ok\":true,\"message\":\"msg\",\"x\":\"y\"}", handler)).isTrue();
+
+    assertThat(logs).containsExactly("INFO msg");
+  }
+
+  @Test
+  void should_reject_lines_that_are_not_logs() {
+    assertThat(underTest.decode("INFO: test", handler)).isFalse();
+    assertThat(underTest.decode("", handler)).isFalse();
+    assertThat(underTest.decode("{}", handler)).isFalse();
+    assertThat(underTest.decode("{\"message\":\"no level\"}", handler)).isFalse();
+    assertThat(underTest.decode("{\"level\":\"INFO\",\"message\":\"unterminated}", handler)).isFalse();
+    assertThat(underTest.decode("{\"level\":\"INFO\"} trailing", handler)).isFalse();
+    assertThat(underTest.decode("{\"level\":\"INFO\" \"message\":\"missing comma\"}", handler)).isFalse();
+    assertThat(underTest.decode("{\"level\":42}", handler)).isFalse();
+    assertThat(underTest.decode("{\"level\":\"INFO\",", handler)).isFalse();
+
+    assertThat(logs).isEmpty();
+  }
+}
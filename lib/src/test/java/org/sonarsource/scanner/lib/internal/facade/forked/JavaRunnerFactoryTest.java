@@ -43,6 +43,7 @@ import static java.util.Objects.requireNonNull;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.matches;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -52,6 +53,7 @@ import static org.sonarsource.scanner.lib.ScannerProperties.SCANNER_ARCH;
 import static org.sonarsource.scanner.lib.ScannerProperties.SCANNER_OS;
 import static org.sonarsource.scanner.lib.ScannerProperties.SKIP_JRE_PROVISIONING;
 import static org.sonarsource.scanner.lib.internal.facade.forked.JavaRunnerFactory.API_PATH_JRE;
+import static testutils.JsonResponses.jsonResponse;
 
 class JavaRunnerFactoryTest {
 
@@ -75,8 +77,8 @@ class JavaRunnerFactoryTest {
     var jre = temp.resolve("fake-jre.zip");
     FileUtils.copyFile(new File("src/test/resources/fake-jre.zip"), jre.toFile());
 
-    when(scannerHttpClient.callRestApi(matches(API_PATH_JRE + ".*"))).thenReturn(
-      IOUtils.toString(requireNonNull(getClass().getResourceAsStream("createRunner_jreProvisioning.json")), StandardCharsets.UTF_8));
+    when(scannerHttpClient.callRestApi(matches(API_PATH_JRE + ".*"), any())).then(jsonResponse(
+      IOUtils.toString(requireNonNull(getClass().getResourceAsStream("createRunner_jreProvisioning.json")), StandardCharsets.UTF_8)));
     when(downloadCache.getOrDownload(eq("fake-jre.zip"), eq("123456"), eq("SHA-256"), any(JavaRunnerFactory.JreDownloader.class))).thenReturn(new CachedFile(jre, true));
 
     JavaRunner runner = underTest.createRunner(scannerHttpClient, downloadCache, new HashMap<>());
@@ -87,7 +89,7 @@ class JavaRunnerFactoryTest {
 
   @Test
   void createRunner_jreProvisioning_noMatch_fallback_to_local() {
-    when(scannerHttpClient.callRestApi(matches(API_PATH_JRE + ".*"))).thenReturn("[]");
+    when(scannerHttpClient.callRestApi(matches(API_PATH_JRE + ".*"), any())).then(jsonResponse("[]"));
     Map<String, String> props = Map.of(SCANNER_OS, "linux", SCANNER_ARCH, "x64");
 
     JavaRunner runner = underTest.createRunner(scannerHttpClient, downloadCache, props);
@@ -155,7 +157,7 @@ class JavaRunnerFactoryTest {
     new JavaRunnerFactory.JreDownloader(scannerHttpClient,
       new JavaRunnerFactory.JreMetadata(filename, "123456", null, "uuid", "bin/java"))
       .download(filename, output);
-    verify(scannerHttpClient).downloadFromRestApi(API_PATH_JRE + "/uuid", output);
+    verify(scannerHttpClient).downloadFromRestApi(eq(API_PATH_JRE + "/uuid"), eq(output), isNull(), isNull());
   }
 
   @Test
@@ -165,6 +167,6 @@ class JavaRunnerFactoryTest {
     new JavaRunnerFactory.JreDownloader(scannerHttpClient,
       new JavaRunnerFactory.JreMetadata(filename, "123456", "https://localhost/jre.zip", "uuid", "bin/java"))
       .download(filename, output);
-    verify(scannerHttpClient).downloadFromExternalUrl("https://localhost/jre.zip", output);
+    verify(scannerHttpClient).downloadFromExternalUrl(eq("https://localhost/jre.zip"), eq(output), isNull(), isNull());
   }
 }
@@ -45,7 +45,7 @@ class JavaRunnerTest {
     JavaRunner runner = new JavaRunner(Paths.get("java"), JreCacheHit.DISABLED);
 
     // java --version is printing to stdout
-    assertThat(runner.execute(List.of("--version"), "test", stdOut::add)).isTrue();
+    assertThat(runner.execute(List.of("--version"), writer -> writer.write("test"), stdOut::add)).isTrue();
 
     assertThat(stdOut).isNotEmpty();
     assertThat(logTester.logs(Level.ERROR)).allMatch(s -> s.startsWith("[stderr] "));
@@ -66,7 +66,7 @@ class JavaRunnerTest {
   void execute_shouldLogProcessStdError_and_skip_writing_to_stdin_when_process_fails_early() {
     JavaRunner runner = new JavaRunner(Paths.get("java"), JreCacheHit.DISABLED);
     List<String> command = List.of("-xyz");
-    assertThat(runner.execute(command, "test", stdOut::add)).isFalse();
+    assertThat(runner.execute(command, writer -> writer.write("test"), stdOut::add)).isFalse();
 
     assertThat(logTester.logs(Level.ERROR)).anyMatch(s -> s.startsWith("[stderr] Unrecognized option: -xyz"));
   }
@@ -75,7 +75,7 @@ class JavaRunnerTest {
   void execute_whenInvalidRunner_shouldFail() {
     JavaRunner runner = new JavaRunner(Paths.get("invalid-runner"), JreCacheHit.DISABLED);
     List<String> command = List.of("--version");
-    assertThatThrownBy(() -> runner.execute(command, "test", stdOut::add))
+    assertThatThrownBy(() -> runner.execute(command, writer -> writer.write("test"), stdOut::add))
       .isInstanceOf(IllegalStateException.class)
       .hasMessageContaining("Failed to run the Java command");
   }
@@ -87,6 +87,30 @@ class JavaRunnerTest {
     assertThat(runner.execute(command, null, stdOut::add)).isFalse();
   }
 
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  void execute_shouldStreamInputToProcessStdin() {
+    JavaRunner runner = new JavaRunner(Paths.get("sh"), JreCacheHit.DISABLED);
+    List<String> command = List.of("-c", "cat");
+
+    assertThat(runner.execute(command, writer -> {
+      writer.write("first\n");
+      writer.write("second");
+    }, stdOut::add)).isTrue();
+    assertThat(stdOut).containsExactly("first", "second");
+    assertThat(runner.getLastResourceUsage()).isEmpty();
+  }
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  void execute_shouldMeasureResourcesWhenRequested() {
+    JavaRunner runner = new JavaRunner(Paths.get("sh"), JreCacheHit.DISABLED);
+    List<String> command = List.of("-c", "true");
+
+    assertThat(runner.execute(command, null, stdOut::add, true)).isTrue();
+    assertThat(runner.getLastResourceUsage()).hasValueSatisfying(usage -> assertThat(usage.getWallTime()).isPositive());
+  }
+
   @Test
   @EnabledOnOs(OS.WINDOWS)
   void execute_shouldLogUnsupportedClassVersionError_whenOsIsWindows() {
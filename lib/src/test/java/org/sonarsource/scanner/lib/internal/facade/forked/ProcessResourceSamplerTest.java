@@ -0,0 +1,145 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.forked;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProcessResourceSamplerTest {
+
+  @TempDir
+  private Path procRoot;
+
+  private final ProcessHandle process = mock(ProcessHandle.class);
+  private final ProcessHandle.Info info = mock(ProcessHandle.Info.class);
+  private Path procDir;
+
+  @BeforeEach
+  void prepare() throws IOException {
+    when(process.pid()).thenReturn(42L);
+    when(process.isAlive()).thenReturn(true);
+    when(process.info()).thenReturn(info);
+    when(info.totalCpuDuration()).thenReturn(Optional.of(Duration.ofMillis(1500)));
+    procDir = Files.createDirectory(procRoot.resolve("42"));
+  }
+
+  @Test
+  void should_read_cpu_memory_and_io_from_proc() throws Exception {
+    Files.writeString(procDir.resolve("stat"), "42 (java (engine)) S 1 42 42 0 -1 4194560 1000 0 0 0 120 30 0 0 20 0 50 0 100 0 0\n");
+    Files.writeString(procDir.resolve("status"), "Name:\tjava\nVmPeak:\t 4000000 kB\nVmHWM:\t  524288 kB\nVmRSS:\t  400000 kB\n");
+    Files.writeString(procDir.resolve("io"), "rchar: 100\nwchar: 200\nread_bytes: 4096\nwrite_bytes: 8192\ncancelled_write_bytes: 0\n");
+
+    var underTest = new ProcessResourceSampler(process, procRoot);
+    underTest.sample();
+    var usage = underTest.stop();
+
+    assertThat(usage.getWallTime()).isPositive();
+    assertThat(usage.getCpuTime()).contains(Duration.ofMillis(1500));
+    assertThat(usage.getUserCpuTime()).contains(Duration.ofMillis(1200));
+    assertThat(usage.getSystemCpuTime()).contains(Duration.ofMillis(300));
+    assertThat(usage.getPeakRssBytes()).hasValue(512L * 1024 * 1024);
+    assertThat(usage.getReadBytes()).hasValue(4096);
+    assertThat(usage.getWrittenBytes()).hasValue(8192);
+    assertThat(usage.toString()).endsWith(", CPU time 1.500s (user 1.200s, system 0.300s), peak RSS 512 MB, disk read 4 KB, disk written 8 KB");
+  }
+
+  @Test
+  void should_take_a_last_sample_when_stopped() throws Exception {
+    Files.writeString(procDir.resolve("status"), "VmHWM:\t  2048 kB\n");
+
+    // A short run may have ended before the first periodic sample
+    var usage = new ProcessResourceSampler(process, procRoot).stop();
+
+    assertThat(usage.getCpuTime()).contains(Duration.ofMillis(1500));
+    assertThat(usage.getPeakRssBytes()).hasValue(2048L * 1024);
+  }
+
+  @Test
+  void should_keep_last_sample_once_process_is_gone() throws Exception {
+    Files.writeString(procDir.resolve("status"), "VmHWM:\t  1024 kB\n");
+    var underTest = new ProcessResourceSampler(process, procRoot);
+    underTest.sample();
+
+    Files.delete(procDir.resolve("status"));
+    Files.delete(procDir);
+    when(info.totalCpuDuration()).thenReturn(Optional.empty());
+    underTest.sample();
+
+    var usage = underTest.stop();
+    assertThat(usage.getCpuTime()).contains(Duration.ofMillis(1500));
+    assertThat(usage.getPeakRssBytes()).hasValue(1024L * 1024);
+    assertThat(usage.getUserCpuTime()).isEmpty();
+    assertThat(usage.getReadBytes()).isEmpty();
+    assertThat(usage.toString()).doesNotContain("user", "disk").contains("peak RSS 1 MB");
+  }
+
+  @Test
+  void should_not_read_proc_once_process_has_exited() throws Exception {
+    Files.writeString(procDir.resolve("status"), "VmHWM:\t  1024 kB\n");
+    var underTest = new ProcessResourceSampler(process, procRoot);
+    underTest.sample();
+
+    // The pid has been reused by another process
+    Files.writeString(procDir.resolve("status"), "VmHWM:\t  4096 kB\n");
+    when(process.isAlive()).thenReturn(false);
+    var usage = underTest.stop();
+
+    assertThat(usage.getPeakRssBytes()).hasValue(1024L * 1024);
+  }
+
+  @Test
+  void should_only_report_portable_figures_without_proc() throws Exception {
+    Files.delete(procDir);
+
+    var underTest = new ProcessResourceSampler(process, procRoot);
+    underTest.sample();
+    var usage = underTest.stop();
+
+    assertThat(usage.getCpuTime()).contains(Duration.ofMillis(1500));
+    assertThat(usage.getSystemCpuTime()).isEmpty();
+    assertThat(usage.getPeakRssBytes()).isEmpty();
+    assertThat(usage.getWrittenBytes()).isEmpty();
+  }
+
+  @Test
+  void should_ignore_malformed_proc_files() throws Exception {
+    Files.writeString(procDir.resolve("stat"), "42 (java) S 1");
+    Files.writeString(procDir.resolve("status"), "VmHWM:\tunknown kB\n");
+    Files.writeString(procDir.resolve("io"), "read_bytes: 12\n");
+
+    var underTest = new ProcessResourceSampler(process, procRoot);
+    underTest.sample();
+    var usage = underTest.stop();
+
+    assertThat(usage.getUserCpuTime()).isEmpty();
+    assertThat(usage.getPeakRssBytes()).isEmpty();
+    assertThat(usage.getReadBytes()).isEmpty();
+  }
+}
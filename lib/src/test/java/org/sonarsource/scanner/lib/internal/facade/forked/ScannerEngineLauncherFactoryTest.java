@@ -22,6 +22,8 @@ package org.sonarsource.scanner.lib.internal.facade.forked;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
@@ -30,6 +32,7 @@ import org.slf4j.event.Level;
 import org.sonarsource.scanner.downloadcache.CachedFile;
 import org.sonarsource.scanner.downloadcache.HashMismatchException;
 import org.sonarsource.scanner.lib.internal.MessageException;
+import org.sonarsource.scanner.lib.internal.facade.inprocess.FakeScannerEngineMain;
 import org.sonarsource.scanner.downloadcache.DownloadCache;
 import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
 import testutils.LogTester;
@@ -39,11 +42,14 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.sonarsource.scanner.lib.internal.facade.forked.ScannerEngineLauncherFactory.API_PATH_ENGINE;
+import static testutils.JsonResponses.jsonResponse;
 
 class ScannerEngineLauncherFactoryTest {
 
@@ -59,7 +65,7 @@ class ScannerEngineLauncherFactoryTest {
 
   @Test
   void createLauncher_use_engine_provisioning_by_default() throws HashMismatchException {
-    when(scannerHttpClient.callRestApi(API_PATH_ENGINE)).thenReturn("{\"filename\":\"scanner-engine.jar\",\"sha256\":\"123456\"}");
+    when(scannerHttpClient.callRestApi(eq(API_PATH_ENGINE), any())).then(jsonResponse("{\"filename\":\"scanner-engine.jar\",\"sha256\":\"123456\"}"));
     when(javaRunnerFactory.createRunner(eq(scannerHttpClient), eq(downloadCache), anyMap())).thenReturn(mock(JavaRunner.class));
     CachedFile cachedEngine = mock(CachedFile.class);
     when(downloadCache.getOrDownload(eq("scanner-engine.jar"), eq("123456"), eq("SHA-256"), any(ScannerEngineLauncherFactory.ScannerEngineDownloader.class))).thenReturn(cachedEngine);
@@ -97,7 +103,7 @@ class ScannerEngineLauncherFactoryTest {
 
   @Test
   void createLauncher_fail_to_download_engine_metadata() {
-    when(scannerHttpClient.callRestApi(API_PATH_ENGINE)).thenThrow(new IllegalStateException("Some error"));
+    when(scannerHttpClient.callRestApi(eq(API_PATH_ENGINE), any())).thenThrow(new IllegalStateException("Some error"));
     when(javaRunnerFactory.createRunner(eq(scannerHttpClient), eq(downloadCache), anyMap())).thenReturn(mock(JavaRunner.class));
 
     ScannerEngineLauncherFactory factory = new ScannerEngineLauncherFactory(javaRunnerFactory);
@@ -110,6 +116,39 @@ class ScannerEngineLauncherFactoryTest {
     verifyNoInteractions(downloadCache);
   }
 
+  @Test
+  void createLauncher_run_engine_in_process_without_jre() throws Exception {
+    var jar = FakeScannerEngineMain.createJar(temp.resolve("engine.jar"), FakeScannerEngineMain.class.getName());
+
+    ScannerEngineLauncherFactory factory = new ScannerEngineLauncherFactory(javaRunnerFactory, 17);
+    try (var launcher = factory.createLauncher(scannerHttpClient, downloadCache,
+      Map.of("sonar.scanner.engineJarPath", jar.toString(), "sonar.scanner.engineInProcess", "true"))) {
+
+      assertThat(launcher.isInProcess()).isTrue();
+      assertThat(launcher.getJreCacheHit()).isEqualTo(JreCacheHit.DISABLED);
+      assertThat(launcher.execute(Map.of("sonar.projectKey", "foo"))).isTrue();
+    }
+    verify(javaRunnerFactory, never()).createRunner(any(), any(), anyMap());
+    assertThat(logTester.logs(Level.INFO)).contains("Running the Scanner Engine in the current JVM", "Context classloader is isolated: true");
+  }
+
+  @Test
+  void createLauncher_fork_engine_when_in_process_not_possible() throws Exception {
+    var jar = FakeScannerEngineMain.createJar(temp.resolve("engine.jar"), FakeScannerEngineMain.class.getName());
+    when(javaRunnerFactory.createRunner(eq(scannerHttpClient), eq(downloadCache), anyMap())).thenReturn(mock(JavaRunner.class));
+    Map<String, String> properties = Map.of("sonar.scanner.engineJarPath", jar.toString(), "sonar.scanner.engineInProcess", "true");
+
+    assertThat(new ScannerEngineLauncherFactory(javaRunnerFactory, 11).createLauncher(scannerHttpClient, downloadCache, properties).isInProcess()).isFalse();
+
+    var withJavaOpts = new HashMap<>(properties);
+    withJavaOpts.put("sonar.scanner.javaOpts", "-Xmx1g");
+    assertThat(new ScannerEngineLauncherFactory(javaRunnerFactory, 17).createLauncher(scannerHttpClient, downloadCache, withJavaOpts).isInProcess()).isFalse();
+
+    var noEntryPoint = FakeScannerEngineMain.createJar(temp.resolve("no-main.jar"), null);
+    var withoutEntryPoint = Map.of("sonar.scanner.engineJarPath", noEntryPoint.toString(), "sonar.scanner.engineInProcess", "true");
+    assertThat(new ScannerEngineLauncherFactory(javaRunnerFactory, 17).createLauncher(scannerHttpClient, downloadCache, withoutEntryPoint).isInProcess()).isFalse();
+  }
+
   @Test
   void scannerEngineDownloader_download() throws IOException {
     String filename = "scanner-engine.jar";
@@ -117,7 +156,19 @@ class ScannerEngineLauncherFactoryTest {
     new ScannerEngineLauncherFactory.ScannerEngineDownloader(scannerHttpClient,
       new ScannerEngineLauncherFactory.ScannerEngineMetadata(filename, "123456", null))
         .download(filename, output);
-    verify(scannerHttpClient).downloadFromRestApi(API_PATH_ENGINE, output);
+    verify(scannerHttpClient).downloadFromRestApi(eq(API_PATH_ENGINE), eq(output), isNull(), isNull());
+  }
+
+  @Test
+  void scannerEngineDownloader_download_should_hash_while_downloading() throws Exception {
+    String filename = "scanner-engine.jar";
+    var output = temp.resolve(filename);
+    var digest = MessageDigest.getInstance("SHA-256");
+    var hashed = new ScannerEngineLauncherFactory.ScannerEngineDownloader(scannerHttpClient,
+      new ScannerEngineLauncherFactory.ScannerEngineMetadata(filename, "123456", null))
+        .download(filename, output, digest);
+    assertThat(hashed).isTrue();
+    verify(scannerHttpClient).downloadFromRestApi(eq(API_PATH_ENGINE), eq(output), eq(digest), isNull());
   }
 
   @Test
@@ -127,6 +178,6 @@ class ScannerEngineLauncherFactoryTest {
     new ScannerEngineLauncherFactory.ScannerEngineDownloader(scannerHttpClient,
       new ScannerEngineLauncherFactory.ScannerEngineMetadata(filename, "123456", "https://localhost/scanner-engine.jar"))
         .download(filename, output);
-    verify(scannerHttpClient).downloadFromExternalUrl("https://localhost/scanner-engine.jar", output);
+    verify(scannerHttpClient).downloadFromExternalUrl(eq("https://localhost/scanner-engine.jar"), eq(output), isNull(), isNull());
   }
 }
@@ -19,24 +19,41 @@
  */
 package org.sonarsource.scanner.lib.internal.facade.forked;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.io.TempDir;
+import org.junitpioneer.jupiter.RestoreSystemProperties;
 import org.slf4j.event.Level;
 import org.sonarsource.scanner.downloadcache.CachedFile;
+import org.sonarsource.scanner.lib.AnalysisResourceUsage;
+import org.sonarsource.scanner.lib.LogEvent;
 import org.sonarsource.scanner.lib.ScannerProperties;
+import org.sonarsource.scanner.lib.internal.batch.LogOutput;
+import org.sonarsource.scanner.lib.internal.facade.inprocess.EmbeddedScannerEngine;
+import org.sonarsource.scanner.lib.internal.http.HttpClientFactory;
+import org.sonarsource.scanner.lib.internal.logging.EngineLogging;
 import org.sonarsource.scanner.lib.internal.util.Either;
 import testutils.LogTester;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class ScannerEngineLauncherTest {
 
@@ -61,8 +78,9 @@ class ScannerEngineLauncherTest {
 
     verify(javaRunner).execute(
       eq(List.of("-Xmx4g", "-Xms1g", "-Dorg.bouncycastle.pkcs12.ignore_useless_passwd=true", "-jar", scannerEngine.toAbsolutePath().toString())),
-      eq("{\"scannerProperties\":[{\"key\":\"sonar.host.url\",\"value\":\"http://localhost:9000\"},{\"key\":\"sonar.scanner.javaOpts\",\"value\":\"-Xmx4g -Xms1g\"}]}"),
-      any());
+      json("{\"scannerProperties\":[{\"key\":\"sonar.host.url\",\"value\":\"http://localhost:9000\"},{\"key\":\"sonar.scanner.javaOpts\",\"value\":\"-Xmx4g -Xms1g\"}]}"),
+      any(),
+      eq(true));
 
     assertThat(logTester.logs(Level.INFO)).containsOnly("SONAR_SCANNER_JAVA_OPTS=-Xmx4g -Xms1g");
   }
@@ -95,33 +113,151 @@ class ScannerEngineLauncherTest {
 
     verify(javaRunner).execute(
       eq(List.of("-Dorg.bouncycastle.pkcs12.ignore_useless_passwd=true", "-jar", scannerEngine.toAbsolutePath().toString())),
-      eq("{\"scannerProperties\":[{\"key\":\"sonar.myProp\",\"value\":\"\"}]}"),
-      any());
+      json("{\"scannerProperties\":[{\"key\":\"sonar.myProp\",\"value\":\"\"}]}"),
+      any(),
+      eq(true));
   }
 
   @Test
-  void tryParse_shouldParseLogMessages() {
-    ScannerEngineLauncher.tryParse("{\n" +
-      "    \"level\": \"ERROR\",\n" +
-      "    \"message\": \"Some error message\",\n" +
-      "    \"stacktrace\": \"exception\"\n" +
-      "}");
-    ScannerEngineLauncher.tryParse("{\"level\": \"WARN\", \"message\": \"Some warn message\"}");
-    ScannerEngineLauncher.tryParse("{\"level\": \"DEBUG\", \"message\": \"Some debug message\"}");
-    ScannerEngineLauncher.tryParse("{\"level\": \"TRACE\", \"message\": \"Some trace message\"}");
-    ScannerEngineLauncher.tryParse("{\"level\": \"INFO\", \"message\": \"Some info message\"}");
-    ScannerEngineLauncher.tryParse("{\"level\": \"UNKNOWN-LEVEL\", \"message\": \"Some unknown level message\"}");
-
-    assertThat(logTester.logs(Level.ERROR)).containsOnly("Some error message\nexception");
-    assertThat(logTester.logs(Level.WARN)).containsOnly("Some warn message");
-    assertThat(logTester.logs(Level.DEBUG)).containsOnly("Some debug message");
-    assertThat(logTester.logs(Level.TRACE)).containsOnly("Some trace message");
-    assertThat(logTester.logs(Level.INFO)).containsOnly("Some info message", "Some unknown level message");
+  void execute_should_log_and_keep_engine_resource_usage() {
+    var scannerEngine = temp.resolve("scanner-engine.jar");
+    var usage = new AnalysisResourceUsage(Duration.ofSeconds(12), Duration.ofSeconds(30), null, null, 1024L * 1024 * 1024, null, null);
+    when(javaRunner.execute(any(), any(), any(), eq(true))).thenReturn(true);
+    when(javaRunner.getLastResourceUsage()).thenReturn(Optional.of(usage));
+
+    ScannerEngineLauncher launcher = new ScannerEngineLauncher(javaRunner, Either.forLeft(new CachedFile(scannerEngine, true)));
+    assertThat(launcher.getLastResourceUsage()).isEmpty();
+    assertThat(launcher.execute(Map.of())).isTrue();
+
+    assertThat(launcher.getLastResourceUsage()).contains(usage);
+    assertThat(logTester.logs(Level.INFO)).containsOnly("Scanner Engine resource usage: wall time 12.000s, CPU time 30.000s, peak RSS 1 GB");
+  }
+
+  @Test
+  @RestoreSystemProperties
+  void execute_in_process_should_only_set_bouncy_castle_property_during_analysis() {
+    System.clearProperty(HttpClientFactory.BC_IGNORE_USELESS_PASSWD);
+    var embeddedEngine = mock(EmbeddedScannerEngine.class);
+    List<String> seenValues = new ArrayList<>();
+    when(embeddedEngine.execute(any(), any())).then(invocation -> {
+      seenValues.add(System.getProperty(HttpClientFactory.BC_IGNORE_USELESS_PASSWD));
+      return true;
+    });
+    ScannerEngineLauncher launcher = new ScannerEngineLauncher(embeddedEngine, Either.forLeft(new CachedFile(temp.resolve("scanner-engine.jar"), true)));
+
+    assertThat(launcher.execute(Map.of())).isTrue();
+    assertThat(System.getProperty(HttpClientFactory.BC_IGNORE_USELESS_PASSWD)).isNull();
+
+    // The value of the host is kept
+    System.setProperty(HttpClientFactory.BC_IGNORE_USELESS_PASSWD, "false");
+    assertThat(launcher.execute(Map.of())).isTrue();
+    assertThat(System.getProperty(HttpClientFactory.BC_IGNORE_USELESS_PASSWD)).isEqualTo("false");
+    assertThat(seenValues).containsExactly("true", "false");
+  }
+
+  @Test
+  void execute_should_lower_engine_log_level_to_host_level() {
+    logTester.setLevel(Level.INFO);
+    var scannerEngine = temp.resolve("scanner-engine.jar");
+
+    ScannerEngineLauncher launcher = new ScannerEngineLauncher(javaRunner, Either.forLeft(new CachedFile(scannerEngine, true)));
+    launcher.execute(Map.of("sonar.verbose", "true"));
+
+    verify(javaRunner).execute(
+      eq(List.of("-Dorg.bouncycastle.pkcs12.ignore_useless_passwd=true", "-Dsonar.log.level=INFO", "-jar", scannerEngine.toAbsolutePath().toString())),
+      json("{\"scannerProperties\":[{\"key\":\"sonar.log.level\",\"value\":\"INFO\"},{\"key\":\"sonar.verbose\",\"value\":\"false\"}]}"),
+      any(),
+      eq(true));
   }
 
   @Test
-  void tryParse_whenCannotParse_shouldLogInfo() {
-    ScannerEngineLauncher.tryParse("INFO: test");
+  void execute_should_log_engine_output_with_slf4j() {
+    var scannerEngine = temp.resolve("scanner-engine.jar");
+    when(javaRunner.execute(any(), any(), any(), eq(true))).then(invocation -> {
+      Consumer<String> stdout = invocation.getArgument(2);
+      stdout.accept("{\"level\":\"WARN\",\"message\":\"warning\"}");
+      stdout.accept("{\"level\":\"ERROR\",\"message\":\"error\",\"stacktrace\":\"exception\"}");
+      stdout.accept("INFO: test");
+      return true;
+    });
+
+    ScannerEngineLauncher launcher = new ScannerEngineLauncher(javaRunner, Either.forLeft(new CachedFile(scannerEngine, true)));
+    assertThat(launcher.execute(Map.of())).isTrue();
+
+    assertThat(logTester.logs(Level.WARN)).containsOnly("warning");
+    assertThat(logTester.logs(Level.ERROR)).containsOnly("error\nexception");
     assertThat(logTester.logs(Level.INFO)).containsOnly("[stdout] INFO: test");
   }
+
+  @Test
+  void execute_should_send_engine_logs_to_custom_sink() {
+    logTester.setLevel(Level.INFO);
+    var scannerEngine = temp.resolve("scanner-engine.jar");
+    when(javaRunner.execute(any(), any(), any(), eq(true))).then(invocation -> {
+      Consumer<String> stdout = invocation.getArgument(2);
+      stdout.accept("{\"level\":\"DEBUG\",\"message\":\"debug\"}");
+      stdout.accept("{\"level\":\"ERROR\",\"message\":\"error\",\"stacktrace\":\"at Foo\"}");
+      stdout.accept("not json");
+      return true;
+    });
+    List<LogEvent> events = new ArrayList<>();
+
+    ScannerEngineLauncher launcher = new ScannerEngineLauncher(javaRunner, Either.forLeft(new CachedFile(scannerEngine, true)));
+    assertThat(launcher.execute(Map.of("sonar.verbose", "true"), EngineLogging.from(Map.of(), events::addAll))).isTrue();
+
+    // All the logs are received when the analysis ends, and the engine log level is not lowered for a custom sink
+    assertThat(events).extracting(LogEvent::getLevel, LogEvent::getMessage, LogEvent::getStacktrace).containsExactly(
+      tuple(Level.DEBUG, "debug", null),
+      tuple(Level.ERROR, "error", "at Foo"),
+      tuple(Level.INFO, "[stdout] not json", null));
+    verify(javaRunner).execute(eq(List.of("-Dorg.bouncycastle.pkcs12.ignore_useless_passwd=true", "-jar", scannerEngine.toAbsolutePath().toString())), any(), any(), eq(true));
+    assertThat(logTester.logs()).isEmpty();
+  }
+
+  @Test
+  void lowerLogLevelToHost_should_never_raise_engine_log_level() {
+    assertThat(ScannerEngineLauncher.lowerLogLevelToHost(Map.of(), LogOutput.Level.TRACE)).isEmpty();
+    assertThat(ScannerEngineLauncher.lowerLogLevelToHost(Map.of(), LogOutput.Level.INFO)).isEmpty();
+    assertThat(ScannerEngineLauncher.lowerLogLevelToHost(Map.of("sonar.verbose", "true"), LogOutput.Level.DEBUG)).isEmpty();
+    assertThat(ScannerEngineLauncher.lowerLogLevelToHost(Map.of("sonar.log.level", "trace"), LogOutput.Level.DEBUG)).contains(LogOutput.Level.DEBUG);
+    assertThat(ScannerEngineLauncher.lowerLogLevelToHost(Map.of("sonar.log.level", "TRACE", "sonar.verbose", "true"), LogOutput.Level.INFO))
+      .contains(LogOutput.Level.INFO);
+    assertThat(ScannerEngineLauncher.lowerLogLevelToHost(Map.of("sonar.log.level", "VERBOSE"), LogOutput.Level.INFO)).isEmpty();
+  }
+
+  @Test
+  void hostLogLevel_should_follow_slf4j_level() {
+    assertThat(ScannerEngineLauncher.hostLogLevel()).isEqualTo(LogOutput.Level.TRACE);
+    logTester.setLevel(Level.DEBUG);
+    assertThat(ScannerEngineLauncher.hostLogLevel()).isEqualTo(LogOutput.Level.DEBUG);
+    logTester.setLevel(Level.WARN);
+    assertThat(ScannerEngineLauncher.hostLogLevel()).isEqualTo(LogOutput.Level.INFO);
+  }
+
+  @Test
+  void writeJsonProperties_should_stream_properties_sorted_by_key() throws IOException {
+    Map<String, String> properties = new HashMap<>();
+    properties.put("sonar.b", "with \"quotes\"\nand a new line");
+    properties.put("sonar.a", "é");
+
+    var writer = new StringWriter();
+    ScannerEngineLauncher.writeJsonProperties(properties, writer);
+
+    assertThat(writer).hasToString("{\"scannerProperties\":[{\"key\":\"sonar.a\",\"value\":\"é\"},"
+      + "{\"key\":\"sonar.b\",\"value\":\"with \\\"quotes\\\"\\nand a new line\"}]}");
+  }
+
+  private static JavaRunner.StdinWriter json(String expected) {
+    return argThat(input -> expected.equals(render(input)));
+  }
+
+  private static String render(JavaRunner.StdinWriter input) {
+    var writer = new StringWriter();
+    try {
+      input.writeTo(writer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return writer.toString();
+  }
 }
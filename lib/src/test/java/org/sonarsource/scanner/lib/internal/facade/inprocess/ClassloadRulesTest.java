@@ -102,4 +102,24 @@ class ClassloadRulesTest {
 
     assertThat(rules.canLoad("org.sonar.runner.batch.IsolatedLauncher")).isTrue();
   }
+
+  @Test
+  void should_give_consistent_decisions_when_memoized() {
+    maskRules.add("org.slf4j.LoggerFactory");
+    unmaskRules.add("org.slf4j.Logger");
+    maskRules.add("org.slf4j.");
+    unmaskRules.add("org.apache.");
+    maskRules.add("org.apache.ant.foo.");
+    rules = new ClassloadRules(maskRules, unmaskRules);
+
+    for (int i = 0; i < 2; i++) {
+      assertThat(rules.canLoad("org.slf4j.Logger")).isTrue();
+      assertThat(rules.canLoad("org.slf4j.LoggerFactory")).isFalse();
+      assertThat(rules.canLoad("org.slf4j.Marker")).isFalse();
+      assertThat(rules.canLoad("org.apache.ant.Project")).isTrue();
+      assertThat(rules.canLoad("org.apache.ant.foo.Bar")).isFalse();
+      assertThat(rules.canLoad("org.apache.ant.foobar.Bar")).isTrue();
+      assertThat(rules.canLoad("Foo")).isFalse();
+    }
+  }
 }
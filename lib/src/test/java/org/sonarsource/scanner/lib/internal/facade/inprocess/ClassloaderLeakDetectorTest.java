@@ -0,0 +1,86 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.inprocess;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.slf4j.event.Level;
+import testutils.LogTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClassloaderLeakDetectorTest {
+
+  @RegisterExtension
+  private final LogTester logTester = new LogTester();
+
+  private final ClassloaderLeakDetector underTest = new ClassloaderLeakDetector(3, Duration.ofMillis(10));
+
+  @Test
+  void should_report_collected_classloader() throws Exception {
+    logTester.setLevel(Level.DEBUG);
+    var tracked = underTest.track(new URLClassLoader(new URL[0], null));
+
+    assertThat(underTest.checkInBackground(tracked).get(10, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(logTester.logs(Level.DEBUG)).anyMatch(l -> l.startsWith("Scanner Engine classloader collected after"));
+  }
+
+  @Test
+  void should_report_leaked_classloader() throws Exception {
+    var classloader = new URLClassLoader(new URL[0], null);
+    var tracked = underTest.track(classloader);
+
+    assertThat(underTest.check(tracked)).isFalse();
+
+    assertThat(logTester.logs(Level.WARN)).singleElement().asString()
+      .contains("is still reachable after 3 GC(s)")
+      .contains("none found");
+    classloader.close();
+  }
+
+  @Test
+  void should_find_threads_holding_classloader() throws Exception {
+    var classloader = new URLClassLoader(new URL[0], null);
+    var child = new URLClassLoader(new URL[0], classloader);
+    var stop = new CountDownLatch(1);
+    var thread = new Thread(() -> {
+      try {
+        stop.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "leaking-thread");
+    thread.setContextClassLoader(child);
+    thread.start();
+    try {
+      assertThat(ClassloaderLeakDetector.findSuspects(classloader)).containsExactly("thread 'leaking-thread' has it as context classloader");
+      assertThat(ClassloaderLeakDetector.findSuspects(new URLClassLoader(new URL[0], null))).isEmpty();
+    } finally {
+      stop.countDown();
+      thread.join();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.inprocess;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddedScannerEngineTest {
+
+  @TempDir
+  private Path temp;
+
+  @Test
+  void should_run_engine_in_isolated_classloader() throws Exception {
+    var jar = FakeScannerEngineMain.createJar(temp.resolve("engine.jar"), FakeScannerEngineMain.class.getName());
+    List<String> stdout = new ArrayList<>();
+
+    try (var engine = EmbeddedScannerEngine.load(jar, true).orElseThrow()) {
+      assertThat(engine.execute("{\"key\":\"value\"}", stdout::add)).isTrue();
+      assertThat(engine.execute("{\"key\":\"exit\"}", stdout::add)).isFalse();
+    }
+
+    assertThat(stdout).containsExactly(
+      "{\"level\":\"INFO\",\"message\":\"Context classloader is isolated: true\"}",
+      "{\"level\":\"DEBUG\",\"message\":\"{'key':'value'}\"}",
+      "{\"level\":\"INFO\",\"message\":\"Context classloader is isolated: true\"}",
+      "{\"level\":\"DEBUG\",\"message\":\"{'key':'exit'}\"}");
+  }
+
+  @Test
+  void should_rethrow_engine_failure() throws Exception {
+    var jar = FakeScannerEngineMain.createJar(temp.resolve("engine.jar"), FakeScannerEngineMain.class.getName());
+    var contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+    try (var engine = EmbeddedScannerEngine.load(jar, true).orElseThrow()) {
+      assertThatThrownBy(() -> engine.execute("fail", line -> {
+      }))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessage("Analysis failed");
+    }
+    assertThat(Thread.currentThread().getContextClassLoader()).isSameAs(contextClassLoader);
+  }
+
+  @Test
+  void should_not_load_engine_without_entry_point() throws Exception {
+    assertThat(EmbeddedScannerEngine.load(FakeScannerEngineMain.createJar(temp.resolve("no-main.jar"), null), true)).isEmpty();
+    assertThat(EmbeddedScannerEngine.load(FakeScannerEngineMain.createJar(temp.resolve("unknown-main.jar"), "org.foo.Main"), true)).isEmpty();
+  }
+
+  @Test
+  void should_only_persist_jar_index_in_download_cache() throws Exception {
+    var userJar = FakeScannerEngineMain.createJar(temp.resolve("user-engine.jar"), FakeScannerEngineMain.class.getName());
+    var cachedJar = FakeScannerEngineMain.createJar(temp.resolve("cached-engine.jar"), FakeScannerEngineMain.class.getName());
+
+    EmbeddedScannerEngine.load(userJar, false).orElseThrow().close();
+    EmbeddedScannerEngine.load(cachedJar, true).orElseThrow().close();
+
+    assertThat(temp.resolve("user-engine.jar" + JarIndex.INDEX_SUFFIX)).doesNotExist();
+    assertThat(temp.resolve("cached-engine.jar" + JarIndex.INDEX_SUFFIX)).exists();
+  }
+}
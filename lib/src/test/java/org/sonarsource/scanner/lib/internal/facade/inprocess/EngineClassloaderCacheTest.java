@@ -0,0 +1,106 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.inprocess;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.scanner.lib.internal.batch.IsolatedLauncher;
+import org.sonarsource.scanner.lib.internal.facade.inprocess.IsolatedLauncherFactory.IsolatedLauncherAndClassloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class EngineClassloaderCacheTest {
+
+  private static final List<String> KEY = List.of("abc/sonar-scanner-engine.jar");
+  private static final Duration LONG_TIMEOUT = Duration.ofMinutes(10);
+
+  private final EngineClassloaderCache underTest = new EngineClassloaderCache();
+  private final AtomicInteger created = new AtomicInteger();
+
+  @Test
+  void key_should_contain_hash_directory_and_filename() {
+    assertThat(EngineClassloaderCache.keyOf(List.of(Paths.get("cache", "abc", "engine.jar"), Paths.get("plugin.jar"))))
+      .containsExactly("abc/engine.jar", "plugin.jar");
+  }
+
+  @Test
+  void should_reuse_classloader_for_same_jars() throws Exception {
+    var classloader = mock(AutoCloseable.class);
+
+    var first = underTest.acquire(KEY, LONG_TIMEOUT, false, () -> create(classloader));
+    var firstLauncher = first.getLauncher();
+    first.close();
+    var second = underTest.acquire(KEY, LONG_TIMEOUT, true, () -> create(classloader));
+
+    assertThat(created).hasValue(1);
+    assertThat(second.getLauncher()).isSameAs(firstLauncher);
+    assertThat(second.wasEngineCacheHit()).isTrue();
+    verify(classloader, never()).close();
+  }
+
+  @Test
+  void should_not_share_classloader_between_different_jars() {
+    var first = underTest.acquire(KEY, LONG_TIMEOUT, true, () -> create(mock(AutoCloseable.class)));
+    var second = underTest.acquire(List.of("def/sonar-scanner-engine.jar"), LONG_TIMEOUT, true, () -> create(mock(AutoCloseable.class)));
+
+    assertThat(created).hasValue(2);
+    assertThat(second.getLauncher()).isNotSameAs(first.getLauncher());
+    assertThat(underTest.size()).isEqualTo(2);
+  }
+
+  @Test
+  void should_close_classloader_once_idle() throws Exception {
+    var classloader = mock(AutoCloseable.class);
+
+    var launcher = underTest.acquire(KEY, Duration.ofMillis(10), true, () -> create(classloader));
+    launcher.close();
+
+    verify(classloader, timeout(5000)).close();
+    assertThat(underTest.size()).isZero();
+  }
+
+  @Test
+  void should_not_close_classloader_still_in_use() throws Exception {
+    var classloader = mock(AutoCloseable.class);
+
+    var first = underTest.acquire(KEY, Duration.ofMillis(10), true, () -> create(classloader));
+    var second = underTest.acquire(KEY, Duration.ofMillis(10), true, () -> create(classloader));
+    first.close();
+    // Releasing the same launcher twice must not release the one of the other analysis
+    first.close();
+    Thread.sleep(100);
+
+    verify(classloader, never()).close();
+    second.close();
+    verify(classloader, timeout(5000)).close();
+  }
+
+  private IsolatedLauncherAndClassloader create(AutoCloseable classloader) {
+    created.incrementAndGet();
+    return new IsolatedLauncherAndClassloader(mock(IsolatedLauncher.class), classloader, false);
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.inprocess;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Packaged in a jar by the tests to act as a Scanner Engine. It must only depend on the JDK, since the engine classloader doesn't see
+ * the classes of the tests.
+ */
+public class FakeScannerEngineMain {
+
+  public static void main(String[] args) throws IOException {
+    System.exit(run(System.in, System.out));
+  }
+
+  static int run(InputStream in, PrintStream out) throws IOException {
+    var properties = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    out.println("{\"level\":\"INFO\",\"message\":\"Context classloader is isolated: "
+      + (Thread.currentThread().getContextClassLoader() == FakeScannerEngineMain.class.getClassLoader()) + "\"}");
+    out.print("{\"level\":\"DEBUG\",\"message\":\"" + properties.replace("\"", "'") + "\"}\n");
+    if (properties.contains("fail")) {
+      throw new IllegalStateException("Analysis failed");
+    }
+    return properties.contains("exit") ? 2 : 0;
+  }
+
+  /**
+   * Create an engine jar containing this class, copied from the test classpath
+   *
+   * @param mainClass null to create a jar without main class
+   */
+  public static Path createJar(Path jar, String mainClass) throws IOException {
+    var manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    if (mainClass != null) {
+      manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+    }
+    var classFile = FakeScannerEngineMain.class.getName().replace('.', '/') + ".class";
+    try (var out = new JarOutputStream(Files.newOutputStream(jar), manifest);
+      var in = FakeScannerEngineMain.class.getClassLoader().getResourceAsStream(classFile)) {
+      out.putNextEntry(new JarEntry(classFile));
+      in.transferTo(out);
+      out.closeEntry();
+    }
+    return jar;
+  }
+}
@@ -22,13 +22,21 @@ package org.sonarsource.scanner.lib.internal.facade.inprocess;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -62,11 +70,16 @@ class IsolatedClassloaderTest {
     assertThat(classLoader.loadClass("org.junit.jupiter.api.Test", false)).isNotNull();
   }
 
+  @Test
+  void should_be_parallel_capable() {
+    assertThat(classLoader.isRegisteredAsParallelCapable()).isTrue();
+  }
+
   @Test
   void add_jars() throws MalformedURLException {
     var f = Paths.get("dummy");
     Path[] files = {f};
-    classLoader.addFiles(Arrays.asList(files));
+    classLoader.addFiles(Arrays.asList(files), file -> false);
 
     assertThat(classLoader.getURLs()).contains(f.toUri().toURL());
   }
@@ -90,4 +103,48 @@ class IsolatedClassloaderTest {
     Enumeration<URL> resource = classLoader.getResources("fake.jar");
     assertThat(resource.hasMoreElements()).isFalse();
   }
+
+  @Test
+  void should_load_classes_and_resources_through_jar_index(@TempDir Path dir) throws Exception {
+    String classPath = IndexedClass.class.getName().replace('.', '/') + ".class";
+    byte[] classBytes;
+    try (var in = getClass().getClassLoader().getResourceAsStream(classPath)) {
+      classBytes = in.readAllBytes();
+    }
+    var jar1 = createJar(dir.resolve("jar1.jar"), Map.of(classPath, classBytes, "META-INF/shared.txt", "1".getBytes(StandardCharsets.UTF_8)));
+    var jar2 = createJar(dir.resolve("jar2.jar"), Map.of("META-INF/shared.txt", "2".getBytes(StandardCharsets.UTF_8), "other/only2.txt", new byte[0]));
+    classLoader.addFiles(List.of(jar1, jar2), jar1::equals);
+
+    Class<?> loaded = classLoader.loadClass(IndexedClass.class.getName());
+    assertThat(loaded.getClassLoader()).isSameAs(classLoader);
+    assertThat(loaded.getPackage().getName()).isEqualTo(IndexedClass.class.getPackageName());
+    assertThat(loaded.getProtectionDomain().getCodeSource().getLocation()).isEqualTo(jar1.toUri().toURL());
+
+    assertThat(classLoader.getResource("other/only2.txt")).hasToString("jar:" + jar2.toUri().toURL() + "!/other/only2.txt");
+    assertThat(classLoader.getResource("other/missing.txt")).isNull();
+    assertThat(Collections.list(classLoader.getResources("META-INF/shared.txt"))).hasSize(2);
+    try (var in = classLoader.getResourceAsStream("META-INF/shared.txt")) {
+      assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("1");
+    }
+    assertThatThrownBy(() -> classLoader.loadClass("org.unknown.Foo")).isInstanceOf(ClassNotFoundException.class);
+
+    classLoader.close();
+    // The index is only persisted next to the content-addressed jars
+    assertThat(dir.resolve("jar1.jar" + JarIndex.INDEX_SUFFIX)).exists();
+    assertThat(dir.resolve("jar2.jar" + JarIndex.INDEX_SUFFIX)).doesNotExist();
+  }
+
+  private static Path createJar(Path jar, Map<String, byte[]> entries) throws IOException {
+    try (var out = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (var entry : entries.entrySet()) {
+        out.putNextEntry(new ZipEntry(entry.getKey()));
+        out.write(entry.getValue());
+        out.closeEntry();
+      }
+    }
+    return jar;
+  }
+
+  public static class IndexedClass {
+  }
 }
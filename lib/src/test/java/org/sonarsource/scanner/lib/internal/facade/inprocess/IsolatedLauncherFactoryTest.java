@@ -27,8 +27,10 @@ import org.junit.jupiter.api.Test;
 import org.sonarsource.scanner.lib.internal.batch.IsolatedLauncher;
 import org.sonarsource.scanner.lib.internal.batch.LogOutput;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 class IsolatedLauncherFactoryTest {
   IsolatedLauncherFactory factory;
@@ -52,6 +54,18 @@ class IsolatedLauncherFactoryTest {
     });
   }
 
+  @Test
+  void should_not_return_launcher_once_closed() throws Exception {
+    var classloader = mock(AutoCloseable.class);
+    var launcherAndClassloader = new IsolatedLauncherFactory.IsolatedLauncherAndClassloader(new FakeIsolatedLauncher(), classloader, true);
+
+    launcherAndClassloader.close();
+
+    var e = assertThrows(IllegalStateException.class, launcherAndClassloader::getLauncher);
+    assertEquals("The Scanner Engine classloader is closed", e.getMessage());
+    verify(classloader).close();
+  }
+
   public static class FakeIsolatedLauncher implements IsolatedLauncher {
     public static Map<String, String> props = null;
 
@@ -22,9 +22,15 @@ package org.sonarsource.scanner.lib.internal.facade.inprocess;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.scanner.downloadcache.DownloadCache;
+import org.sonarsource.scanner.downloadcache.Downloader;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 class JarExtractorTest {
 
@@ -36,6 +42,41 @@ class JarExtractorTest {
     assertThat(jarFile).exists();
     assertThat(Files.readString(jarFile)).isEqualTo("Fake jar for unit tests");
     assertThat(jarFile.toUri().toURL().toString()).doesNotContain("jar:file");
+    assertThat(jarFile.getParent()).isEqualTo(TempCleaning.defaultTempDir());
+  }
+
+  @Test
+  void should_extract_to_cache_once(@TempDir Path cacheDir) throws Exception {
+    var downloadCache = new DownloadCache(cacheDir);
+
+    var first = underTest.extractToCache("fake", downloadCache);
+    var second = underTest.extractToCache("fake", downloadCache);
+
+    assertThat(first.didCacheHit()).isFalse();
+    assertThat(second.didCacheHit()).isTrue();
+    assertThat(second.getPath()).isEqualTo(first.getPath()).startsWith(cacheDir).hasFileName("fake.jar");
+    assertThat(Files.readString(second.getPath())).isEqualTo("Fake jar for unit tests");
+    // Stored under its SHA-256
+    assertThat(second.getPath().getParent().getFileName().toString()).hasSize(64);
+  }
+
+  @Test
+  void should_fall_back_to_temp_when_cache_fails() throws Exception {
+    var downloadCache = mock(DownloadCache.class);
+    when(downloadCache.getOrDownload(any(), any(), any(), any(Downloader.class))).thenThrow(new IllegalStateException("Read-only"));
+
+    var extracted = underTest.extractToCache("fake", downloadCache);
+
+    assertThat(extracted.didCacheHit()).isFalse();
+    assertThat(Files.readString(extracted.getPath())).isEqualTo("Fake jar for unit tests");
+  }
+
+  @Test
+  void should_fail_to_extract_unknown_jar_to_cache(@TempDir Path cacheDir) {
+    var downloadCache = new DownloadCache(cacheDir);
+    assertThatThrownBy(() -> underTest.extractToCache("unknown", downloadCache))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("Fail to extract unknown.jar");
   }
 
   @Test
@@ -0,0 +1,96 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.facade.inprocess;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JarIndexTest {
+
+  @TempDir
+  private Path dir;
+
+  @Test
+  void should_find_jars_by_directory_in_classpath_order() throws IOException {
+    var jar1 = createJar("jar1.jar", "org/foo/A.class", "root.txt");
+    var jar2 = createJar("jar2.jar", "org/foo/B.class", "org/bar/C.class");
+
+    var index = JarIndex.of(List.of(jar1, jar2), jar -> true).orElseThrow();
+
+    assertThat(index.jarsFor("org/foo/Any.class")).containsExactly(jar1, jar2);
+    assertThat(index.jarsFor("org/bar/C.class")).containsExactly(jar2);
+    assertThat(index.jarsFor("other.txt")).containsExactly(jar1);
+    assertThat(index.jarsFor("org/unknown/D.class")).isEmpty();
+  }
+
+  @Test
+  void should_persist_and_reuse_index() throws IOException {
+    var jar = createJar("jar.jar", "org/foo/A.class");
+    JarIndex.of(List.of(jar), j -> true).orElseThrow();
+    var indexFile = dir.resolve("jar.jar" + JarIndex.INDEX_SUFFIX);
+    assertThat(Files.readAllLines(indexFile)).containsExactly("org/foo/");
+
+    // The jar is content-addressed, so the persisted index is trusted
+    Files.writeString(indexFile, "org/bar/\n", StandardCharsets.UTF_8);
+    assertThat(JarIndex.of(List.of(jar), j -> true).orElseThrow().jarsFor("org/bar/B.class")).containsExactly(jar);
+  }
+
+  @Test
+  void should_neither_persist_nor_reuse_index_of_jars_that_are_not_content_addressed() throws IOException {
+    var jar = createJar("jar.jar", "org/foo/A.class");
+    var indexFile = dir.resolve("jar.jar" + JarIndex.INDEX_SUFFIX);
+    Files.writeString(indexFile, "org/bar/\n", StandardCharsets.UTF_8);
+
+    var index = JarIndex.of(List.of(jar), j -> false).orElseThrow();
+
+    assertThat(index.jarsFor("org/foo/A.class")).containsExactly(jar);
+    assertThat(index.jarsFor("org/bar/B.class")).isEmpty();
+    assertThat(Files.readAllLines(indexFile)).containsExactly("org/bar/");
+  }
+
+  @Test
+  void should_not_index_files_that_are_not_jars() throws IOException {
+    var notAJar = Files.writeString(dir.resolve("foo.jar"), "not a jar");
+
+    assertThat(JarIndex.of(List.of(notAJar), jar -> true)).isEmpty();
+    assertThat(JarIndex.of(List.of(dir.resolve("missing.jar")), jar -> true)).isEmpty();
+    assertThat(JarIndex.of(List.of(dir), jar -> true)).isEmpty();
+  }
+
+  private Path createJar(String filename, String... entries) throws IOException {
+    var jar = dir.resolve(filename);
+    try (var out = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (var entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.closeEntry();
+      }
+    }
+    return jar;
+  }
+}
@@ -22,6 +22,7 @@ package org.sonarsource.scanner.lib.internal.facade.inprocess;
 import org.junit.jupiter.api.Test;
 import org.sonarsource.scanner.downloadcache.DownloadCache;
 import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
+import org.sonarsource.scanner.lib.internal.util.IoThreads;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -31,6 +32,6 @@ class LegacyScannerEngineDownloaderFactoryTest {
   void should_create() {
     ScannerHttpClient conn = mock(ScannerHttpClient.class);
     DownloadCache cache = mock(DownloadCache.class);
-    assertThat(new LegacyScannerEngineDownloaderFactory(conn, cache).create()).isNotNull();
+    assertThat(new LegacyScannerEngineDownloaderFactory(conn, cache, IoThreads.platform()).create()).isNotNull();
   }
 }
@@ -23,18 +23,32 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.event.Level;
+import org.sonarsource.scanner.downloadcache.CachedFile;
 import org.sonarsource.scanner.downloadcache.DownloadCache;
 import org.sonarsource.scanner.downloadcache.Downloader;
 import org.sonarsource.scanner.downloadcache.HashMismatchException;
 import org.sonarsource.scanner.lib.internal.facade.inprocess.BootstrapIndexDownloader.JarEntry;
 import org.sonarsource.scanner.lib.internal.facade.inprocess.LegacyScannerEngineDownloader.ScannerFileDownloader;
 import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
+import testutils.LogTester;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atMost;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -42,15 +56,23 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 class LegacyScannerEngineDownloaderTest {
+  @RegisterExtension
+  private final LogTester logTester = new LogTester();
+
   private final BootstrapIndexDownloader bootstrapIndexDownloader = mock(BootstrapIndexDownloader.class);
   private final ScannerFileDownloader scannerFileDownloader = mock(ScannerFileDownloader.class);
   private final JarExtractor jarExtractor = mock(JarExtractor.class);
   private final DownloadCache downloadCache = mock(DownloadCache.class);
 
+  @BeforeEach
+  void setUp() {
+    when(jarExtractor.extractToCache("sonar-scanner-java-library-batch", downloadCache)).thenReturn(new CachedFile(Path.of("batch.jar"), false));
+  }
+
   @Test
   void should_download_jar_files(@TempDir Path tmpDir) throws HashMismatchException {
     var batchJar = tmpDir.resolve("sonar-scanner-java-library-batch.jar");
-    when(jarExtractor.extractToTemp("sonar-scanner-java-library-batch")).thenReturn(batchJar);
+    when(jarExtractor.extractToCache("sonar-scanner-java-library-batch", downloadCache)).thenReturn(new CachedFile(batchJar, false));
 
     Collection<JarEntry> jars = new ArrayList<>();
     jars.add(new JarEntry("cpd.jar", "CA124VADFSDS"));
@@ -58,15 +80,110 @@ class LegacyScannerEngineDownloaderTest {
 
     // index of the files to download
     when(bootstrapIndexDownloader.getIndex()).thenReturn(jars);
+    when(downloadCache.getOrDownload(any(), any(), eq("MD5"), any(Downloader.class))).thenAnswer(i -> new CachedFile(tmpDir.resolve(i.<String>getArgument(0)), true));
 
     LegacyScannerEngineDownloader legacyScannerEngineDownloader = new LegacyScannerEngineDownloader(scannerFileDownloader, bootstrapIndexDownloader, downloadCache, jarExtractor);
     var files = legacyScannerEngineDownloader.getOrDownload();
 
-    assertThat(files).isNotNull();
+    assertThat(files).extracting(f -> f.getPath().getFileName().toString()).containsExactly("sonar-scanner-java-library-batch.jar", "cpd.jar", "squid.jar");
     verify(bootstrapIndexDownloader).getIndex();
     verify(downloadCache, times(1)).getOrDownload(eq("cpd.jar"), eq("CA124VADFSDS"), eq("MD5"), any(Downloader.class));
     verify(downloadCache, times(1)).getOrDownload(eq("squid.jar"), eq("34535FSFSDF"), eq("MD5"), any(Downloader.class));
     verifyNoMoreInteractions(downloadCache);
+    // The embedded batch jar is not downloaded, so it never counts as a cache miss
+    assertThat(files.get(0).didCacheHit()).isTrue();
+  }
+
+  @Test
+  void should_download_jar_files_concurrently(@TempDir Path tmpDir) throws Exception {
+    logTester.setLevel(Level.DEBUG);
+    when(bootstrapIndexDownloader.getIndex()).thenReturn(List.of(new JarEntry("a.jar", "1"), new JarEntry("b.jar", "2"), new JarEntry("c.jar", "3")));
+    // Each download waits for another one to be in progress
+    var inProgress = new CountDownLatch(2);
+    when(downloadCache.getOrDownload(any(), any(), eq("MD5"), any(Downloader.class))).thenAnswer(i -> {
+      inProgress.countDown();
+      assertThat(inProgress.await(10, TimeUnit.SECONDS)).isTrue();
+      String filename = i.getArgument(0);
+      return new CachedFile(tmpDir.resolve(filename), !filename.equals("c.jar"));
+    });
+
+    var files = new LegacyScannerEngineDownloader(scannerFileDownloader, bootstrapIndexDownloader, downloadCache, jarExtractor).getOrDownload();
+
+    assertThat(files).hasSize(4);
+    assertThat(logTester.logs(Level.DEBUG)).contains("Scanner Engine files found in cache: 2/3 (66%)");
+  }
+
+  @Test
+  void should_interrupt_downloads_in_progress_after_a_failure(@TempDir Path tmpDir) throws Exception {
+    when(bootstrapIndexDownloader.getIndex()).thenReturn(List.of(new JarEntry("a.jar", "1"), new JarEntry("b.jar", "2")));
+    var bStarted = new CountDownLatch(1);
+    var bInterrupted = new CountDownLatch(1);
+    when(downloadCache.getOrDownload(any(), any(), eq("MD5"), any(Downloader.class))).thenAnswer(i -> {
+      String filename = i.getArgument(0);
+      if (filename.equals("a.jar")) {
+        assertThat(bStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        throw new IllegalStateException("Fail to download a.jar");
+      }
+      bStarted.countDown();
+      try {
+        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+      } catch (InterruptedException e) {
+        bInterrupted.countDown();
+      }
+      return new CachedFile(tmpDir.resolve(filename), false);
+    });
+    var underTest = new LegacyScannerEngineDownloader(scannerFileDownloader, bootstrapIndexDownloader, downloadCache, jarExtractor);
+
+    assertThatThrownBy(underTest::getOrDownload)
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("Fail to download a.jar");
+    assertThat(bInterrupted.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  void should_wrap_checked_download_errors(@TempDir Path tmpDir) throws Exception {
+    when(bootstrapIndexDownloader.getIndex()).thenReturn(List.of(new JarEntry("a.jar", "1")));
+    when(downloadCache.getOrDownload(any(), any(), eq("MD5"), any(Downloader.class))).thenThrow(new HashMismatchException("1", "2", tmpDir.resolve("a.jar")));
+    var underTest = new LegacyScannerEngineDownloader(scannerFileDownloader, bootstrapIndexDownloader, downloadCache, jarExtractor);
+
+    assertThatThrownBy(underTest::getOrDownload)
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("Unable to provision the Scanner Engine")
+      .hasCauseInstanceOf(HashMismatchException.class);
+  }
+
+  @Test
+  void should_collect_failures_of_completed_downloads(@TempDir Path tmpDir) {
+    var first = new IllegalStateException("Fail to download a.jar");
+    var second = new HashMismatchException("2", "3", tmpDir.resolve("b.jar"));
+    List<Future<CachedFile>> futures = List.of(
+      CompletableFuture.failedFuture(first),
+      CompletableFuture.failedFuture(second),
+      CompletableFuture.completedFuture(new CachedFile(tmpDir.resolve("c.jar"), true)),
+      CompletableFuture.failedFuture(new CancellationException()),
+      new CompletableFuture<>());
+
+    var failure = LegacyScannerEngineDownloader.collectFailures(first, futures);
+
+    assertThat(failure).isSameAs(first);
+    assertThat(failure.getSuppressed()).singleElement(InstanceOfAssertFactories.THROWABLE)
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("Unable to provision the Scanner Engine")
+      .hasCause(second);
+  }
+
+  @Test
+  void should_not_start_new_downloads_after_a_failure(@TempDir Path tmpDir) throws Exception {
+    var index = new ArrayList<JarEntry>();
+    for (int i = 0; i < 20; i++) {
+      index.add(new JarEntry(i + ".jar", String.valueOf(i)));
+    }
+    when(bootstrapIndexDownloader.getIndex()).thenReturn(index);
+    when(downloadCache.getOrDownload(any(), any(), eq("MD5"), any(Downloader.class))).thenThrow(new IllegalStateException("Server is down"));
+    var underTest = new LegacyScannerEngineDownloader(scannerFileDownloader, bootstrapIndexDownloader, downloadCache, jarExtractor);
+
+    assertThatThrownBy(underTest::getOrDownload).hasMessage("Server is down");
+    verify(downloadCache, atMost(LegacyScannerEngineDownloader.MAX_PARALLEL_DOWNLOADS)).getOrDownload(any(), any(), eq("MD5"), any(Downloader.class));
   }
 
   @Test
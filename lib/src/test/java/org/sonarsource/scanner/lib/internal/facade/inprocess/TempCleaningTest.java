@@ -22,18 +22,22 @@ package org.sonarsource.scanner.lib.internal.facade.inprocess;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.scanner.lib.internal.util.IoThreads;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 class TempCleaningTest {
 
   @Test
-  void should_clean_jvm_tmp_dir() {
+  void should_clean_dedicated_subdirectory_of_jvm_tmp_dir() {
     TempCleaning cleaning = new TempCleaning();
-    assertThat(cleaning.tempDir).isDirectory().exists();
+    assertThat(cleaning.tempDir).isEqualTo(Paths.get(System.getProperty("java.io.tmpdir"), "sonar-scanner-java-library"));
   }
 
   @Test
@@ -58,4 +62,129 @@ class TempCleaningTest {
     assertThat(youngBatch).exists();
     assertThat(doNotDelete).exists();
   }
+
+  @Test
+  void should_detect_files_in_temp_dir(@TempDir Path dir) {
+    var underTest = new TempCleaning(dir.resolve("tmp"));
+
+    assertThat(underTest.isInTempDir(dir.resolve("tmp/sonar-scanner-java-library-batch123.jar"))).isTrue();
+    assertThat(underTest.isInTempDir(dir.resolve("cache/sonar-scanner-java-library-batch.jar"))).isFalse();
+  }
+
+  @Test
+  void should_clean_at_most_once_a_day(@TempDir Path dir) throws Exception {
+    Path oldBatch = createOldBatch(dir, "sonar-scanner-java-library-batch1.jar");
+    new TempCleaning(dir).clean();
+    assertThat(oldBatch).doesNotExist();
+    assertThat(dir.resolve(TempCleaning.MARKER_FILENAME)).exists();
+
+    Path otherOldBatch = createOldBatch(dir, "sonar-scanner-java-library-batch2.jar");
+    new TempCleaning(dir).clean();
+    assertThat(otherOldBatch).exists();
+
+    Files.setLastModifiedTime(dir.resolve(TempCleaning.MARKER_FILENAME), FileTime.fromMillis(System.currentTimeMillis() - 2L * TempCleaning.ONE_DAY_IN_MILLISECONDS));
+    new TempCleaning(dir).clean();
+    assertThat(otherOldBatch).doesNotExist();
+  }
+
+  @Test
+  void should_stop_after_max_entries(@TempDir Path dir) throws Exception {
+    for (int i = 0; i < 5; i++) {
+      createOldBatch(dir, "sonar-scanner-java-library-batch" + i + ".jar");
+    }
+
+    new TempCleaning(dir, null, 2, Duration.ofMinutes(1)).clean();
+
+    try (var files = Files.list(dir)) {
+      assertThat(files.filter(f -> f.getFileName().toString().endsWith(".jar"))).hasSize(3);
+    }
+  }
+
+  @Test
+  void should_resume_after_last_visited_entry(@TempDir Path dir) throws Exception {
+    // Young files are never deleted, they must not prevent the next cleaning from making progress
+    Path young1 = createBatch(dir, "sonar-scanner-java-library-batch1.jar", 0);
+    Path young2 = createBatch(dir, "sonar-scanner-java-library-batch2.jar", 0);
+    Path old3 = createOldBatch(dir, "sonar-scanner-java-library-batch3.jar");
+    Path old4 = createOldBatch(dir, "sonar-scanner-java-library-batch4.jar");
+    var underTest = new TempCleaning(dir, null, 2, Duration.ofMinutes(1));
+
+    underTest.clean();
+    assertThat(old3).exists();
+    assertThat(dir.resolve(TempCleaning.MARKER_FILENAME)).hasContent("sonar-scanner-java-library-batch2.jar");
+
+    // Resumed without waiting for a day
+    underTest.clean();
+    assertThat(old3).doesNotExist();
+    assertThat(old4).doesNotExist();
+    assertThat(young1).exists();
+    assertThat(young2).exists();
+    assertThat(dir.resolve(TempCleaning.MARKER_FILENAME)).hasContent("");
+
+    // The sweep is complete, the next one is in a day
+    Path old5 = createOldBatch(dir, "sonar-scanner-java-library-batch5.jar");
+    underTest.clean();
+    assertThat(old5).exists();
+  }
+
+  @Test
+  void should_clean_legacy_temp_dir_once(@TempDir Path dir) throws Exception {
+    var tempDir = Files.createDirectory(dir.resolve(TempCleaning.TEMP_DIR_NAME));
+    Path oldBatch = createOldBatch(dir, "sonar-scanner-java-library-batch1.jar");
+    Path youngBatch = createBatch(dir, "sonar-scanner-java-library-batch2.jar", 0);
+    // Not created by this library, so never deleted
+    Path otherTempFolder = Files.createDirectory(dir.resolve(".sonartmp_123"));
+    Files.write(otherTempFolder.resolve("file.txt"), "foo".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(otherTempFolder, FileTime.fromMillis(System.currentTimeMillis() - 3L * TempCleaning.ONE_DAY_IN_MILLISECONDS));
+    Path otherFile = createOldBatch(dir, "jacoco.txt");
+    var underTest = new TempCleaning(tempDir, dir, 100, Duration.ofMinutes(1));
+
+    underTest.clean();
+
+    assertThat(oldBatch).doesNotExist();
+    assertThat(otherTempFolder).exists();
+    assertThat(youngBatch).exists();
+    assertThat(otherFile).exists();
+    assertThat(tempDir.resolve(TempCleaning.LEGACY_MARKER_FILENAME)).exists();
+
+    Path otherOldBatch = createOldBatch(dir, "sonar-scanner-java-library-batch3.jar");
+    Files.setLastModifiedTime(tempDir.resolve(TempCleaning.MARKER_FILENAME), FileTime.fromMillis(System.currentTimeMillis() - 2L * TempCleaning.ONE_DAY_IN_MILLISECONDS));
+    underTest.clean();
+    assertThat(otherOldBatch).exists();
+  }
+
+  @Test
+  void should_clean_legacy_temp_dir_in_background_even_if_temp_dir_does_not_exist(@TempDir Path dir) throws Exception {
+    var tempDir = dir.resolve(TempCleaning.TEMP_DIR_NAME);
+    Path oldBatch = createOldBatch(dir, "sonar-scanner-java-library-batch1.jar");
+    var underTest = new TempCleaning(tempDir, dir, 100, Duration.ofMinutes(1));
+
+    underTest.cleanLegacyTempDirInBackground(IoThreads.platform());
+
+    var marker = tempDir.resolve(TempCleaning.LEGACY_MARKER_FILENAME);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!Files.exists(marker) && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(marker).exists();
+    assertThat(oldBatch).doesNotExist();
+  }
+
+  @Test
+  void should_do_nothing_if_temp_dir_does_not_exist(@TempDir Path dir) {
+    new TempCleaning(dir.resolve("missing")).clean();
+
+    assertThat(dir.resolve("missing")).doesNotExist();
+  }
+
+  private static Path createOldBatch(Path dir, String filename) throws Exception {
+    return createBatch(dir, filename, 3);
+  }
+
+  private static Path createBatch(Path dir, String filename, int ageInDays) throws Exception {
+    Path batch = dir.resolve(filename);
+    Files.write(batch, "foo".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(batch, FileTime.fromMillis(System.currentTimeMillis() - ageInDays * (long) TempCleaning.ONE_DAY_IN_MILLISECONDS));
+    return batch;
+  }
 }
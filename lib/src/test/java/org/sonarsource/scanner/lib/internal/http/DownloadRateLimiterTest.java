@@ -0,0 +1,111 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownloadRateLimiterTest {
+
+  private static final long ONE_SECOND = Duration.ofSeconds(1).toNanos();
+
+  @TempDir
+  private Path leaseDir;
+
+  private final AtomicLong clock = new AtomicLong();
+
+  @Test
+  void unlimited_should_never_wait() {
+    var underTest = DownloadRateLimiter.UNLIMITED;
+    underTest.downloadStarted();
+
+    assertThat(underTest.isUnlimited()).isTrue();
+    assertThat(underTest.reserve(Long.MAX_VALUE)).isZero();
+  }
+
+  @Test
+  void should_allow_a_burst_of_one_second_then_wait() {
+    var underTest = new DownloadRateLimiter(1000, 0, null, clock::get);
+    underTest.downloadStarted();
+
+    assertThat(underTest.reserve(1000)).isZero();
+    assertThat(underTest.reserve(500)).isEqualTo(ONE_SECOND / 2);
+
+    clock.addAndGet(ONE_SECOND / 2);
+    assertThat(underTest.reserve(1000)).isEqualTo(ONE_SECOND);
+  }
+
+  @Test
+  void should_refill_up_to_capacity_only() {
+    var underTest = new DownloadRateLimiter(1000, 0, null, clock::get);
+    underTest.downloadStarted();
+
+    clock.addAndGet(10 * ONE_SECOND);
+    assertThat(underTest.reserve(1000)).isZero();
+    assertThat(underTest.reserve(1000)).isEqualTo(ONE_SECOND);
+  }
+
+  @Test
+  void should_share_host_cap_between_active_leases() throws Exception {
+    Files.createFile(leaseDir.resolve("other.lease"));
+    var stale = Files.createFile(leaseDir.resolve("stale.lease"));
+    Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minus(Duration.ofMinutes(1))));
+
+    var underTest = new DownloadRateLimiter(0, 2000, leaseDir, clock::get);
+    underTest.downloadStarted();
+
+    // Two active leases (this one and "other"), so 1000 bytes/s each
+    assertThat(underTest.reserve(1000)).isZero();
+    assertThat(underTest.reserve(1000)).isEqualTo(ONE_SECOND);
+    // The stale lease has been deleted while counting
+    try (var files = Files.list(leaseDir)) {
+      assertThat(files.count()).isEqualTo(2);
+    }
+
+    underTest.downloadFinished();
+    try (var files = Files.list(leaseDir)) {
+      assertThat(files.map(p -> p.getFileName().toString())).containsOnly("other.lease");
+    }
+  }
+
+  @Test
+  void should_apply_the_lowest_cap() {
+    var underTest = new DownloadRateLimiter(500, 2000, leaseDir, clock::get);
+    underTest.downloadStarted();
+
+    assertThat(underTest.reserve(500)).isZero();
+    assertThat(underTest.reserve(500)).isEqualTo(ONE_SECOND);
+  }
+
+  @Test
+  void should_ignore_host_cap_without_lease_dir() {
+    var underTest = new DownloadRateLimiter(0, 2000, null, clock::get);
+
+    assertThat(underTest.isUnlimited()).isTrue();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class FileBodyHandlerTest {
+
+  @TempDir
+  private Path tmpDir;
+
+  @Test
+  void should_write_body_to_file() throws Exception {
+    var toFile = tmpDir.resolve("file.txt");
+    var underTest = new FileBodyHandler.FileChannelSubscriber(toFile, null, null, DownloadRateLimiter.UNLIMITED, 11);
+
+    underTest.onSubscribe(mock(Flow.Subscription.class));
+    underTest.onNext(List.of(buffer("hello "), buffer("world")));
+    underTest.onComplete();
+
+    assertThat(underTest.getBody().toCompletableFuture().get()).isInstanceOf(InputStream.class);
+    assertThat(Files.readString(toFile)).isEqualTo("hello world");
+  }
+
+  @Test
+  void should_fail_when_body_is_shorter_than_content_length() {
+    var toFile = tmpDir.resolve("file.txt");
+    var underTest = new FileBodyHandler.FileChannelSubscriber(toFile, null, null, DownloadRateLimiter.UNLIMITED, 100);
+
+    underTest.onSubscribe(mock(Flow.Subscription.class));
+    underTest.onNext(List.of(buffer("hello")));
+    underTest.onComplete();
+
+    assertThat(underTest.getBody()).failsWithin(Duration.ZERO)
+      .withThrowableOfType(ExecutionException.class)
+      .havingCause()
+      .isInstanceOf(IOException.class)
+      .withMessage("Response body is truncated: received 5 bytes out of 100");
+  }
+
+  @Test
+  void should_fail_with_a_dedicated_exception_when_file_cannot_be_written() {
+    var toFile = tmpDir.resolve("missing").resolve("file.txt");
+    var underTest = new FileBodyHandler.FileChannelSubscriber(toFile, null, null, DownloadRateLimiter.UNLIMITED, 100);
+
+    underTest.onSubscribe(mock(Flow.Subscription.class));
+
+    assertThat(underTest.getBody()).failsWithin(Duration.ZERO)
+      .withThrowableOfType(ExecutionException.class)
+      .havingCause()
+      .isInstanceOf(FileWriteException.class)
+      .withMessageStartingWith("Unable to write the response body to " + toFile);
+  }
+
+  @Test
+  void should_accept_body_without_content_length() throws Exception {
+    var toFile = tmpDir.resolve("file.txt");
+    var underTest = new FileBodyHandler.FileChannelSubscriber(toFile, null, null, DownloadRateLimiter.UNLIMITED, -1);
+
+    underTest.onSubscribe(mock(Flow.Subscription.class));
+    underTest.onNext(List.of(buffer("hello")));
+    underTest.onComplete();
+
+    assertThat(underTest.getBody().toCompletableFuture().get()).isInstanceOf(InputStream.class);
+    assertThat(Files.readString(toFile)).isEqualTo("hello");
+  }
+
+  private static ByteBuffer buffer(String content) {
+    return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgingPolicyTest {
+
+  @Test
+  void should_be_disabled_without_percentile_or_extra_load() {
+    assertThat(new HedgingPolicy(0, Duration.ofSeconds(1), 10).isEnabled()).isFalse();
+    assertThat(new HedgingPolicy(95, Duration.ofSeconds(1), 0).isEnabled()).isFalse();
+    assertThat(new HedgingPolicy(95, Duration.ofSeconds(1), 10).isEnabled()).isTrue();
+  }
+
+  @Test
+  void should_use_initial_delay_until_enough_latencies_are_known() {
+    var underTest = new HedgingPolicy(90, Duration.ofSeconds(1), 10);
+    for (int i = 1; i < HedgingPolicy.MIN_SAMPLES; i++) {
+      underTest.recordLatency(Duration.ofMillis(i * 10L));
+    }
+    assertThat(underTest.delay()).isEqualTo(Duration.ofSeconds(1));
+  }
+
+  @Test
+  void should_use_percentile_of_observed_latencies() {
+    var underTest = new HedgingPolicy(90, Duration.ofSeconds(1), 10);
+    for (int i = 10; i >= 1; i--) {
+      underTest.recordLatency(Duration.ofMillis(i * 10L));
+    }
+    assertThat(underTest.delay()).isEqualTo(Duration.ofMillis(90));
+  }
+
+  @Test
+  void should_only_keep_most_recent_latencies() {
+    var underTest = new HedgingPolicy(50, Duration.ofSeconds(1), 10);
+    for (int i = 0; i < HedgingPolicy.MAX_SAMPLES; i++) {
+      underTest.recordLatency(Duration.ofSeconds(10));
+    }
+    for (int i = 0; i < HedgingPolicy.MAX_SAMPLES; i++) {
+      underTest.recordLatency(Duration.ofMillis(20));
+    }
+    assertThat(underTest.delay()).isEqualTo(Duration.ofMillis(20));
+  }
+
+  @Test
+  void should_cap_extra_load() {
+    var underTest = new HedgingPolicy(95, Duration.ofSeconds(1), 10);
+
+    underTest.callStarted();
+    assertThat(underTest.tryHedge()).isTrue();
+    for (int i = 0; i < 9; i++) {
+      underTest.callStarted();
+      assertThat(underTest.tryHedge()).isFalse();
+    }
+    underTest.callStarted();
+    assertThat(underTest.tryHedge()).isTrue();
+  }
+}
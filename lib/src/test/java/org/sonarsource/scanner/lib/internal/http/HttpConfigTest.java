@@ -81,6 +81,38 @@ class HttpConfigTest {
       .hasMessage(SONAR_WS_TIMEOUT + " is not a valid integer: fail");
   }
 
+  @Test
+  void should_parse_download_rate_limits_in_megabytes_per_second() {
+    var underTest = new HttpConfig(Map.of("sonar.scanner.downloadRateLimit", "2.5", "sonar.scanner.downloadHostRateLimit", "10"), sonarUserHome, system);
+
+    assertThat(underTest.getDownloadRateLimit()).isEqualTo(2_621_440L);
+    assertThat(underTest.getDownloadHostRateLimit()).isEqualTo(10_485_760L);
+  }
+
+  @Test
+  void should_not_limit_download_rate_by_default() {
+    var underTest = new HttpConfig(Map.of(), sonarUserHome, system);
+
+    assertThat(underTest.getDownloadRateLimit()).isZero();
+    assertThat(underTest.getDownloadHostRateLimit()).isZero();
+  }
+
+  @Test
+  void should_throw_if_invalid_download_rate_limit() {
+    var props = Map.of("sonar.scanner.downloadRateLimit", "-1");
+    assertThatThrownBy(() -> new HttpConfig(props, sonarUserHome, system))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("sonar.scanner.downloadRateLimit is not a valid number of MB/s: -1");
+  }
+
+  @Test
+  void should_throw_if_hedging_percentile_out_of_range() {
+    var props = Map.of("sonar.scanner.httpHedgingPercentile", "100");
+    assertThatThrownBy(() -> new HttpConfig(props, sonarUserHome, system))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("sonar.scanner.httpHedgingPercentile must be between 0 and 99: 100");
+  }
+
   @Test
   void it_should_throw_if_invalid_proxy_port() {
     bootstrapProperties.put("sonar.scanner.proxyHost", "localhost");
@@ -0,0 +1,66 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.net.URI;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.slf4j.event.Level;
+import org.sonarsource.scanner.lib.HttpTiming;
+import testutils.LogTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpTimingReportTest {
+
+  @RegisterExtension
+  private final LogTester logTester = new LogTester();
+
+  private final HttpTimingReport underTest = new HttpTimingReport();
+
+  @Test
+  void should_log_summary_and_slowest_calls_first() {
+    logTester.setLevel(Level.DEBUG);
+    underTest.onCallCompleted(timing("/fast", 10, 100, 0, 0));
+    underTest.onCallCompleted(timing("/slow", 900, 2048, 1, 2));
+
+    underTest.log();
+
+    assertThat(logTester.logs(Level.DEBUG)).containsExactly(
+      "HTTP calls during bootstrap: 2 in 910ms, 2 KB received, 1 redirect(s), 2 retry(ies)",
+      "  GET https://sonar/slow status=200 total=900ms wait=0ms ttfb=900ms transfer=0ms bytes=2048 redirects=1 retries=2",
+      "  GET https://sonar/fast status=200 total=10ms wait=0ms ttfb=10ms transfer=0ms bytes=100 redirects=0 retries=0");
+  }
+
+  @Test
+  void should_not_log_when_debug_is_disabled() {
+    underTest.onCallCompleted(timing("/fast", 10, 100, 0, 0));
+
+    underTest.log();
+
+    assertThat(logTester.logs()).isEmpty();
+  }
+
+  private static HttpTiming timing(String path, long millis, long bytes, int redirects, int retries) {
+    return new HttpTiming("GET", URI.create("https://sonar" + path), 200, Duration.ofMillis(millis), Duration.ZERO, Duration.ofMillis(millis), Duration.ZERO, bytes,
+      redirects, retries, null);
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedirectCacheTest {
+
+  @TempDir
+  private Path tmp;
+
+  @Test
+  void should_resolve_exact_url() {
+    var cache = new RedirectCache();
+    cache.put("https://sonar/api/foo", "https://sonar/sso/api/foo?x=1");
+
+    assertThat(cache.resolve("https://sonar/api/foo")).isEqualTo("https://sonar/sso/api/foo?x=1");
+    assertThat(cache.resolve("https://sonar/api/bar")).isEqualTo("https://sonar/api/bar");
+  }
+
+  @Test
+  void should_resolve_origin_when_upgraded_to_https() {
+    var cache = new RedirectCache();
+    cache.put("http://sonar:9000/api/foo", "https://sonar:9000/api/foo");
+
+    assertThat(cache.resolve("http://sonar:9000/api/bar?q=1")).isEqualTo("https://sonar:9000/api/bar?q=1");
+    assertThat(cache.resolve("http://other/api/bar")).isEqualTo("http://other/api/bar");
+  }
+
+  @Test
+  void should_not_remember_redirects_leaving_the_origin() {
+    var cache = new RedirectCache();
+    cache.put("https://sonar/api/foo", "https://sso/api/foo");
+    cache.put("http://sonar/api/foo", "https://sonar.company.com/api/foo");
+    cache.put("https://sonar/api/bar", "http://sonar/api/bar");
+
+    assertThat(cache.resolve("https://sonar/api/foo")).isEqualTo("https://sonar/api/foo");
+    assertThat(cache.resolve("http://sonar/api/foo")).isEqualTo("http://sonar/api/foo");
+    assertThat(cache.resolve("https://sonar/api/bar")).isEqualTo("https://sonar/api/bar");
+  }
+
+  @Test
+  void should_follow_chains_and_stop_on_cycles() {
+    var cache = new RedirectCache();
+    cache.put("https://a/x", "https://a/y");
+    cache.put("https://a/y", "https://a/z");
+    assertThat(cache.resolve("https://a/x")).isEqualTo("https://a/z");
+
+    cache.put("https://a/z", "https://a/x");
+    assertThat(cache.resolve("https://a/x")).isIn("https://a/x", "https://a/y", "https://a/z");
+  }
+
+  @Test
+  void should_forget() {
+    var cache = new RedirectCache();
+    cache.put("http://sonar/api/foo", "https://sonar/api/foo");
+    cache.forget("http://sonar/api/bar");
+
+    assertThat(cache.resolve("http://sonar/api/foo")).isEqualTo("http://sonar/api/foo");
+  }
+
+  @Test
+  void should_persist_and_reload() {
+    var file = tmp.resolve("cache/redirects.properties");
+    new RedirectCache(file, Duration.ofHours(1)).put("https://sonar/api/foo", "https://sonar/sso/api/foo");
+
+    assertThat(new RedirectCache(file, Duration.ofHours(1)).resolve("https://sonar/api/foo")).isEqualTo("https://sonar/sso/api/foo");
+    assertThat(tmp.resolve("cache")).isDirectoryContaining(p -> p.getFileName().toString().equals("redirects.properties"));
+  }
+
+  @Test
+  void should_ignore_expired_corrupted_and_unsafe_entries() throws Exception {
+    var file = tmp.resolve("redirects.properties");
+    Files.writeString(file, "https\\://sonar/a=https\\://sso/a 1\n" +
+      "https\\://sonar/b=garbage\n" +
+      "https\\://sonar/c=https\\://sonar/sso/c notanumber\n" +
+      "https\\://sonar/d=https\\://sso/d " + Long.MAX_VALUE + "\n");
+
+    var cache = new RedirectCache(file, Duration.ofHours(1));
+
+    assertThat(cache.resolve("https://sonar/a")).isEqualTo("https://sonar/a");
+    assertThat(cache.resolve("https://sonar/b")).isEqualTo("https://sonar/b");
+    assertThat(cache.resolve("https://sonar/c")).isEqualTo("https://sonar/c");
+    assertThat(cache.resolve("https://sonar/d")).isEqualTo("https://sonar/d");
+  }
+
+  @Test
+  void should_not_persist_without_ttl() {
+    var file = tmp.resolve("redirects.properties");
+    new RedirectCache(file, Duration.ZERO).put("https://sonar/api/foo", "https://sonar/sso/api/foo");
+
+    assertThat(file).doesNotExist();
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.http;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpHeaders;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import javax.net.ssl.SSLHandshakeException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryPolicyTest {
+
+  private final RetryPolicy underTest = new RetryPolicy(3, Duration.ofSeconds(1), Duration.ofSeconds(20));
+
+  @ParameterizedTest
+  @ValueSource(ints = {429, 502, 503, 504})
+  void should_retry_transient_status(int code) {
+    assertThat(RetryPolicy.isRetryable(code)).isTrue();
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {200, 400, 401, 403, 404, 407, 500})
+  void should_not_retry_other_status(int code) {
+    assertThat(RetryPolicy.isRetryable(code)).isFalse();
+  }
+
+  @Test
+  void should_retry_connection_errors_but_not_ssl_errors() {
+    assertThat(RetryPolicy.isRetryable(new ConnectException("Connection refused"))).isTrue();
+    assertThat(RetryPolicy.isRetryable(new IOException("Connection reset"))).isTrue();
+    assertThat(RetryPolicy.isRetryable(new SSLHandshakeException("PKIX path building failed"))).isFalse();
+  }
+
+  @Test
+  void should_not_retry_local_write_errors() {
+    var writeError = new FileWriteException(Path.of("index.txt"), new IOException("No space left on device"));
+
+    assertThat(RetryPolicy.isRetryable(writeError)).isFalse();
+    // As wrapped by the HTTP client
+    assertThat(RetryPolicy.isRetryable(new IOException(writeError.getMessage(), writeError))).isFalse();
+    assertThat(RetryPolicy.isRetryable(new IOException("Response body is truncated: received 5 bytes out of 100"))).isTrue();
+  }
+
+  @Test
+  void should_grow_delay_exponentially_with_jitter() {
+    assertThat(underTest.nextDelay(1, Duration.ZERO, null)).hasValueSatisfying(d -> assertThat(d).isBetween(Duration.ofMillis(500), Duration.ofSeconds(1)));
+    assertThat(underTest.nextDelay(2, Duration.ZERO, null)).hasValueSatisfying(d -> assertThat(d).isBetween(Duration.ofSeconds(1), Duration.ofSeconds(2)));
+    assertThat(underTest.nextDelay(3, Duration.ZERO, null)).hasValueSatisfying(d -> assertThat(d).isBetween(Duration.ofSeconds(2), Duration.ofSeconds(4)));
+  }
+
+  @Test
+  void should_cap_delay() {
+    var policy = new RetryPolicy(100, Duration.ofSeconds(1), Duration.ofHours(1));
+    assertThat(policy.nextDelay(50, Duration.ZERO, null)).hasValueSatisfying(d -> assertThat(d).isLessThanOrEqualTo(RetryPolicy.MAX_BACKOFF));
+  }
+
+  @Test
+  void should_give_up_after_max_retries() {
+    assertThat(underTest.nextDelay(4, Duration.ZERO, null)).isEmpty();
+  }
+
+  @Test
+  void should_give_up_when_budget_exceeded() {
+    assertThat(underTest.nextDelay(1, Duration.ofMillis(19_600), null)).isEmpty();
+    assertThat(underTest.nextDelay(1, Duration.ZERO, Duration.ofSeconds(30))).isEmpty();
+  }
+
+  @Test
+  void should_honor_retry_after() {
+    assertThat(underTest.nextDelay(1, Duration.ZERO, Duration.ofSeconds(7))).contains(Duration.ofSeconds(7));
+  }
+
+  @Test
+  void should_parse_retry_after_in_seconds() {
+    assertThat(RetryPolicy.parseRetryAfter(headers("Retry-After", "12"), Instant.now())).contains(Duration.ofSeconds(12));
+  }
+
+  @Test
+  void should_parse_retry_after_as_date() {
+    var now = Instant.parse("2015-10-21T07:28:00Z");
+    assertThat(RetryPolicy.parseRetryAfter(headers("Retry-After", "Wed, 21 Oct 2015 07:28:10 GMT"), now)).contains(Duration.ofSeconds(10));
+    assertThat(RetryPolicy.parseRetryAfter(headers("Retry-After", "Wed, 21 Oct 2015 07:27:00 GMT"), now)).contains(Duration.ZERO);
+  }
+
+  @Test
+  void should_ignore_invalid_retry_after() {
+    assertThat(RetryPolicy.parseRetryAfter(headers("Retry-After", "soon"), Instant.now())).isEmpty();
+    assertThat(RetryPolicy.parseRetryAfter(headers("Other", "1"), Instant.now())).isEmpty();
+  }
+
+  private static HttpHeaders headers(String name, String value) {
+    return HttpHeaders.of(Map.of(name, List.of(value)), (k, v) -> true);
+  }
+}
@@ -19,16 +19,24 @@
  */
 package org.sonarsource.scanner.lib.internal.http;
 
+import com.github.tomakehurst.wiremock.http.Fault;
 import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import java.io.ByteArrayOutputStream;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Tag;
@@ -41,6 +49,9 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.junitpioneer.jupiter.RestoreSystemProperties;
 import org.slf4j.event.Level;
+import org.sonarsource.scanner.downloadcache.DownloadProgress;
+import org.sonarsource.scanner.downloadcache.DownloadProgressTracker;
+import org.sonarsource.scanner.lib.HttpTiming;
 import org.sonarsource.scanner.lib.ScannerProperties;
 import org.sonarsource.scanner.lib.internal.InternalProperties;
 import org.sonarsource.scanner.lib.internal.util.System2;
@@ -52,10 +63,14 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.anyUrl;
 import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.head;
+import static com.github.tomakehurst.wiremock.client.WireMock.headRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
@@ -113,6 +128,89 @@ class ScannerHttpClientTest {
     assertThat(Files.readString(toFile)).isEqualTo(HELLO_WORLD);
   }
 
+  @Test
+  void downloadFromWebApi_should_hash_content_while_writing_it(@TempDir Path tmpFolder) throws Exception {
+    var toFile = tmpFolder.resolve("index.txt");
+    var content = "a".repeat(100_000);
+    answer(content);
+
+    var digest = MessageDigest.getInstance("SHA-256");
+    ScannerHttpClient underTest = create();
+    underTest.downloadFromWebApi("/batch/index.txt", toFile, digest, null);
+
+    assertThat(Files.readString(toFile)).isEqualTo(content);
+    assertThat(digest.digest()).isEqualTo(MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  void downloadFromWebApi_should_report_progress(@TempDir Path tmpFolder) {
+    var toFile = tmpFolder.resolve("index.txt");
+    var content = "a".repeat(100_000);
+    sonarqube.stubFor(get("/batch/index.txt")
+      .willReturn(aResponse().withHeader("Content-Length", "100000").withBody(content)));
+    List<DownloadProgress> reports = new ArrayList<>();
+
+    ScannerHttpClient underTest = create();
+    underTest.downloadFromWebApi("/batch/index.txt", toFile, null, new DownloadProgressTracker("index.txt", reports::add));
+
+    assertThat(reports).first().satisfies(p -> {
+      assertThat(p.getBytesReceived()).isZero();
+      assertThat(p.getTotalBytes()).isEqualTo(100_000);
+    });
+    assertThat(reports).last().satisfies(p -> assertThat(p.getBytesReceived()).isEqualTo(100_000));
+  }
+
+  @Test
+  void downloadFromWebApi_should_limit_bandwidth(@TempDir Path tmpFolder) throws Exception {
+    var toFile = tmpFolder.resolve("index.txt");
+    // 100 KB/s, with a burst of 100 KB, so 300 KB should take about 2 seconds
+    var content = "a".repeat(300 * 1024);
+    answer(content);
+
+    ScannerHttpClient underTest = create(sonarqube.baseUrl(), Map.of(ScannerProperties.SONAR_SCANNER_DOWNLOAD_RATE_LIMIT, "0.09765625"));
+    var start = System.nanoTime();
+    underTest.downloadFromWebApi("/batch/index.txt", toFile);
+
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(1500));
+    assertThat(Files.readString(toFile)).isEqualTo(content);
+  }
+
+  @Test
+  void downloadFromWebApi_should_overwrite_existing_file(@TempDir Path tmpFolder) throws Exception {
+    var toFile = tmpFolder.resolve("index.txt");
+    Files.writeString(toFile, "some much longer previous content");
+    answer(HELLO_WORLD);
+
+    ScannerHttpClient underTest = create();
+    underTest.downloadFromWebApi("/batch/index.txt", toFile);
+
+    assertThat(Files.readString(toFile)).isEqualTo(HELLO_WORLD);
+  }
+
+  @Test
+  void downloadFromWebApi_should_not_retry_local_write_errors(@TempDir Path tmpFolder) {
+    var toFile = tmpFolder.resolve("missing").resolve("index.txt");
+    answer(HELLO_WORLD);
+
+    ScannerHttpClient underTest = create(sonarqube.baseUrl(), Map.of(
+      ScannerProperties.SONAR_SCANNER_HTTP_RETRY_BACKOFF, "PT0.01S",
+      ScannerProperties.SONAR_SCANNER_HTTP_MAX_RETRIES, "2"));
+    assertThatThrownBy(() -> underTest.downloadFromWebApi("/batch/index.txt", toFile))
+      .hasMessageContaining("Unable to write the response body to " + toFile);
+    sonarqube.verify(1, getRequestedFor(urlMatching("/batch/index.txt")));
+  }
+
+  @Test
+  void downloadFromWebApi_should_delete_file_on_error(@TempDir Path tmpFolder) {
+    var toFile = tmpFolder.resolve("index.txt");
+    answer(HELLO_WORLD, 500);
+
+    ScannerHttpClient underTest = create();
+    assertThatThrownBy(() -> underTest.downloadFromWebApi("/batch/index.txt", toFile))
+      .isInstanceOf(HttpException.class);
+    assertThat(toFile).doesNotExist();
+  }
+
   @Test
   void downloadFromWebApi_fails_on_url_validation(@TempDir Path tmpFolder) {
     var toFile = tmpFolder.resolve("index.txt");
@@ -320,6 +418,563 @@ class ScannerHttpClientTest {
     assertThat(content).isEqualTo(HELLO_WORLD);
   }
 
+  @ParameterizedTest
+  @ValueSource(ints = {301, 308})
+  void should_remember_permanent_redirects(int code) {
+    ScannerHttpClient connection = create(redirectProxy.baseUrl());
+
+    redirectProxy.stubFor(get("/batch/index.txt")
+      .willReturn(aResponse()
+        .withHeader("Location", redirectProxy.baseUrl() + "/batch/moved.txt")
+        .withStatus(code)));
+    redirectProxy.stubFor(get("/batch/moved.txt").willReturn(aResponse().withBody(HELLO_WORLD)));
+
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+
+    redirectProxy.verify(1, getRequestedFor(urlEqualTo("/batch/index.txt")));
+    redirectProxy.verify(2, getRequestedFor(urlEqualTo("/batch/moved.txt")));
+  }
+
+  @Test
+  void should_not_remember_permanent_redirects_to_another_origin() {
+    ScannerHttpClient connection = create(redirectProxy.baseUrl());
+
+    redirectProxy.stubFor(get("/batch/index.txt")
+      .willReturn(aResponse()
+        .withHeader("Location", sonarqube.baseUrl() + "/batch/index.txt")
+        .withStatus(308)));
+    answer(HELLO_WORLD);
+
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+
+    redirectProxy.verify(2, getRequestedFor(anyUrl()));
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {302, 303, 307})
+  void should_not_remember_temporary_redirects(int code) {
+    ScannerHttpClient connection = create(redirectProxy.baseUrl());
+
+    redirectProxy.stubFor(get("/batch/index.txt")
+      .willReturn(aResponse()
+        .withHeader("Location", redirectProxy.baseUrl() + "/batch/moved.txt")
+        .withStatus(code)));
+    redirectProxy.stubFor(get("/batch/moved.txt").willReturn(aResponse().withBody(HELLO_WORLD)));
+
+    connection.callWebApi("/batch/index.txt");
+    connection.callWebApi("/batch/index.txt");
+
+    redirectProxy.verify(2, getRequestedFor(urlEqualTo("/batch/index.txt")));
+  }
+
+  @Test
+  void should_persist_permanent_redirects_when_ttl_is_set() {
+    var props = Map.of(ScannerProperties.SONAR_SCANNER_HTTP_REDIRECT_CACHE_TTL, "PT1H");
+    redirectProxy.stubFor(get("/batch/index.txt")
+      .willReturn(aResponse()
+        .withHeader("Location", redirectProxy.baseUrl() + "/batch/moved.txt")
+        .withStatus(308)));
+    redirectProxy.stubFor(get("/batch/moved.txt").willReturn(aResponse().withBody(HELLO_WORLD)));
+
+    create(redirectProxy.baseUrl(), props).callWebApi("/batch/index.txt");
+    assertThat(create(redirectProxy.baseUrl(), props).callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+
+    redirectProxy.verify(1, getRequestedFor(urlEqualTo("/batch/index.txt")));
+    assertThat(sonarUserHome.resolve("cache/http-redirects.properties")).exists();
+  }
+
+  @Test
+  void should_not_persist_permanent_redirects_by_default() {
+    redirectProxy.stubFor(get("/batch/index.txt")
+      .willReturn(aResponse()
+        .withHeader("Location", redirectProxy.baseUrl() + "/batch/moved.txt")
+        .withStatus(308)));
+    redirectProxy.stubFor(get("/batch/moved.txt").willReturn(aResponse().withBody(HELLO_WORLD)));
+
+    create(redirectProxy.baseUrl()).callWebApi("/batch/index.txt");
+    create(redirectProxy.baseUrl()).callWebApi("/batch/index.txt");
+
+    redirectProxy.verify(2, getRequestedFor(urlEqualTo("/batch/index.txt")));
+  }
+
+  @Test
+  void should_keep_remembered_location_when_it_answers_with_an_error() {
+    ScannerHttpClient connection = create(redirectProxy.baseUrl());
+    stubMovedOnce();
+    redirectProxy.stubFor(get("/batch/moved.txt")
+      .inScenario("Gone")
+      .whenScenarioStateIs(STARTED)
+      .willReturn(aResponse().withBody(HELLO_WORLD))
+      .willSetStateTo("Gone"));
+    redirectProxy.stubFor(get("/batch/moved.txt")
+      .inScenario("Gone")
+      .whenScenarioStateIs("Gone")
+      .willReturn(aResponse().withStatus(404)));
+
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+    assertThatThrownBy(() -> connection.callWebApi("/batch/index.txt"))
+      .isInstanceOf(HttpException.class)
+      .hasMessageContaining("moved.txt");
+    assertThatThrownBy(() -> connection.callWebApi("/batch/index.txt"))
+      .isInstanceOf(HttpException.class);
+
+    redirectProxy.verify(1, getRequestedFor(urlEqualTo("/batch/index.txt")));
+    redirectProxy.verify(3, getRequestedFor(urlEqualTo("/batch/moved.txt")));
+  }
+
+  @Test
+  void should_keep_remembered_location_when_unreachable_and_original_url_answers_with_an_error() {
+    ScannerHttpClient connection = create(redirectProxy.baseUrl(), Map.of(ScannerProperties.SONAR_SCANNER_HTTP_MAX_RETRIES, "0"));
+    redirectProxy.stubFor(get("/batch/index.txt")
+      .inScenario("Moved")
+      .whenScenarioStateIs(STARTED)
+      .willReturn(aResponse()
+        .withHeader("Location", redirectProxy.baseUrl() + "/batch/moved.txt")
+        .withStatus(301))
+      .willSetStateTo("Down"));
+    redirectProxy.stubFor(get("/batch/index.txt")
+      .inScenario("Moved")
+      .whenScenarioStateIs("Down")
+      .willReturn(aResponse().withStatus(503)));
+    redirectProxy.stubFor(get("/batch/moved.txt")
+      .inScenario("Unreachable")
+      .whenScenarioStateIs(STARTED)
+      .willReturn(aResponse().withBody(HELLO_WORLD))
+      .willSetStateTo("Unreachable"));
+    redirectProxy.stubFor(get("/batch/moved.txt")
+      .inScenario("Unreachable")
+      .whenScenarioStateIs("Unreachable")
+      .willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+    assertThatThrownBy(() -> connection.callWebApi("/batch/index.txt"))
+      .isInstanceOf(HttpException.class);
+    assertThatThrownBy(() -> connection.callWebApi("/batch/index.txt"));
+
+    // The remembered location is still tried first
+    redirectProxy.verify(3, getRequestedFor(urlEqualTo("/batch/moved.txt")));
+  }
+
+  @Test
+  void should_fall_back_to_original_url_when_remembered_location_is_unreachable() {
+    ScannerHttpClient connection = create(redirectProxy.baseUrl(), Map.of(ScannerProperties.SONAR_SCANNER_HTTP_MAX_RETRIES, "0"));
+    stubMovedOnce();
+    redirectProxy.stubFor(get("/batch/moved.txt")
+      .inScenario("Gone")
+      .whenScenarioStateIs(STARTED)
+      .willReturn(aResponse().withBody(HELLO_WORLD))
+      .willSetStateTo("Gone"));
+    redirectProxy.stubFor(get("/batch/moved.txt")
+      .inScenario("Gone")
+      .whenScenarioStateIs("Gone")
+      .willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+    // The remembered location has been forgotten
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+
+    redirectProxy.verify(2, getRequestedFor(urlEqualTo("/batch/moved.txt")));
+    redirectProxy.verify(3, getRequestedFor(urlEqualTo("/batch/index.txt")));
+  }
+
+  private static void stubMovedOnce() {
+    redirectProxy.stubFor(get("/batch/index.txt")
+      .inScenario("Moved")
+      .whenScenarioStateIs(STARTED)
+      .willReturn(aResponse()
+        .withHeader("Location", redirectProxy.baseUrl() + "/batch/moved.txt")
+        .withStatus(301))
+      .willSetStateTo("Back"));
+    redirectProxy.stubFor(get("/batch/index.txt")
+      .inScenario("Moved")
+      .whenScenarioStateIs("Back")
+      .willReturn(aResponse().withBody(HELLO_WORLD)));
+  }
+
+  @Test
+  void callRestApi_should_stream_json() {
+    ScannerHttpClient connection = create();
+    sonarqube.stubFor(get("/analysis/jres")
+      .willReturn(aResponse().withBody("[{\"id\":\"first\"},{\"id\":\"second\"}]")));
+
+    String firstId = connection.callRestApi("/analysis/jres", reader -> {
+      reader.beginArray();
+      reader.beginObject();
+      reader.nextName();
+      return reader.nextString();
+    });
+
+    assertThat(firstId).isEqualTo("first");
+  }
+
+  @Test
+  void callRestApi_should_fail_on_too_large_response() {
+    ScannerHttpClient connection = create();
+    var huge = "[" + "1,".repeat((int) (ScannerHttpClient.MAX_JSON_RESPONSE_SIZE / 2)) + "1]";
+    sonarqube.stubFor(get("/analysis/jres").willReturn(aResponse().withBody(huge)));
+
+    assertThatThrownBy(() -> connection.callRestApi("/analysis/jres", reader -> {
+      reader.beginArray();
+      while (reader.hasNext()) {
+        reader.nextInt();
+      }
+      return null;
+    }))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessageContaining("Response is larger than " + ScannerHttpClient.MAX_JSON_RESPONSE_SIZE + " bytes");
+  }
+
+  @Test
+  void callRestApi_should_fail_on_relative_path() {
+    ScannerHttpClient connection = create();
+
+    assertThatThrownBy(() -> connection.callRestApi("analysis/jres", reader -> null))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void should_not_prewarm_by_default() throws Exception {
+    ScannerHttpClient connection = create(sonarqube.baseUrl());
+
+    connection.prewarm().get();
+
+    sonarqube.verify(0, anyRequestedFor(anyUrl()));
+  }
+
+  @Test
+  void should_only_prewarm_origins_other_than_the_rest_api() throws Exception {
+    logTester.setLevel(Level.DEBUG);
+    var restApiOrigin = sonarqube.baseUrl().replace("localhost", "127.0.0.1");
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(
+      ScannerProperties.API_BASE_URL, restApiOrigin + "/api/v2",
+      ScannerProperties.SONAR_SCANNER_HTTP_PREWARM, "true"));
+    sonarqube.stubFor(head(urlEqualTo("/")).willReturn(aResponse().withStatus(200)));
+
+    connection.prewarm().get();
+
+    sonarqube.verify(1, headRequestedFor(urlEqualTo("/")).withoutHeader("Authorization"));
+    assertThat(logTester.logs(Level.DEBUG))
+      .anyMatch(l -> l.startsWith("Connection to " + sonarqube.baseUrl() + " pre-warmed"))
+      .noneMatch(l -> l.contains(restApiOrigin));
+  }
+
+  @Test
+  void should_not_prewarm_the_origin_of_the_rest_api() throws Exception {
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(
+      ScannerProperties.API_BASE_URL, sonarqube.baseUrl() + "/api/v2",
+      ScannerProperties.SONAR_SCANNER_HTTP_PREWARM, "true"));
+
+    connection.prewarm().get();
+
+    sonarqube.verify(0, anyRequestedFor(anyUrl()));
+  }
+
+  @Test
+  void should_ignore_prewarm_failures() throws Exception {
+    logTester.setLevel(Level.DEBUG);
+    ScannerHttpClient connection = create("http://localhost:1", Map.of(
+      ScannerProperties.API_BASE_URL, "http://127.0.0.1:1/api/v2",
+      ScannerProperties.SONAR_SCANNER_HTTP_PREWARM, "true"));
+
+    connection.prewarm().get();
+
+    assertThat(logTester.logs(Level.DEBUG)).anyMatch(l -> l.startsWith("Unable to pre-warm connection to http://localhost:1"));
+  }
+
+  @Test
+  void should_not_request_compression_by_default() {
+    ScannerHttpClient connection = create(sonarqube.baseUrl());
+    answer(HELLO_WORLD);
+
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+    sonarqube.verify(getRequestedFor(urlMatching("/batch/index.txt")).withHeader("Accept-Encoding", absent()));
+  }
+
+  @Test
+  void should_decompress_gzip_api_response() throws Exception {
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(ScannerProperties.SONAR_SCANNER_HTTP_COMPRESSION, "true"));
+    var compressed = new ByteArrayOutputStream();
+    try (var out = new GZIPOutputStream(compressed)) {
+      out.write(HELLO_WORLD.getBytes(StandardCharsets.UTF_8));
+    }
+    sonarqube.stubFor(get("/analysis/jres")
+      .withHeader("Accept-Encoding", equalTo("gzip, deflate"))
+      .willReturn(aResponse().withHeader("Content-Encoding", "gzip").withBody(compressed.toByteArray())));
+
+    assertThat(connection.callRestApi("/analysis/jres")).isEqualTo(HELLO_WORLD);
+  }
+
+  @Test
+  void should_decompress_deflate_api_response() throws Exception {
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(ScannerProperties.SONAR_SCANNER_HTTP_COMPRESSION, "true"));
+    var compressed = new ByteArrayOutputStream();
+    try (var out = new DeflaterOutputStream(compressed)) {
+      out.write(HELLO_WORLD.getBytes(StandardCharsets.UTF_8));
+    }
+    sonarqube.stubFor(get("/batch/index.txt")
+      .willReturn(aResponse().withHeader("Content-Encoding", "deflate").withBody(compressed.toByteArray())));
+
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+  }
+
+  @Test
+  void should_not_request_compression_for_downloads(@TempDir Path tmpFolder) throws Exception {
+    var toFile = tmpFolder.resolve("index.txt");
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(ScannerProperties.SONAR_SCANNER_HTTP_COMPRESSION, "true"));
+    answer(HELLO_WORLD);
+
+    connection.downloadFromWebApi("/batch/index.txt", toFile);
+
+    assertThat(Files.readString(toFile)).isEqualTo(HELLO_WORLD);
+    sonarqube.verify(getRequestedFor(urlMatching("/batch/index.txt")).withHeader("Accept-Encoding", absent()));
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {429, 502, 503, 504})
+  void should_retry_on_transient_errors(int code) {
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(
+      ScannerProperties.SONAR_SCANNER_HTTP_RETRY_BACKOFF, "PT0.01S",
+      ScannerProperties.SONAR_SCANNER_HTTP_MAX_RETRIES, "3"));
+    var report = new HttpTimingReport();
+    connection.addTimingListener(report);
+
+    sonarqube.stubFor(get("/batch/index.txt")
+      .inScenario("Flaky")
+      .whenScenarioStateIs(STARTED)
+      .willReturn(aResponse().withStatus(code))
+      .willSetStateTo("Recovered"));
+    sonarqube.stubFor(get("/batch/index.txt")
+      .inScenario("Flaky")
+      .whenScenarioStateIs("Recovered")
+      .willReturn(aResponse().withBody(HELLO_WORLD)));
+
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+    assertThat(report.getTimings()).singleElement().extracting(HttpTiming::getRetries).isEqualTo(1);
+    sonarqube.verify(2, getRequestedFor(urlMatching("/batch/index.txt")));
+    assertThat(logTester.logs(Level.WARN)).anyMatch(l -> l.matches("GET http://.*/batch/index.txt failed with HTTP " + code + ", retrying in \\d+ms \\(1/3\\)"));
+  }
+
+  @Test
+  void should_retry_download_and_rewrite_file(@TempDir Path tmpFolder) throws Exception {
+    var toFile = tmpFolder.resolve("index.txt");
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(
+      ScannerProperties.SONAR_SCANNER_HTTP_RETRY_BACKOFF, "PT0.01S",
+      ScannerProperties.SONAR_SCANNER_HTTP_MAX_RETRIES, "3"));
+
+    sonarqube.stubFor(get("/batch/index.txt")
+      .inScenario("Flaky")
+      .whenScenarioStateIs(STARTED)
+      .willReturn(aResponse().withStatus(503).withHeader("Retry-After", "0").withBody("Maintenance in progress"))
+      .willSetStateTo("Recovered"));
+    sonarqube.stubFor(get("/batch/index.txt")
+      .inScenario("Flaky")
+      .whenScenarioStateIs("Recovered")
+      .willReturn(aResponse().withBody(HELLO_WORLD)));
+
+    connection.downloadFromWebApi("/batch/index.txt", toFile);
+
+    assertThat(Files.readString(toFile)).isEqualTo(HELLO_WORLD);
+  }
+
+  @Test
+  void should_give_up_after_max_retries() {
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(
+      ScannerProperties.SONAR_SCANNER_HTTP_RETRY_BACKOFF, "PT0.01S",
+      ScannerProperties.SONAR_SCANNER_HTTP_MAX_RETRIES, "2"));
+    answer(HELLO_WORLD, 503);
+
+    assertThatThrownBy(() -> connection.callWebApi("/batch/index.txt"))
+      .isInstanceOf(HttpException.class)
+      .hasMessageContaining("failed with HTTP 503");
+    sonarqube.verify(3, getRequestedFor(urlMatching("/batch/index.txt")));
+  }
+
+  @Test
+  void should_not_retry_by_default() {
+    ScannerHttpClient connection = create(sonarqube.baseUrl());
+    var report = new HttpTimingReport();
+    connection.addTimingListener(report);
+    answer(HELLO_WORLD, 503);
+
+    assertThatThrownBy(() -> connection.callWebApi("/batch/index.txt"))
+      .isInstanceOf(HttpException.class);
+    sonarqube.verify(1, getRequestedFor(urlMatching("/batch/index.txt")));
+    assertThat(report.getTimings()).singleElement().extracting(HttpTiming::getRetries).isEqualTo(0);
+  }
+
+  @Test
+  void should_not_notify_removed_timing_listeners() throws Exception {
+    ScannerHttpClient connection = create(sonarqube.baseUrl());
+    var report = new HttpTimingReport();
+    connection.addTimingListener(report);
+    answer(HELLO_WORLD);
+
+    connection.callWebApi("/batch/index.txt");
+    connection.removeTimingListener(report);
+    connection.callWebApi("/batch/index.txt");
+
+    assertThat(report.getTimings()).hasSize(1);
+  }
+
+  @Test
+  void should_retry_on_connection_errors() throws Exception {
+    HttpClient mockHttpClient = mock(HttpClient.class);
+    HttpResponse<Object> okResponse = mock(HttpResponse.class);
+    when(okResponse.statusCode()).thenReturn(200);
+    when(okResponse.headers()).thenReturn(java.net.http.HttpHeaders.of(Map.of(), (k, v) -> true));
+    when(okResponse.body()).thenReturn(new java.io.ByteArrayInputStream(HELLO_WORLD.getBytes(StandardCharsets.UTF_8)));
+    when(mockHttpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+      .thenThrow(new java.net.ConnectException("Connection refused"))
+      .thenReturn(okResponse);
+
+    Map<String, String> props = new HashMap<>();
+    props.put(ScannerProperties.HOST_URL, sonarqube.baseUrl());
+    props.put(ScannerProperties.API_BASE_URL, sonarqube.baseUrl());
+    props.put(ScannerProperties.SONAR_SCANNER_HTTP_RETRY_BACKOFF, "PT0.01S");
+    props.put(ScannerProperties.SONAR_SCANNER_HTTP_MAX_RETRIES, "3");
+    ScannerHttpClient connection = new ScannerHttpClient();
+    connection.init(new HttpConfig(props, sonarUserHome, new System2()), mockHttpClient);
+    var report = new HttpTimingReport();
+    connection.addTimingListener(report);
+
+    assertThat(connection.callWebApi("/batch/index.txt")).isEqualTo(HELLO_WORLD);
+    assertThat(report.getTimings()).singleElement().extracting(HttpTiming::getRetries).isEqualTo(1);
+  }
+
+  @Test
+  void should_report_timing_of_each_call() {
+    ScannerHttpClient connection = create(redirectProxy.baseUrl(), Map.of(
+      ScannerProperties.SONAR_SCANNER_HTTP_RETRY_BACKOFF, "PT0.01S",
+      ScannerProperties.SONAR_SCANNER_HTTP_MAX_RETRIES, "3"));
+    var report = new HttpTimingReport();
+    connection.addTimingListener(report);
+    redirectProxy.stubFor(get("/batch/index.txt")
+      .willReturn(aResponse().withHeader("Location", sonarqube.baseUrl() + "/batch/index.txt").withStatus(302)));
+    sonarqube.stubFor(get("/batch/index.txt")
+      .inScenario("Flaky")
+      .whenScenarioStateIs(STARTED)
+      .willReturn(aResponse().withStatus(503))
+      .willSetStateTo("Recovered"));
+    sonarqube.stubFor(get("/batch/index.txt")
+      .inScenario("Flaky")
+      .whenScenarioStateIs("Recovered")
+      .willReturn(aResponse().withBody(HELLO_WORLD).withFixedDelay(50)));
+
+    connection.callWebApi("/batch/index.txt");
+
+    assertThat(report.getTimings()).singleElement().satisfies(timing -> {
+      assertThat(timing.getMethod()).isEqualTo("GET");
+      assertThat(timing.getUri()).hasToString(redirectProxy.baseUrl() + "/batch/index.txt");
+      assertThat(timing.getStatusCode()).isEqualTo(200);
+      assertThat(timing.getRedirects()).isEqualTo(1);
+      assertThat(timing.getRetries()).isEqualTo(1);
+      assertThat(timing.getBytes()).isEqualTo(HELLO_WORLD.length());
+      assertThat(timing.getTimeToFirstByte()).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+      assertThat(timing.getWait().plus(timing.getTimeToFirstByte()).plus(timing.getTransfer())).isEqualTo(timing.getTotal());
+      assertThat(timing.getFailure()).isNull();
+    });
+  }
+
+  @Test
+  void should_report_timing_of_failed_calls(@TempDir Path tmpFolder) {
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(ScannerProperties.SONAR_SCANNER_HTTP_MAX_RETRIES, "0"));
+    var report = new HttpTimingReport();
+    connection.addTimingListener(report);
+    answer("Not there", 404);
+
+    var toFile = tmpFolder.resolve("index.txt");
+    assertThatThrownBy(() -> connection.downloadFromWebApi("/batch/index.txt", toFile))
+      .isInstanceOf(HttpException.class);
+
+    assertThat(report.getTimings()).singleElement().satisfies(timing -> {
+      assertThat(timing.getStatusCode()).isEqualTo(404);
+      assertThat(timing.getFailure()).contains("failed with HTTP 404");
+    });
+  }
+
+  @Test
+  void should_hedge_slow_api_calls() {
+    logTester.setLevel(Level.DEBUG);
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(
+      ScannerProperties.SONAR_SCANNER_HTTP_HEDGING_PERCENTILE, "95",
+      ScannerProperties.SONAR_SCANNER_HTTP_HEDGING_DELAY, "PT0.1S"));
+    sonarqube.stubFor(get("/analysis/version")
+      .inScenario("Stall")
+      .whenScenarioStateIs(STARTED)
+      .willReturn(aResponse().withBody("10.0").withFixedDelay(5000))
+      .willSetStateTo("Fast"));
+    sonarqube.stubFor(get("/analysis/version")
+      .inScenario("Stall")
+      .whenScenarioStateIs("Fast")
+      .willReturn(aResponse().withBody("10.1")));
+
+    long start = System.nanoTime();
+    assertThat(connection.callRestApi("/analysis/version")).isEqualTo("10.1");
+
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(4));
+    sonarqube.verify(2, getRequestedFor(urlEqualTo("/analysis/version")));
+    assertThat(logTester.logs(Level.DEBUG)).anyMatch(l -> l.matches("No response after 100ms for GET http://.*/analysis/version, sending a hedged request"));
+  }
+
+  @Test
+  void should_only_report_timing_of_the_winning_hedged_attempt() {
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(
+      ScannerProperties.SONAR_SCANNER_HTTP_HEDGING_PERCENTILE, "95",
+      ScannerProperties.SONAR_SCANNER_HTTP_HEDGING_DELAY, "PT0.1S"));
+    var report = new HttpTimingReport();
+    connection.addTimingListener(report);
+    sonarqube.stubFor(get("/analysis/version")
+      .inScenario("Stall")
+      .whenScenarioStateIs(STARTED)
+      .willReturn(aResponse().withBody("10.0.0.12345").withFixedDelay(2000))
+      .willSetStateTo("Fast"));
+    sonarqube.stubFor(get("/analysis/version")
+      .inScenario("Stall")
+      .whenScenarioStateIs("Fast")
+      .willReturn(aResponse().withBody("10.1")));
+
+    assertThat(connection.callRestApi("/analysis/version")).isEqualTo("10.1");
+
+    assertThat(report.getTimings()).singleElement().satisfies(timing -> {
+      assertThat(timing.getBytes()).isEqualTo(4);
+      // The hedged request was sent after the hedging delay
+      assertThat(timing.getWait()).isGreaterThanOrEqualTo(Duration.ofMillis(100));
+      assertThat(timing.getTimeToFirstByte()).isLessThan(Duration.ofSeconds(1));
+    });
+  }
+
+  @Test
+  void should_not_hedge_more_than_max_extra_load() {
+    logTester.setLevel(Level.DEBUG);
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(
+      ScannerProperties.SONAR_SCANNER_HTTP_HEDGING_PERCENTILE, "95",
+      ScannerProperties.SONAR_SCANNER_HTTP_HEDGING_DELAY, "PT0.05S",
+      ScannerProperties.SONAR_SCANNER_HTTP_HEDGING_MAX_EXTRA_LOAD, "50"));
+    sonarqube.stubFor(get("/analysis/version").willReturn(aResponse().withBody("10.0").withFixedDelay(300)));
+
+    connection.callRestApi("/analysis/version");
+    connection.callRestApi("/analysis/version");
+
+    // Only the first call could be hedged
+    sonarqube.verify(3, getRequestedFor(urlEqualTo("/analysis/version")));
+    assertThat(logTester.logs(Level.DEBUG)).anyMatch(l -> l.endsWith("but the maximum extra load is reached"));
+  }
+
+  @Test
+  void should_never_hedge_downloads(@TempDir Path tmpFolder) {
+    ScannerHttpClient connection = create(sonarqube.baseUrl(), Map.of(
+      ScannerProperties.SONAR_SCANNER_HTTP_HEDGING_PERCENTILE, "95",
+      ScannerProperties.SONAR_SCANNER_HTTP_HEDGING_DELAY, "PT0.05S"));
+    sonarqube.stubFor(get("/batch/index.txt").willReturn(aResponse().withBody(HELLO_WORLD).withFixedDelay(300)));
+
+    connection.downloadFromWebApi("/batch/index.txt", tmpFolder.resolve("index.txt"));
+
+    sonarqube.verify(1, getRequestedFor(urlEqualTo("/batch/index.txt")));
+  }
+
   @Nested
   @TestInstance(TestInstance.Lifecycle.PER_CLASS)
   class WithProxy {
@@ -0,0 +1,163 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.logging;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.slf4j.event.Level;
+import org.sonarsource.scanner.lib.LogEvent;
+import testutils.LogTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncLogBufferTest {
+
+  @RegisterExtension
+  private final LogTester logTester = new LogTester();
+
+  private final List<List<LogEvent>> batches = new CopyOnWriteArrayList<>();
+
+  @Test
+  void should_give_all_events_in_order_and_in_batches() {
+    try (var underTest = new AsyncLogBuffer(batches::add, 16, AsyncLogBuffer.OverflowPolicy.BLOCK)) {
+      for (int i = 0; i < 1000; i++) {
+        underTest.offer(event(Level.INFO, "log " + i));
+      }
+      underTest.flush();
+
+      assertThat(messages()).hasSize(1000).startsWith("log 0", "log 1").endsWith("log 999");
+      assertThat(batches).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(AsyncLogBuffer.MAX_BATCH_SIZE));
+      assertThat(underTest.droppedCount()).isZero();
+    }
+  }
+
+  @Test
+  void should_block_when_full_with_block_policy() throws Exception {
+    var release = new CountDownLatch(1);
+    try (var underTest = new AsyncLogBuffer(events -> {
+      await(release);
+      batches.add(events);
+    }, 2, AsyncLogBuffer.OverflowPolicy.BLOCK)) {
+      var producer = new Thread(() -> {
+        for (int i = 0; i < 10; i++) {
+          underTest.offer(event(Level.DEBUG, "log " + i));
+        }
+      });
+      producer.start();
+      producer.join(200);
+      // The sink is stuck, so the producer waits for room in the buffer
+      assertThat(producer.isAlive()).isTrue();
+
+      release.countDown();
+      producer.join(5000);
+      underTest.flush();
+      assertThat(messages()).hasSize(10);
+    }
+  }
+
+  @Test
+  void should_drop_debug_first_when_full() {
+    var release = new CountDownLatch(1);
+    var underTest = new AsyncLogBuffer(events -> {
+      await(release);
+      batches.add(events);
+    }, 4, AsyncLogBuffer.OverflowPolicy.DROP_DEBUG_FIRST);
+    // The first event is taken by the stuck sink, then debug logs are accepted only while the buffer is less than 3/4 full
+    underTest.offer(event(Level.INFO, "first"));
+    waitUntilTaken(underTest);
+    for (int i = 0; i < 5; i++) {
+      underTest.offer(event(Level.DEBUG, "debug " + i));
+    }
+    underTest.offer(event(Level.TRACE, "trace"));
+    underTest.offer(event(Level.WARN, "warn"));
+    release.countDown();
+    underTest.close();
+
+    assertThat(messages()).containsExactly("first", "debug 0", "debug 1", "debug 2", "warn");
+    assertThat(underTest.droppedCount()).isEqualTo(3);
+    assertThat(logTester.logs(Level.WARN)).containsExactly("3 scanner engine log(s) dropped because logging could not keep up (DEBUG: 2, TRACE: 1)");
+  }
+
+  @Test
+  void should_survive_sink_failure() {
+    try (var underTest = new AsyncLogBuffer(events -> {
+      throw new IllegalStateException("broken");
+    }, 4, AsyncLogBuffer.OverflowPolicy.BLOCK)) {
+      underTest.offer(event(Level.INFO, "first"));
+      underTest.flush();
+      underTest.offer(event(Level.INFO, "second"));
+      underTest.flush();
+    }
+    assertThat(logTester.logs(Level.WARN)).containsExactly("Failed to write the scanner engine logs");
+  }
+
+  @Test
+  @Timeout(10)
+  void should_drop_events_once_sink_throws_an_error() {
+    var underTest = new AsyncLogBuffer(events -> {
+      throw new NoClassDefFoundError("broken");
+    }, 2, AsyncLogBuffer.OverflowPolicy.BLOCK);
+    for (int i = 0; i < 10; i++) {
+      underTest.offer(event(Level.INFO, "log " + i));
+    }
+    underTest.flush();
+    underTest.close();
+
+    assertThat(underTest.droppedCount()).isEqualTo(10);
+    assertThat(logTester.logs(Level.ERROR)).containsExactly("Failed to write the scanner engine logs, the next ones will be dropped");
+    assertThat(logTester.logs(Level.WARN)).containsExactly("10 scanner engine log(s) dropped because logging could not keep up (INFO: 10)");
+  }
+
+  @Test
+  void should_parse_overflow_policy() {
+    assertThat(AsyncLogBuffer.OverflowPolicy.parse(" drop_debug_first", "key")).isEqualTo(AsyncLogBuffer.OverflowPolicy.DROP_DEBUG_FIRST);
+  }
+
+  private List<String> messages() {
+    return batches.stream().flatMap(List::stream).map(LogEvent::getMessage).collect(Collectors.toList());
+  }
+
+  private static void waitUntilTaken(AsyncLogBuffer buffer) {
+    // flush() would wait for the stuck sink
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (System.nanoTime() < deadline && buffer.size() > 0) {
+      Thread.onSpinWait();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static LogEvent event(Level level, String message) {
+    return new LogEvent(level, message, null, Instant.now());
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.logging;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EngineLoggingTest {
+
+  @Test
+  void should_use_defaults() {
+    var logging = EngineLogging.from(Map.of(), null);
+
+    assertThat(logging.hasCustomSink()).isFalse();
+    assertThat(EngineLogging.from(Map.of(), events -> {
+    }).hasCustomSink()).isTrue();
+  }
+
+  @Test
+  void should_fail_on_invalid_properties() {
+    assertThatThrownBy(() -> EngineLogging.from(Map.of("sonar.scanner.logBufferSize", "big"), null))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("sonar.scanner.logBufferSize is not a valid integer: big");
+    assertThatThrownBy(() -> EngineLogging.from(Map.of("sonar.scanner.logBufferSize", "0"), null))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("sonar.scanner.logBufferSize must be positive: 0");
+    assertThatThrownBy(() -> EngineLogging.from(Map.of("sonar.scanner.logOverflowPolicy", "drop"), null))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("sonar.scanner.logOverflowPolicy must be one of BLOCK, DROP_DEBUG_FIRST: drop");
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.lib.internal.util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IoThreadsTest {
+
+  @Test
+  void should_use_platform_threads_by_default() throws Exception {
+    var underTest = IoThreads.fromProperties(Map.of());
+
+    assertThat(underTest.usesVirtualThreads()).isFalse();
+    assertThat(underTest.httpClientExecutor()).isEmpty();
+    assertThat(runAndGetThreadName(underTest)).isEqualTo("my-thread");
+  }
+
+  @Test
+  @EnabledForJreRange(max = JRE.JAVA_20)
+  void should_fallback_to_platform_threads_when_virtual_threads_not_supported() throws Exception {
+    var underTest = IoThreads.fromProperties(Map.of(ScannerProperties.SONAR_SCANNER_USE_VIRTUAL_THREADS, "true"));
+
+    assertThat(underTest.usesVirtualThreads()).isFalse();
+    assertThat(underTest.httpClientExecutor()).isEmpty();
+    assertThat(runAndGetThreadName(underTest)).isEqualTo("my-thread");
+  }
+
+  @Test
+  @EnabledForJreRange(min = JRE.JAVA_21)
+  void should_use_virtual_threads_when_supported() throws Exception {
+    var underTest = IoThreads.fromProperties(Map.of(ScannerProperties.SONAR_SCANNER_USE_VIRTUAL_THREADS, "true"));
+
+    assertThat(underTest.usesVirtualThreads()).isTrue();
+    assertThat(underTest.httpClientExecutor()).isPresent();
+    assertThat(runAndGetThreadName(underTest)).isEqualTo("my-thread");
+  }
+
+  @Test
+  @EnabledForJreRange(min = JRE.JAVA_21)
+  void should_share_http_client_executor_until_closed() {
+    var underTest = IoThreads.fromProperties(Map.of(ScannerProperties.SONAR_SCANNER_USE_VIRTUAL_THREADS, "true"));
+    var executor = underTest.httpClientExecutor().orElseThrow();
+
+    assertThat(underTest.httpClientExecutor()).containsSame(executor);
+
+    underTest.close();
+
+    assertThat(executor.isShutdown()).isTrue();
+  }
+
+  @Test
+  void should_ignore_close_when_using_platform_threads() throws Exception {
+    var underTest = IoThreads.platform();
+
+    underTest.close();
+
+    assertThat(runAndGetThreadName(underTest)).isEqualTo("my-thread");
+  }
+
+  private static String runAndGetThreadName(IoThreads ioThreads) throws Exception {
+    var threadName = new CompletableFuture<String>();
+    var thread = ioThreads.newThread("my-thread", () -> threadName.complete(Thread.currentThread().getName()));
+    thread.start();
+    thread.join();
+    return threadName.get(1, TimeUnit.SECONDS);
+  }
+}
@@ -20,15 +20,27 @@
 package org.sonarsource.scanner.lib.internal.util;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class UtilsTest {
 
+  @Test
+  void should_parse_durations_in_iso_8601_format_or_in_seconds() {
+    assertThat(Utils.parseDurationProperty("PT1M30S", "sonar.scanner.someTimeout")).isEqualTo(Duration.ofSeconds(90));
+    assertThat(Utils.parseDurationProperty("42", "sonar.scanner.someTimeout")).isEqualTo(Duration.ofSeconds(42));
+    assertThatThrownBy(() -> Utils.parseDurationProperty("5m", "sonar.scanner.someTimeout"))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("sonar.scanner.someTimeout is not a valid integer: 5m");
+  }
+
   @Test
   void delete_non_empty_directory(@TempDir Path tmp) throws IOException {
     /*-
@@ -56,4 +68,33 @@ class UtilsTest {
     assertThat(tmpDir.toFile()).doesNotExist();
   }
 
+  @Test
+  void write_atomically_should_replace_file(@TempDir Path tmp) throws IOException {
+    var file = tmp.resolve("file.txt");
+    Files.writeString(file, "old");
+
+    Utils.writeAtomically(file, f -> Files.writeString(f, "new", StandardCharsets.UTF_8));
+
+    assertThat(file).hasContent("new");
+    try (var files = Files.list(tmp)) {
+      assertThat(files).containsExactly(file);
+    }
+  }
+
+  @Test
+  void write_atomically_should_keep_file_and_delete_temp_file_on_failure(@TempDir Path tmp) throws IOException {
+    var file = tmp.resolve("file.txt");
+    Files.writeString(file, "old");
+
+    assertThatThrownBy(() -> Utils.writeAtomically(file, f -> {
+      Files.writeString(f, "partial", StandardCharsets.UTF_8);
+      throw new IOException("Disk full");
+    })).hasMessage("Disk full");
+
+    assertThat(file).hasContent("old");
+    try (var files = Files.list(tmp)) {
+      assertThat(files).containsExactly(file);
+    }
+  }
+
 }
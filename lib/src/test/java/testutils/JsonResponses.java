@@ -0,0 +1,43 @@
+/*
+ * SonarScanner Java Library
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package testutils;
+
+import com.google.gson.stream.JsonReader;
+import java.io.StringReader;
+import org.mockito.stubbing.Answer;
+import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
+
+public class JsonResponses {
+
+  private JsonResponses() {
+  }
+
+  /**
+   * Answer a mocked {@link ScannerHttpClient#callRestApi(String, ScannerHttpClient.JsonResponseHandler)} with the given JSON.
+   */
+  public static <T> Answer<T> jsonResponse(String json) {
+    return invocation -> {
+      ScannerHttpClient.JsonResponseHandler<T> handler = invocation.getArgument(1);
+      try (var reader = new JsonReader(new StringReader(json))) {
+        return handler.handle(reader);
+      }
+    };
+  }
+}